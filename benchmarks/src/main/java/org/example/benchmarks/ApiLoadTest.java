@@ -0,0 +1,172 @@
+package org.example.benchmarks;
+
+import org.example.ApiServer;
+import org.example.DatabaseManager;
+import org.example.MealCatalogCache;
+import org.example.MealSearchIndex;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// closed-loop load test of the HTTP API: <concurrency> clients each keep one read request in
+// flight against a seeded in-memory catalog for <seconds>, then throughput and latency
+// percentiles are printed. half of the requests list meals, the rest is split between the plan,
+// the shopping list and an ingredient search.
+//
+//   java -cp benchmarks/target/benchmarks.jar org.example.benchmarks.ApiLoadTest [mealCount] [concurrency] [seconds]
+public class ApiLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int mealCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        try (EmbeddedCatalog catalog = EmbeddedCatalog.seed(mealCount)) {
+            DatabaseManager db = catalog.getDatabaseManager();
+            Random random = new Random(7);
+            db.savePlanToDatabase(catalog.planFor("breakfast", random), catalog.planFor("lunch", random),
+                    catalog.planFor("dinner", random));
+
+            try (ApiServer server = new ApiServer(db, new MealCatalogCache(db), MealSearchIndex.build(db),
+                    new InetSocketAddress("127.0.0.1", 0))) {
+                server.start();
+                System.out.printf("%d meals, %d concurrent clients, %d s%n", mealCount, concurrency, seconds);
+
+                Result result = run("http://127.0.0.1:" + server.getPort(), concurrency, seconds);
+                System.out.println(result);
+            }
+        }
+    }
+
+    static Result run(String baseUrl, int concurrency, int seconds) throws InterruptedException {
+        URI[] targets = {
+                URI.create(baseUrl + "/meals?category=breakfast"),
+                URI.create(baseUrl + "/meals?category=lunch&order=alphabetical"),
+                URI.create(baseUrl + "/meals?category=dinner"),
+                URI.create(baseUrl + "/plan"),
+                URI.create(baseUrl + "/shopping-list?order=count"),
+                URI.create(baseUrl + "/search?ingredients=ingredient%201,ingredient%202&match=any"),
+        };
+
+        ExecutorService clientThreads = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(clientThreads)
+                .build();
+
+        long[][] latencies = new long[concurrency][];
+        int[] counts = new int[concurrency];
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        long start = System.nanoTime();
+
+        for (int c = 0; c < concurrency; c++) {
+            latencies[c] = new long[1024];
+            new Client(client, targets, c, latencies, counts, errors, deadline, done).next();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        clientThreads.shutdown();
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int c = 0; c < concurrency; c++) {
+            System.arraycopy(latencies[c], 0, all, offset, counts[c]);
+            offset += counts[c];
+        }
+        Arrays.sort(all);
+        return new Result(all, errors.get(), elapsed);
+    }
+
+    // one simulated user: sends the next request when the previous response arrived
+    private static class Client {
+        private final HttpClient client;
+        private final URI[] targets;
+        private final int index;
+        private final long[][] latencies;
+        private final int[] counts;
+        private final AtomicLong errors;
+        private final long deadline;
+        private final CountDownLatch done;
+        private final Random random;
+
+        Client(HttpClient client, URI[] targets, int index, long[][] latencies, int[] counts,
+               AtomicLong errors, long deadline, CountDownLatch done) {
+            this.client = client;
+            this.targets = targets;
+            this.index = index;
+            this.latencies = latencies;
+            this.counts = counts;
+            this.errors = errors;
+            this.deadline = deadline;
+            this.done = done;
+            this.random = new Random(index);
+        }
+
+        void next() {
+            if (System.nanoTime() >= deadline) {
+                done.countDown();
+                return;
+            }
+            HttpRequest request = HttpRequest.newBuilder(targets[random.nextInt(targets.length)])
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+                if (failure != null || response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                } else {
+                    record(System.nanoTime() - sent);
+                }
+                next();
+            });
+        }
+
+        private void record(long nanos) {
+            if (counts[index] == latencies[index].length) {
+                latencies[index] = Arrays.copyOf(latencies[index], latencies[index].length * 2);
+            }
+            latencies[index][counts[index]++] = nanos;
+        }
+    }
+
+    static class Result {
+        private final long[] sortedLatencies;
+        private final long errors;
+        private final long elapsedNanos;
+
+        Result(long[] sortedLatencies, long errors, long elapsedNanos) {
+            this.sortedLatencies = sortedLatencies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        long percentile(double p) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int i = (int) Math.ceil(p / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(i, sortedLatencies.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d errors, %.0f req/s, latency ms p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+                    sortedLatencies.length, errors, sortedLatencies.length * 1_000_000_000.0 / elapsedNanos,
+                    percentile(50) / 1e6, percentile(90) / 1e6, percentile(99) / 1e6, percentile(100) / 1e6);
+        }
+    }
+}
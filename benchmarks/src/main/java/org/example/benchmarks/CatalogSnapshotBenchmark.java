@@ -0,0 +1,66 @@
+package org.example.benchmarks;
+
+import org.example.CatalogSnapshot;
+import org.example.Main;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// cold start and reads from a memory-mapped CatalogSnapshot, against loading the same
+// category from the database
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class CatalogSnapshotBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int mealCount;
+
+    private EmbeddedCatalog catalog;
+    private Path file;
+    private CatalogSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        catalog = EmbeddedCatalog.seed(mealCount);
+        file = Files.createTempFile("catalog", ".snap");
+        snapshot = CatalogSnapshot.refresh(catalog.getDatabaseManager(), file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException, IOException {
+        catalog.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public CatalogSnapshot loadSnapshot() throws IOException {
+        return CatalogSnapshot.load(file);
+    }
+
+    @Benchmark
+    public List<Main.Meal> snapshotMealsByCategory() {
+        return snapshot.getMealsByCategory("breakfast");
+    }
+
+    // reads the columns in place, allocates nothing
+    @Benchmark
+    public long snapshotScanCategory() {
+        long[] ingredientRefs = new long[1];
+        snapshot.forEachMeal("breakfast", false, meal -> ingredientRefs[0] += snapshot.getIngredientCount(meal));
+        return ingredientRefs[0];
+    }
+
+    @Benchmark
+    public List<Main.Meal> databaseMealsByCategory() throws SQLException {
+        return catalog.getDatabaseManager().getMealsByCategory("breakfast");
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.benchmarks;
+
+import org.example.DatabaseManager;
+import org.example.Main;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// hot paths of DatabaseManager against a seeded in-memory catalog.
+// every trial also prints how many statements (round trips) one operation needed
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class DatabaseManagerBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int mealCount;
+
+    private EmbeddedCatalog catalog;
+    private DatabaseManager db;
+    // two plans saved in turn into the same week, so every save rewrites the slots they differ in
+    private final List<Map<String, String>> breakfastPlans = new ArrayList<>();
+    private final List<Map<String, String>> lunchPlans = new ArrayList<>();
+    private final List<Map<String, String>> dinnerPlans = new ArrayList<>();
+    private Random random;
+    private int added;
+    private long operations;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        catalog = EmbeddedCatalog.seed(mealCount);
+        db = catalog.getDatabaseManager();
+        random = new Random(7);
+
+        for (int i = 0; i < 2; i++) {
+            breakfastPlans.add(catalog.planFor("breakfast", random));
+            lunchPlans.add(catalog.planFor("lunch", random));
+            dinnerPlans.add(catalog.planFor("dinner", random));
+        }
+        db.savePlanToDatabase(breakfastPlans.get(0), lunchPlans.get(0), dinnerPlans.get(0));
+
+        catalog.drainRoundTrips();
+        operations = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(BenchmarkParams params) throws SQLException {
+        long roundTrips = catalog.drainRoundTrips();
+        if (operations > 0) {
+            System.out.printf("%n%s (mealCount=%d): %.2f round trips/op%n",
+                    params.getBenchmark(), mealCount, (double) roundTrips / operations);
+        }
+        catalog.close();
+    }
+
+    @Benchmark
+    public List<Main.Meal> getMealsByCategory() throws SQLException {
+        operations++;
+        return db.getMealsByCategory("breakfast");
+    }
+
+    @Benchmark
+    public List<Main.Meal> getMealsByCategoryAlphabetical() throws SQLException {
+        operations++;
+        return db.getMealsByCategoryAlphabetical("lunch");
+    }
+
+    @Benchmark
+    public int addMeal() throws SQLException {
+        operations++;
+        Main.Meal meal = EmbeddedCatalog.randomMeal(random, mealCount + added++);
+        return db.addMeal(meal.getCategory(), meal.getName(), meal.getIngredients());
+    }
+
+    @Benchmark
+    public void savePlanToDatabase() throws SQLException {
+        int plan = (int) (++operations % 2);
+        db.savePlanToDatabase(breakfastPlans.get(plan), lunchPlans.get(plan), dinnerPlans.get(plan));
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> getPlannedMeals() throws SQLException {
+        operations++;
+        return db.getPlannedMeals();
+    }
+
+    // the aggregation behind Main.save
+    @Benchmark
+    public Map<String, Integer> shoppingList() throws SQLException {
+        operations++;
+        return db.getShoppingList();
+    }
+}
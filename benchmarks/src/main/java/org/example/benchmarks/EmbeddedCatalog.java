@@ -0,0 +1,149 @@
+package org.example.benchmarks;
+
+import org.example.ConnectionPool;
+import org.example.DatabaseManager;
+import org.example.Main;
+import org.example.MealRepository;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// an in-memory H2 database seeded with a synthetic catalog, shared by the benchmark suites
+public class EmbeddedCatalog implements AutoCloseable {
+    public static final int INGREDIENT_VOCABULARY = 500;
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final String url;
+    private final ConnectionPool pool;
+    private final RoundTripCountingDataSource countingSource;
+    private final DatabaseManager db;
+    private final int mealCount;
+
+    private EmbeddedCatalog(int mealCount) {
+        this.mealCount = mealCount;
+        this.url = "jdbc:h2:mem:catalog" + DATABASES.incrementAndGet()
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;NON_KEYWORDS=DAY;DB_CLOSE_DELAY=-1";
+        this.pool = new ConnectionPool(url, "sa", "");
+        this.countingSource = new RoundTripCountingDataSource(pool);
+        this.db = new DatabaseManager(countingSource);
+    }
+
+    // creates the schema and inserts mealCount meals spread evenly over the three categories
+    public static EmbeddedCatalog seed(int mealCount) throws SQLException {
+        EmbeddedCatalog catalog = new EmbeddedCatalog(mealCount);
+        catalog.db.initializeDatabase();
+
+        Random random = new Random(42);
+        List<Main.Meal> chunk = new ArrayList<>();
+        for (int i = 0; i < mealCount; i++) {
+            chunk.add(randomMeal(random, i));
+            if (chunk.size() == 10_000) {
+                catalog.db.addMeals(chunk, 10_000, null);
+                chunk.clear();
+            }
+        }
+        catalog.db.addMeals(chunk, 10_000, null);
+
+        catalog.countingSource.reset();
+        return catalog;
+    }
+
+    public static Main.Meal randomMeal(Random random, int index) {
+        String category = MealRepository.MEAL_CATEGORIES[index % MealRepository.MEAL_CATEGORIES.length];
+        int ingredientCount = 3 + random.nextInt(4);
+        List<String> ingredients = new ArrayList<>(ingredientCount);
+        for (int j = 0; j < ingredientCount; j++) {
+            ingredients.add(ingredientName(random.nextInt(INGREDIENT_VOCABULARY)));
+        }
+        return new Main.Meal(category, mealName(index), ingredients);
+    }
+
+    public static String mealName(int index) {
+        return MealRepository.MEAL_CATEGORIES[index % MealRepository.MEAL_CATEGORIES.length] + " meal " + index;
+    }
+
+    public static String ingredientName(int index) {
+        return "ingredient " + index;
+    }
+
+    // a one-week plan that only uses meals from the catalog
+    public Map<String, String> planFor(String category, Random random) {
+        int offset = Arrays.asList(MealRepository.MEAL_CATEGORIES).indexOf(category);
+        int perCategory = mealCount / MealRepository.MEAL_CATEGORIES.length;
+        Map<String, String> plan = new LinkedHashMap<>();
+        for (String day : MealRepository.DAYS_OF_WEEK) {
+            plan.put(day, mealName(random.nextInt(perCategory) * MealRepository.MEAL_CATEGORIES.length + offset));
+        }
+        return plan;
+    }
+
+    public DatabaseManager getDatabaseManager() {
+        return db;
+    }
+
+    public int getMealCount() {
+        return mealCount;
+    }
+
+    public long drainRoundTrips() {
+        return countingSource.reset();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        pool.close();
+    }
+
+    // counts statement executions, i.e. round trips to the database
+    static class RoundTripCountingDataSource extends DataSourceAdapter {
+        private final AtomicLong roundTrips = new AtomicLong();
+
+        RoundTripCountingDataSource(DataSource delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrap(Connection.class, super.getConnection());
+        }
+
+        long reset() {
+            return roundTrips.getAndSet(0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T wrap(Class<T> type, T target) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("execute")) {
+                    roundTrips.incrementAndGet();
+                }
+                try {
+                    Object result = method.invoke(target, args);
+                    if (result instanceof PreparedStatement) {
+                        return wrap(PreparedStatement.class, (PreparedStatement) result);
+                    }
+                    if (result instanceof Statement) {
+                        return wrap(Statement.class, (Statement) result);
+                    }
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            };
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+    }
+}
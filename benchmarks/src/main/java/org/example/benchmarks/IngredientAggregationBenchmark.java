@@ -0,0 +1,67 @@
+package org.example.benchmarks;
+
+import org.example.IngredientCounter;
+import org.example.IngredientDictionary;
+import org.example.Main;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// counting every ingredient of a catalog: the string-keyed HashMap<String, Integer> the shopping
+// list used to be built with, against dictionary ids and an IngredientCounter.
+// heap footprint of the two meal representations is measured by IngredientFootprint
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class IngredientAggregationBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int mealCount;
+
+    // one String per ingredient row, as the List<String> meals held them
+    private List<List<String>> stringMeals;
+    private List<Main.Meal> internedMeals;
+    private IngredientDictionary dictionary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        dictionary = new IngredientDictionary();
+        stringMeals = new ArrayList<>(mealCount);
+        internedMeals = new ArrayList<>(mealCount);
+
+        for (int i = 0; i < mealCount; i++) {
+            Main.Meal meal = EmbeddedCatalog.randomMeal(random, i);
+            List<String> ingredients = new ArrayList<>();
+            for (String ingredient : meal.getIngredients()) {
+                ingredients.add(new String(ingredient));
+            }
+            stringMeals.add(ingredients);
+            internedMeals.add(new Main.Meal(meal.getCategory(), meal.getName(), dictionary.internAll(ingredients), dictionary));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Integer> stringHashMap() {
+        Map<String, Integer> shoppingList = new HashMap<>();
+        for (List<String> ingredients : stringMeals) {
+            for (String ingredient : ingredients) {
+                shoppingList.put(ingredient, shoppingList.getOrDefault(ingredient, 0) + 1);
+            }
+        }
+        return shoppingList;
+    }
+
+    @Benchmark
+    public IngredientCounter internedCounter() {
+        IngredientCounter counter = new IngredientCounter(dictionary.size());
+        for (Main.Meal meal : internedMeals) {
+            counter.addMeal(meal);
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.benchmarks;
+
+import org.example.IngredientDictionary;
+import org.example.Main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.*;
+
+// retained heap of a catalog held as List<String> meals (one String per ingredient row, as
+// read from JDBC) against meals holding int[] ids of an IngredientDictionary.
+//
+//   java -Xmx6g -cp benchmarks/target/benchmarks.jar org.example.benchmarks.IngredientFootprint [mealCount]
+public class IngredientFootprint {
+
+    public static void main(String[] args) {
+        int mealCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long baseline = usedHeap();
+        List<StringMeal> stringMeals = new ArrayList<>(mealCount);
+        Random random = new Random(42);
+        for (int i = 0; i < mealCount; i++) {
+            Main.Meal meal = EmbeddedCatalog.randomMeal(random, i);
+            List<String> ingredients = new ArrayList<>();
+            for (String ingredient : meal.getIngredients()) {
+                ingredients.add(new String(ingredient));
+            }
+            stringMeals.add(new StringMeal(meal.getCategory(), meal.getName(), ingredients));
+        }
+        long stringBytes = usedHeap() - baseline;
+        report("List<String> meals", mealCount, stringBytes);
+        stringMeals = null;
+
+        baseline = usedHeap();
+        IngredientDictionary dictionary = new IngredientDictionary();
+        List<Main.Meal> internedMeals = new ArrayList<>(mealCount);
+        random = new Random(42);
+        for (int i = 0; i < mealCount; i++) {
+            Main.Meal meal = EmbeddedCatalog.randomMeal(random, i);
+            List<String> ingredients = new ArrayList<>(meal.getIngredients());
+            internedMeals.add(new Main.Meal(meal.getCategory(), meal.getName(), dictionary.internAll(ingredients), dictionary));
+        }
+        long internedBytes = usedHeap() - baseline;
+        report("int[] meals + dictionary", internedMeals.size(), internedBytes);
+
+        System.out.printf("interned representation uses %.1f%% of the heap (%d dictionary entries)%n",
+                100.0 * internedBytes / stringBytes, dictionary.size());
+    }
+
+    private static void report(String label, int meals, long bytes) {
+        System.out.printf("%-26s %,14d bytes  %8.1f bytes/meal%n", label, bytes, (double) bytes / meals);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // a few rounds until the collector has nothing left to free
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    // the meal shape before interning
+    private static class StringMeal {
+        private final String category;
+        private final String name;
+        private final List<String> ingredients;
+
+        StringMeal(String category, String name, List<String> ingredients) {
+            this.category = category;
+            this.name = name;
+            this.ingredients = ingredients;
+        }
+    }
+}
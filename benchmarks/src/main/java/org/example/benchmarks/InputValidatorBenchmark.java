@@ -0,0 +1,53 @@
+package org.example.benchmarks;
+
+import org.example.InputValidator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// validating the ingredient line of an added meal: the String.matches path Main used before,
+// which splits and compiles a Pattern per ingredient, against the char-scanning InputValidator.
+// run with -prof gc to compare the allocation per line
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputValidatorBenchmark {
+    @Param({"flour,eggs,milk,sugar,butter,salt,baking powder,vanilla"})
+    public String ingredients;
+
+    @Param({"Blueberry pancakes"})
+    public String name;
+
+    @Benchmark
+    public boolean regexName() {
+        return name.matches("[a-zA-Z ]+");
+    }
+
+    @Benchmark
+    public boolean scanName() {
+        return InputValidator.isValidName(name);
+    }
+
+    @Benchmark
+    public void regexIngredients(Blackhole blackhole) {
+        List<String> valid = new ArrayList<>();
+        for (String ingredient : ingredients.split(",")) {
+            if (!ingredient.matches("[a-zA-Z ]+")) {
+                break;
+            }
+            valid.add(ingredient);
+        }
+        blackhole.consume(valid);
+    }
+
+    @Benchmark
+    public InputValidator.IngredientList scanIngredients() {
+        return InputValidator.validateIngredients(ingredients);
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.benchmarks;
+
+import org.example.Main;
+import org.example.MealRecommender;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// top ten lunch suggestions for a half-planned week from a MealRecommender, against an exact
+// Jaccard scan of the whole category as the baseline
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class MealRecommenderBenchmark {
+    private static final int LIMIT = 10;
+
+    @Param({"10000", "100000"})
+    public int mealCount;
+
+    private MealRecommender recommender;
+    private List<Main.Meal> lunches;
+    private List<List<Main.Meal>> plans;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Main.Meal> meals = new ArrayList<>(mealCount);
+        lunches = new ArrayList<>();
+        for (int i = 0; i < mealCount; i++) {
+            Main.Meal meal = EmbeddedCatalog.randomMeal(random, i);
+            meals.add(meal);
+            if (meal.getCategory().equals("lunch")) {
+                lunches.add(meal);
+            }
+        }
+        recommender = new MealRecommender();
+        recommender.addAll(meals);
+
+        // ten meals of every category planned, as in the middle of a week
+        plans = new ArrayList<>();
+        for (int p = 0; p < 16; p++) {
+            List<Main.Meal> planned = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                planned.add(meals.get(random.nextInt(mealCount)));
+            }
+            plans.add(planned);
+        }
+    }
+
+    private List<Main.Meal> nextPlan() {
+        return plans.get(next++ & 15);
+    }
+
+    @Benchmark
+    public List<MealRecommender.Suggestion> recommend() {
+        return recommender.recommend("lunch", nextPlan(), LIMIT);
+    }
+
+    @Benchmark
+    public List<Main.Meal> exactScan() {
+        List<Main.Meal> planned = nextPlan();
+        List<Set<String>> plannedSets = new ArrayList<>(planned.size());
+        Set<String> plannedNames = new HashSet<>();
+        for (Main.Meal meal : planned) {
+            plannedSets.add(new HashSet<>(meal.getIngredients()));
+            plannedNames.add(meal.getName());
+        }
+
+        PriorityQueue<Map.Entry<Double, Main.Meal>> best = new PriorityQueue<>(LIMIT + 1, Map.Entry.comparingByKey());
+        for (Main.Meal meal : lunches) {
+            if (plannedNames.contains(meal.getName())) {
+                continue;
+            }
+            Set<String> ingredients = new HashSet<>(meal.getIngredients());
+            double similarity = 0;
+            for (Set<String> plannedSet : plannedSets) {
+                int shared = 0;
+                for (String ingredient : ingredients) {
+                    if (plannedSet.contains(ingredient)) {
+                        shared++;
+                    }
+                }
+                similarity = Math.max(similarity, (double) shared / (ingredients.size() + plannedSet.size() - shared));
+            }
+            best.add(new AbstractMap.SimpleEntry<>(similarity, meal));
+            if (best.size() > LIMIT) {
+                best.poll();
+            }
+        }
+        List<Main.Meal> top = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            top.add(best.poll().getValue());
+        }
+        Collections.reverse(top);
+        return top;
+    }
+}
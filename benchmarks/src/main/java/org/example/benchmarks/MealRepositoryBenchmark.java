@@ -0,0 +1,106 @@
+package org.example.benchmarks;
+
+import org.example.InMemoryMealRepository;
+import org.example.Main;
+import org.example.MealPage;
+import org.example.MealRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// the same workload on both MealRepository backends: the JDBC one on an embedded H2 and the
+// in-memory one, seeded with the identical synthetic catalog
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class MealRepositoryBenchmark {
+
+    @Param({"jdbc", "memory"})
+    public String backend;
+
+    @Param({"10000"})
+    public int mealCount;
+
+    private EmbeddedCatalog catalog;
+    private MealRepository repository;
+    // breakfast, lunch and dinner of two plans saved in turn into the same week
+    private final List<List<Map<String, String>>> plans = new ArrayList<>();
+    private int saves;
+    private static final int PAGE_SIZE = 20;
+    private MealPage lastPageKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        catalog = EmbeddedCatalog.seed(mealCount);
+        if (backend.equals("jdbc")) {
+            repository = catalog.getDatabaseManager();
+        } else {
+            repository = new InMemoryMealRepository();
+            Random random = new Random(42);
+            List<Main.Meal> meals = new ArrayList<>(mealCount);
+            for (int i = 0; i < mealCount; i++) {
+                meals.add(EmbeddedCatalog.randomMeal(random, i));
+            }
+            repository.addMeals(meals, 10_000, null);
+        }
+
+        Random random = new Random(7);
+        for (int i = 0; i < 2; i++) {
+            plans.add(Arrays.asList(
+                    catalog.planFor("breakfast", random), catalog.planFor("lunch", random), catalog.planFor("dinner", random)));
+        }
+        repository.savePlanToDatabase(plans.get(0).get(0), plans.get(0).get(1), plans.get(0).get(2));
+
+        List<Main.Meal> lunches = repository.getMealsByCategoryAlphabetical("lunch");
+        Main.Meal key = lunches.get(lunches.size() - PAGE_SIZE - 1);
+        lastPageKey = new MealPage(Collections.emptyList(), new int[0], repository.getMealId(key.getName()), key.getName(), true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        catalog.close();
+    }
+
+    @Benchmark
+    public List<Main.Meal> mealsByCategory() throws SQLException {
+        return repository.getMealsByCategory("lunch");
+    }
+
+    // what showMeals does now: every meal handed over while the rows are read, none kept
+    @Benchmark
+    public int mealsByCategoryStreamed() throws SQLException, IOException {
+        int[] ingredients = {0};
+        repository.forEachMealInCategory("lunch", MealRepository.MealOrder.ADDED,
+                meal -> ingredients[0] += meal.getIngredientIds().length);
+        return ingredients[0];
+    }
+
+    // the key of the last page seeks past every meal before it
+    @Benchmark
+    public MealPage lastMealsPage() throws SQLException {
+        return repository.getMealsByCategoryPage("lunch", MealRepository.MealOrder.ALPHABETICAL, lastPageKey, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, String>> plannedMeals() throws SQLException {
+        return repository.getPlannedMeals();
+    }
+
+    // alternates between the two plans, so every save changes slots
+    @Benchmark
+    public void savePlan() throws SQLException {
+        List<Map<String, String>> plan = plans.get(++saves & 1);
+        repository.savePlanToDatabase(plan.get(0), plan.get(1), plan.get(2));
+    }
+
+    @Benchmark
+    public Map<String, Integer> shoppingList() throws SQLException {
+        return repository.getShoppingList();
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.benchmarks;
+
+import org.example.Main;
+import org.example.MealRepository;
+import org.example.MealSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// ingredient AND/OR queries and name prefix lookups on a synthetic catalog held in a MealSearchIndex
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class MealSearchIndexBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int mealCount;
+
+    private MealSearchIndex index;
+    private List<List<String>> queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        index = new MealSearchIndex();
+        List<Main.Meal> meals = new ArrayList<>(mealCount);
+        for (int i = 0; i < mealCount; i++) {
+            meals.add(EmbeddedCatalog.randomMeal(random, i));
+        }
+        index.addAll(meals);
+
+        queries = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            queries.add(Arrays.asList(
+                    EmbeddedCatalog.ingredientName(random.nextInt(EmbeddedCatalog.INGREDIENT_VOCABULARY)),
+                    EmbeddedCatalog.ingredientName(random.nextInt(EmbeddedCatalog.INGREDIENT_VOCABULARY)),
+                    EmbeddedCatalog.ingredientName(random.nextInt(EmbeddedCatalog.INGREDIENT_VOCABULARY))));
+        }
+    }
+
+    private List<String> nextQuery() {
+        return queries.get(next++ & 63);
+    }
+
+    @Benchmark
+    public List<Main.Meal> allOfTwoIngredients() {
+        return index.findByAllIngredients(nextQuery().subList(0, 2));
+    }
+
+    @Benchmark
+    public List<Main.Meal> allOfThreeIngredients() {
+        return index.findByAllIngredients(nextQuery());
+    }
+
+    @Benchmark
+    public List<Main.Meal> anyOfThreeIngredients() {
+        return index.findByAnyIngredient(nextQuery());
+    }
+
+    @Benchmark
+    public List<Main.Meal> namePrefix() {
+        return index.findByNamePrefix(MealRepository.MEAL_CATEGORIES[next++ % 3] + " meal 12", 20);
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.benchmarks;
+
+import org.example.LatencyHistogram;
+import org.example.Metrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// cost of the instrumentation on a hot path: a registry lookup plus a histogram record or a
+// counter add, as DatabaseManager does per call. run with -prof gc to see that none allocates
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private final Metrics metrics = new Metrics();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long value = 1;
+
+    @Benchmark
+    public void recordHistogram() {
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record(value >>> 40);
+    }
+
+    @Benchmark
+    public void lookupAndRecord() {
+        metrics.recordSince(Metrics.DB_CALL_SECONDS, "method", "getPlannedMeals", System.nanoTime() - 1_000);
+    }
+
+    @Benchmark
+    public void lookupAndCount() {
+        metrics.counter(Metrics.DB_ROUND_TRIPS, "statement", "select_plan").increment();
+    }
+}
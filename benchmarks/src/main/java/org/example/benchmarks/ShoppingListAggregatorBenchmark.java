@@ -0,0 +1,68 @@
+package org.example.benchmarks;
+
+import org.example.IngredientDictionary;
+import org.example.Main;
+import org.example.ShoppingListAggregator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// shopping lists for a whole cohort: every user eats three meals a day for four weeks, drawn from
+// a shared catalog. the same aggregation runs on pools of 1 to 8 workers, so throughput per
+// worker count shows how far the fork/join split scales on the machine at hand
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ShoppingListAggregatorBenchmark {
+    private static final int MEALS_PER_USER = 3 * 7 * 4;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"10000"})
+    public int userCount;
+
+    @Param({"10000"})
+    public int mealCount;
+
+    private ShoppingListAggregator aggregator;
+    private Map<Integer, List<String>> mealsByUser;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        IngredientDictionary dictionary = new IngredientDictionary();
+        List<Main.Meal> catalog = new ArrayList<>(mealCount);
+        for (int i = 0; i < mealCount; i++) {
+            Main.Meal meal = EmbeddedCatalog.randomMeal(random, i);
+            catalog.add(new Main.Meal(meal.getCategory(), meal.getName(), dictionary.internAll(meal.getIngredients()), dictionary));
+        }
+        aggregator = new ShoppingListAggregator(catalog, dictionary);
+
+        mealsByUser = new HashMap<>();
+        for (int user = 0; user < userCount; user++) {
+            List<String> meals = new ArrayList<>(MEALS_PER_USER);
+            for (int slot = 0; slot < MEALS_PER_USER; slot++) {
+                meals.add(catalog.get(random.nextInt(mealCount)).getName());
+            }
+            mealsByUser.put(user, meals);
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ShoppingListAggregator.Result aggregate() {
+        return aggregator.aggregate(mealsByUser, pool);
+    }
+}
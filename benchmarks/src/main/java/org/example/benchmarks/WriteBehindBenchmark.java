@@ -0,0 +1,60 @@
+package org.example.benchmarks;
+
+import org.example.DatabaseManager;
+import org.example.Main;
+import org.example.WriteBehindQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// ingest cost per meal as the caller sees it: a synchronous addMeal against a submit to the
+// write-behind queue. once the queue is full, submit runs at the worker's batched write rate
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class WriteBehindBenchmark {
+
+    @Param({"1000"})
+    public int mealCount;
+
+    @Param({"10000"})
+    public int capacity;
+
+    private EmbeddedCatalog catalog;
+    private DatabaseManager db;
+    private WriteBehindQueue queue;
+    private Random random;
+    private int added;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        catalog = EmbeddedCatalog.seed(mealCount);
+        db = catalog.getDatabaseManager();
+        queue = new WriteBehindQueue(db, capacity, WriteBehindQueue.DEFAULT_MAX_BATCH);
+        random = new Random(11);
+        added = mealCount;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        queue.close();
+        catalog.close();
+    }
+
+    @Benchmark
+    public int synchronousAddMeal() throws SQLException {
+        Main.Meal meal = EmbeddedCatalog.randomMeal(random, added++);
+        return db.addMeal(meal.getCategory(), meal.getName(), meal.getIngredients());
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> writeBehindSubmit() throws InterruptedException {
+        return queue.submit(EmbeddedCatalog.randomMeal(random, added++));
+    }
+}
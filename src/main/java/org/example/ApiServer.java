@@ -0,0 +1,344 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.example.MealRepository.DAYS_OF_WEEK;
+
+// read-only JSON API over the catalog, plans and shopping lists:
+//   GET /meals?category=breakfast[&order=alphabetical]
+//   GET /plan[?user=0&week=0]
+//   GET /shopping-list[?user=0&week=0&order=count]
+//   GET /search?ingredients=eggs,milk[&match=any]  or  GET /search?prefix=pan[&limit=20]
+//   GET /metrics  (the shared Metrics in Prometheus text format)
+// requests run on a fixed pool of REQUEST_THREADS platform threads (the build targets Java 17,
+// which has no virtual threads), database work goes through the repository (the
+// DatabaseManager's pool for JDBC) and catalog reads through a MealCatalogCache.
+// the server never writes, and meals added by other processes (batch, --import, the
+// interactive loop) reach no listener here: every CATALOG_REFRESH_SECONDS the meal count is
+// compared with the search index, and on a difference the index is rebuilt and the cache
+// emptied. /meals and /search can miss such meals for up to that long
+public class ApiServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    // pending connections the kernel keeps for us while all handlers are busy
+    public static final int BACKLOG = 4096;
+    // requests handled at once; the rest wait in the executor's queue
+    static final int REQUEST_THREADS = 256;
+    static final int DEFAULT_SEARCH_LIMIT = 20;
+    static final long CATALOG_REFRESH_SECONDS = 30;
+    static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final MealRepository db;
+    private final MealCatalogCache catalog;
+    private volatile MealSearchIndex searchIndex;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService refresher;
+
+    public ApiServer(MealRepository db, int port) throws IOException, SQLException {
+        this(db, new MealCatalogCache(db), MealSearchIndex.build(db), new InetSocketAddress(port));
+    }
+
+    public ApiServer(MealRepository db, MealCatalogCache catalog, MealSearchIndex searchIndex, InetSocketAddress address) throws IOException {
+        this.db = db;
+        this.catalog = catalog;
+        this.searchIndex = searchIndex;
+
+        this.executor = Executors.newFixedThreadPool(REQUEST_THREADS);
+        try {
+            this.server = HttpServer.create(address, BACKLOG);
+        } catch (IOException | RuntimeException e) {
+            // nothing was started, but the pool's threads would outlive the failed server
+            executor.shutdownNow();
+            throw e;
+        }
+        server.setExecutor(executor);
+        server.createContext("/meals", exchange -> handle(exchange, "/meals", this::meals));
+        server.createContext("/plan", exchange -> handle(exchange, "/plan", this::plan));
+        server.createContext("/shopping-list", exchange -> handle(exchange, "/shopping-list", this::shoppingList));
+        server.createContext("/search", exchange -> handle(exchange, "/search", this::search));
+        server.createContext("/metrics", exchange -> handle(exchange, "/metrics", Metrics.PROMETHEUS_CONTENT_TYPE,
+                params -> Metrics.shared().toPrometheus()));
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refreshCatalog();
+            } catch (SQLException | RuntimeException e) {
+                // the current catalog keeps being served, the next run tries again
+                e.printStackTrace();
+            }
+        }, CATALOG_REFRESH_SECONDS, CATALOG_REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // rebuilds the search index and empties the cache when the repository holds a different
+    // number of meals than the index; returns whether it did
+    boolean refreshCatalog() throws SQLException {
+        if (db.countMeals() == searchIndex.size()) {
+            return false;
+        }
+        MealSearchIndex rebuilt = MealSearchIndex.build(db);
+        MealSearchIndex previous = searchIndex;
+        searchIndex = rebuilt;
+        previous.detach();
+        catalog.invalidateAll();
+        return true;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        refresher.shutdownNow();
+    }
+
+    private String meals(Map<String, String> params) throws SQLException {
+        String category = InputValidator.normalizeCategory(params.get("category"));
+        if (category == null) {
+            throw new IllegalArgumentException("category must be one of " + String.join(", ", MealRepository.MEAL_CATEGORIES));
+        }
+
+        String order = params.getOrDefault("order", "added");
+        List<Main.Meal> meals;
+        if (order.equals("added")) {
+            meals = catalog.getMealsByCategory(category);
+        } else if (order.equals("alphabetical")) {
+            meals = catalog.getMealsByCategoryAlphabetical(category);
+        } else {
+            throw new IllegalArgumentException("order must be added or alphabetical");
+        }
+        return mealsJson(meals);
+    }
+
+    private String search(Map<String, String> params) {
+        String ingredients = params.get("ingredients");
+        String prefix = params.get("prefix");
+        if ((ingredients == null) == (prefix == null)) {
+            throw new IllegalArgumentException("search needs either ingredients or prefix");
+        }
+
+        if (prefix != null) {
+            int limit = intParam(params, "limit", DEFAULT_SEARCH_LIMIT);
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            return mealsJson(searchIndex.findByNamePrefix(prefix, limit));
+        }
+
+        List<String> names = Arrays.asList(ingredients.split(","));
+        String match = params.getOrDefault("match", "all");
+        if (match.equals("all")) {
+            return mealsJson(searchIndex.findByAllIngredients(names));
+        } else if (match.equals("any")) {
+            return mealsJson(searchIndex.findByAnyIngredient(names));
+        }
+        throw new IllegalArgumentException("match must be all or any");
+    }
+
+    private static String mealsJson(List<Main.Meal> meals) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < meals.size(); i++) {
+            Main.Meal meal = meals.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":").append(quote(meal.getName()))
+                    .append(",\"category\":").append(quote(meal.getCategory()))
+                    .append(",\"ingredients\":[");
+            List<String> ingredients = meal.getIngredients();
+            for (int j = 0; j < ingredients.size(); j++) {
+                if (j > 0) {
+                    json.append(',');
+                }
+                json.append(quote(ingredients.get(j)));
+            }
+            json.append("]}");
+        }
+        return json.append(']').toString();
+    }
+
+    // days in week order, each with its planned meal per category
+    private String plan(Map<String, String> params) throws SQLException {
+        Map<String, Map<String, String>> weeklyPlan = db.getPlannedMeals(
+                intParam(params, "user", MealRepository.DEFAULT_USER_ID),
+                intParam(params, "week", MealRepository.DEFAULT_WEEK));
+
+        StringBuilder json = new StringBuilder("{");
+        boolean firstDay = true;
+        for (String day : DAYS_OF_WEEK) {
+            Map<String, String> dayPlan = weeklyPlan.get(day);
+            if (dayPlan == null) {
+                continue;
+            }
+            if (!firstDay) {
+                json.append(',');
+            }
+            firstDay = false;
+
+            json.append(quote(day)).append(":{");
+            boolean firstMeal = true;
+            for (Map.Entry<String, String> meal : dayPlan.entrySet()) {
+                if (!firstMeal) {
+                    json.append(',');
+                }
+                firstMeal = false;
+                json.append(quote(meal.getKey())).append(':').append(quote(meal.getValue()));
+            }
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private String shoppingList(Map<String, String> params) throws SQLException, IOException {
+        String order = params.getOrDefault("order", "alphabetical");
+        MealRepository.ShoppingListOrder listOrder;
+        if (order.equals("alphabetical")) {
+            listOrder = MealRepository.ShoppingListOrder.ALPHABETICAL;
+        } else if (order.equals("count")) {
+            listOrder = MealRepository.ShoppingListOrder.BY_COUNT;
+        } else {
+            throw new IllegalArgumentException("order must be alphabetical or count");
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        db.forEachShoppingListRow(
+                intParam(params, "user", MealRepository.DEFAULT_USER_ID),
+                intParam(params, "week", MealRepository.DEFAULT_WEEK),
+                listOrder,
+                (ingredient, count) -> {
+                    if (json.length() > 1) {
+                        json.append(',');
+                    }
+                    json.append("{\"ingredient\":").append(quote(ingredient)).append(",\"count\":").append(count).append('}');
+                });
+        return json.append(']').toString();
+    }
+
+    private void handle(HttpExchange exchange, String path, Endpoint endpoint) throws IOException {
+        handle(exchange, path, JSON_CONTENT_TYPE, endpoint);
+    }
+
+    // latency is recorded per context, failures per status; both label sets stay small
+    private void handle(HttpExchange exchange, String path, String contentType, Endpoint endpoint) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                failed("404");
+                respond(exchange, 404, JSON_CONTENT_TYPE, error("not found"));
+            } else if (!exchange.getRequestMethod().equals("GET")) {
+                failed("405");
+                exchange.getResponseHeaders().set("Allow", "GET");
+                respond(exchange, 405, JSON_CONTENT_TYPE, error("method not allowed"));
+            } else {
+                respond(exchange, 200, contentType, endpoint.respond(parseQuery(exchange.getRequestURI().getRawQuery())));
+            }
+        } catch (IllegalArgumentException e) {
+            failed("400");
+            respond(exchange, 400, JSON_CONTENT_TYPE, error(e.getMessage()));
+        } catch (SQLException e) {
+            failed("500");
+            e.printStackTrace();
+            respondError(exchange, "database error");
+        } catch (IOException | RuntimeException e) {
+            // any other failure still answers, so the client is not left waiting for a timeout
+            failed("500");
+            e.printStackTrace();
+            respondError(exchange, "internal error");
+        } finally {
+            exchange.close();
+            Metrics.shared().recordSince(Metrics.HTTP_REQUEST_SECONDS, "path", path, start);
+        }
+    }
+
+    private static void failed(String status) {
+        Metrics.shared().counter(Metrics.HTTP_ERRORS, "status", status).increment();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    // a 500 unless the failed response already sent its headers, in which case closing the
+    // exchange is all that is left
+    private static void respondError(HttpExchange exchange, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        try {
+            respond(exchange, 500, JSON_CONTENT_TYPE, error(message));
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(decode(name), decode(value));
+        }
+        return params;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private static String quote(String value) {
+        return "\"" + ShoppingListExporter.jsonString(value) + "\"";
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private interface Endpoint {
+        String respond(Map<String, String> params) throws SQLException, IOException;
+    }
+}
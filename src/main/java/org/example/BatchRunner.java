@@ -0,0 +1,317 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+
+// headless counterpart of the interactive loop. commands share one connection and run as one
+// transaction that is rolled back if any of them fails; fields are separated by ';', e.g.
+//   add;breakfast;Pancakes;Flour,Eggs,Milk
+//   import;meals.txt   (one category;name;ingredients line per meal, progress printed per chunk)
+//   show;breakfast
+//   plan;42            (generated plan, the optional number is the seed)
+//   list plan
+//   save;shopping.txt
+//   snapshot;catalog.snap  (writes a CatalogSnapshot of the catalog)
+//   metrics            (prints the metrics report; metrics;metrics.prom writes Prometheus text)
+// files are written next to their target as <name>.pending and moved into place once the batch
+// commits, so a rolled-back batch leaves no output behind
+public class BatchRunner {
+    static final String PENDING_SUFFIX = ".pending";
+    static final String FIELD_SEPARATOR = ";";
+    static final int PLAN_NO_REPEAT_DAYS = 7;
+    static final double PLAN_OVERLAP_TARGET = 0.5;
+    // metric labels are limited to these, anything else counts as "unknown"
+    static final List<String> COMMANDS = Arrays.asList("add", "import", "show", "plan", "list plan", "save", "snapshot", "metrics");
+
+    private final Connection connection;
+    private final DatabaseManager db;
+    private final MealCatalogCache catalog;
+    private final PrintStream out;
+    // target -> file written in its place, in command order
+    private final Map<Path, Path> pendingFiles = new LinkedHashMap<>();
+
+    public BatchRunner(Connection connection, PrintStream out) {
+        this(connection, new DatabaseManager(connection), out);
+    }
+
+    BatchRunner(Connection connection, DatabaseManager db, PrintStream out) {
+        this.connection = connection;
+        this.db = db;
+        this.catalog = new MealCatalogCache(db);
+        this.out = out;
+    }
+
+    // --file <path> reads one command per line, otherwise every argument is a command
+    public static List<String> parseArguments(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--file")) {
+            if (args.length != 2) {
+                throw new IllegalArgumentException("Usage: --file <commands>");
+            }
+            return Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8);
+        }
+        return Arrays.asList(args);
+    }
+
+    // blank lines and lines starting with '#' are skipped
+    public List<CommandTiming> run(List<String> commands) throws SQLException, IOException {
+        long batchStart = System.nanoTime();
+        List<CommandTiming> timings = new ArrayList<>();
+        db.initializeDatabase();
+
+        boolean autoCommit = connection.getAutoCommit();
+        boolean committed = false;
+        try {
+            connection.setAutoCommit(false);
+
+            int line = 0;
+            for (String command : commands) {
+                line++;
+                String trimmed = command.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+
+                // the command that fails is timed too, so the summary shows where the batch stopped
+                long start = System.nanoTime();
+                try {
+                    execute(trimmed);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + line + ": " + e.getMessage(), e);
+                } finally {
+                    timings.add(new CommandTiming(trimmed, System.nanoTime() - start));
+                }
+            }
+
+            // through the manager, so listeners hear of the added meals only once they are committed
+            db.commit();
+            committed = true;
+        } catch (SQLException | IOException | RuntimeException e) {
+            try {
+                db.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            // the cache may hold listings that saw the batch's own meals
+            catalog.invalidateAll();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            if (!committed) {
+                discardPendingFiles();
+                printSummary(timings, System.nanoTime() - batchStart, "rolled back");
+            }
+        }
+
+        try {
+            publishPendingFiles();
+        } catch (IOException e) {
+            printSummary(timings, System.nanoTime() - batchStart, "committed, output files not written (" + e + ")");
+            throw e;
+        }
+        printSummary(timings, System.nanoTime() - batchStart, "committed");
+        return timings;
+    }
+
+    // where a command writes the file it names until the batch commits
+    private Path pendingFile(String filename) {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path pending = target.resolveSibling(target.getFileName() + PENDING_SUFFIX);
+        pendingFiles.put(target, pending);
+        return pending;
+    }
+
+    private void publishPendingFiles() throws IOException {
+        try {
+            for (Map.Entry<Path, Path> file : pendingFiles.entrySet()) {
+                Files.move(file.getValue(), file.getKey(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            discardPendingFiles();
+        }
+    }
+
+    private void discardPendingFiles() {
+        for (Path pending : pendingFiles.values()) {
+            try {
+                Files.deleteIfExists(pending);
+            } catch (IOException ignored) {
+                // a leftover .pending file is overwritten by the next batch writing that target
+            }
+        }
+        pendingFiles.clear();
+    }
+
+    void execute(String command) throws SQLException, IOException {
+        String[] fields = command.split(FIELD_SEPARATOR, -1);
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+
+        String name = COMMANDS.contains(fields[0]) ? fields[0] : "unknown";
+        long start = System.nanoTime();
+        try {
+            dispatch(fields);
+        } catch (SQLException | IOException | RuntimeException e) {
+            Metrics.shared().counter(Metrics.COMMAND_ERRORS, "command", name).increment();
+            throw e;
+        }
+        Metrics.shared().recordSince(Metrics.COMMAND_SECONDS, "command", name, start);
+    }
+
+    private void dispatch(String[] fields) throws SQLException, IOException {
+        switch (fields[0]) {
+            case "add":
+                addMeal(fields);
+                break;
+            case "show":
+                expectFields(fields, 2, "show;<category>");
+                showMeals(fields[1]);
+                break;
+            case "plan":
+                if (fields.length > 2) {
+                    throw new IllegalArgumentException("Usage: plan[;<seed>]");
+                }
+                planMeals(fields.length == 2 ? parseSeed(fields[1]) : 0L);
+                break;
+            case "list plan":
+                expectFields(fields, 1, "list plan");
+                listPlan();
+                break;
+            case "save":
+                expectFields(fields, 2, "save;<filename>");
+                save(fields[1]);
+                break;
+            case "import":
+                expectFields(fields, 2, "import;<filename>");
+                importMeals(fields[1]);
+                break;
+            case "snapshot":
+                expectFields(fields, 2, "snapshot;<filename>");
+                snapshot(fields[1]);
+                break;
+            case "metrics":
+                if (fields.length > 2) {
+                    throw new IllegalArgumentException("Usage: metrics[;<filename>]");
+                }
+                metrics(fields.length == 2 ? fields[1] : null);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + fields[0]);
+        }
+    }
+
+    private void addMeal(String[] fields) throws SQLException {
+        expectFields(fields, 4, "add;<category>;<name>;<ingredient>,<ingredient>...");
+        Main.Meal meal = MealImport.parseMeal(fields[1], fields[2], fields[3]);
+        catalog.addMeal(meal.getCategory(), meal.getName(), meal.getIngredients());
+        out.println("The meal has been added!");
+    }
+
+    // joins the batch's transaction, so the whole file is committed or rolled back with it
+    private void importMeals(String filename) throws SQLException, IOException {
+        new MealImport(db, out).importFile(Paths.get(filename));
+        catalog.invalidateAll();
+    }
+
+    private void showMeals(String input) throws SQLException {
+        String category = category(input);
+        Main.printMeals(out, category, catalog.getMealsByCategory(category));
+    }
+
+    private static String category(String input) {
+        String category = InputValidator.normalizeCategory(input);
+        if (category == null) {
+            throw new IllegalArgumentException("Wrong meal category: " + input);
+        }
+        return category;
+    }
+
+    private void planMeals(long seed) throws SQLException {
+        PlanGenerator.GeneratedPlan plan = PlanGenerator
+                .fromDatabase(db, 1, PLAN_NO_REPEAT_DAYS, PLAN_OVERLAP_TARGET)
+                .generate(seed);
+        plan.saveWeek(db, MealRepository.DEFAULT_USER_ID, MealRepository.DEFAULT_WEEK);
+        Main.printPlan(out, plan.getPlan(0, "breakfast"), plan.getPlan(0, "lunch"), plan.getPlan(0, "dinner"));
+    }
+
+    private void listPlan() throws SQLException {
+        Map<String, Map<String, String>> weeklyPlan = db.getPlannedMeals();
+        if (weeklyPlan.isEmpty()) {
+            out.println("No plan found. Please create a plan first.");
+            return;
+        }
+        Main.printWeeklyPlan(out, weeklyPlan);
+    }
+
+    private void save(String filename) throws SQLException, IOException {
+        if (!db.hasPlan()) {
+            throw new IllegalArgumentException("Unable to save. Plan your meals first.");
+        }
+        ShoppingListExporter.ExportStats stats = new ShoppingListExporter(db).export(pendingFile(filename),
+                ShoppingListExporter.Format.TEXT, MealRepository.ShoppingListOrder.ALPHABETICAL);
+        out.println("Saved! (" + stats + ")");
+    }
+
+    private void snapshot(String filename) throws SQLException, IOException {
+        CatalogSnapshot snapshot = CatalogSnapshot.refresh(db, pendingFile(filename));
+        out.println("Snapshot written: " + snapshot.getMealCount() + " meals");
+    }
+
+    private void metrics(String filename) throws IOException {
+        if (filename == null) {
+            out.print(Metrics.shared().report());
+            return;
+        }
+        Metrics.shared().writePrometheus(pendingFile(filename));
+        out.println("Metrics written to " + filename);
+    }
+
+    private void printSummary(List<CommandTiming> timings, long elapsedNanos, String outcome) {
+        out.println();
+        out.println(String.format("Batch %s: %d commands in %.2f ms",
+                outcome, timings.size(), elapsedNanos / 1_000_000.0));
+        for (CommandTiming timing : timings) {
+            out.println(String.format("%10.2f ms  %s", timing.getElapsedNanos() / 1_000_000.0, timing.getCommand()));
+        }
+    }
+
+    private static void expectFields(String[] fields, int count, String usage) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+
+    private static long parseSeed(String seed) {
+        try {
+            return Long.parseLong(seed);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong seed: " + seed);
+        }
+    }
+
+    public static class CommandTiming {
+        private final String command;
+        private final long elapsedNanos;
+
+        CommandTiming(String command, long elapsedNanos) {
+            this.command = command;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
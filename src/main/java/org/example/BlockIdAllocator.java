@@ -0,0 +1,44 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// in-process allocator: reads the current maximum id once, then counts up in memory. only safe
+// while this process is the sole writer; several processes need a SequenceIdAllocator
+public class BlockIdAllocator implements IdAllocator {
+    private final Source currentMax;
+    private final AtomicLong next = new AtomicLong();
+    private volatile boolean seeded;
+
+    public BlockIdAllocator(Source currentMax) {
+        this.currentMax = currentMax;
+    }
+
+    @Override
+    public int nextId() throws SQLException {
+        return reserve(1);
+    }
+
+    // reserves count consecutive ids and returns the first one
+    public int reserve(int count) throws SQLException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+        if (!seeded) {
+            seed();
+        }
+
+        long first = next.getAndAdd(count);
+        if (first + count - 1 > Integer.MAX_VALUE) {
+            throw new SQLException("Id space exhausted at " + first);
+        }
+        return (int) first;
+    }
+
+    private synchronized void seed() throws SQLException {
+        if (!seeded) {
+            next.set(currentMax.fetch() + 1);
+            seeded = true;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.*;
+
+// stands in for a listener while the catalog is loaded into it. the listener is registered
+// before the load so no meal is missed, which means a meal committed meanwhile can come both
+// from a page of the load and from addMeals; the ids delivered either way are remembered until
+// the load is done, and a meal is handed to the listener only the first time
+class CatalogLoad implements MealRepository.MealListener {
+    static final int PAGE_SIZE = 1000;
+
+    private final MealRepository.MealListener listener;
+    // null once the load is done
+    private Set<Integer> delivered = new HashSet<>();
+
+    CatalogLoad(MealRepository.MealListener listener) {
+        this.listener = listener;
+    }
+
+    void run(MealRepository db) throws SQLException {
+        for (String category : MealRepository.MEAL_CATEGORIES) {
+            MealPage page = null;
+            do {
+                page = db.getMealsByCategoryPage(category, MealRepository.MealOrder.ADDED, page, PAGE_SIZE);
+                deliver(page.getMeals(), page.getMealIds());
+            } while (page.hasMore());
+        }
+        synchronized (this) {
+            delivered = null;
+        }
+    }
+
+    @Override
+    public void mealsAdded(List<Main.Meal> meals, int[] mealIds) {
+        deliver(meals, mealIds);
+    }
+
+    private synchronized void deliver(List<Main.Meal> meals, int[] mealIds) {
+        if (delivered == null) {
+            listener.mealsAdded(meals, mealIds);
+            return;
+        }
+        List<Main.Meal> fresh = new ArrayList<>(meals.size());
+        int[] freshIds = new int[mealIds.length];
+        for (int i = 0; i < mealIds.length; i++) {
+            if (delivered.add(mealIds[i])) {
+                freshIds[fresh.size()] = mealIds[i];
+                fresh.add(meals.get(i));
+            }
+        }
+        if (!fresh.isEmpty()) {
+            listener.mealsAdded(fresh, Arrays.copyOf(freshIds, fresh.size()));
+        }
+    }
+}
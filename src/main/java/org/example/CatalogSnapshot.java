@@ -0,0 +1,309 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+import static org.example.MealRepository.MEAL_CATEGORIES;
+
+// read-only columnar copy of the whole catalog in one memory-mapped file. meals are grouped by
+// category, the columns are read in place, and nothing is materialized until getMeal is called.
+//
+// layout (big-endian ints):
+//   header           magic, version, mealCount, ingredientCount, nameBlobLength, ingredientRefCount,
+//                    ingredientNameBlobLength, categoryStart[MEAL_CATEGORIES.length + 1]
+//   categoryCodes    byte per meal, padded to 4 bytes
+//   nameOffsets      int[mealCount + 1] into the name blob
+//   ingredientStart  int[mealCount + 1] into ingredientRefs
+//   alphabetical     int[mealCount], meal indexes sorted by name within each category
+//   ingredientRefs   int[ingredientRefCount], file-local ingredient ids
+//   ingredientNames  int[ingredientCount + 1] offsets into the ingredient name blob
+//   name blob, ingredient name blob (UTF-8)
+public class CatalogSnapshot {
+    static final int MAGIC = 0x4D504353;
+    static final int VERSION = 1;
+    private static final int HEADER_INTS = 7 + MEAL_CATEGORIES.length + 1;
+
+    private final ByteBuffer buffer;
+    private final int mealCount;
+    private final int[] categoryStart;
+    private final int nameOffsets;
+    private final int ingredientStart;
+    private final int alphabetical;
+    private final int ingredientRefs;
+    private final int nameBlob;
+    // file-local ingredient id -> id in the dictionary
+    private final int[] dictionaryIds;
+    private final IngredientDictionary dictionary;
+
+    private CatalogSnapshot(ByteBuffer buffer, IngredientDictionary dictionary) throws IOException {
+        this.buffer = buffer;
+        this.dictionary = dictionary;
+
+        if (buffer.capacity() < HEADER_INTS * 4 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalog snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog snapshot version: " + buffer.getInt(4));
+        }
+        mealCount = buffer.getInt(8);
+        int ingredientCount = buffer.getInt(12);
+        int nameBlobLength = buffer.getInt(16);
+        int ingredientRefCount = buffer.getInt(20);
+        int ingredientNameBlobLength = buffer.getInt(24);
+        categoryStart = new int[MEAL_CATEGORIES.length + 1];
+        for (int c = 0; c <= MEAL_CATEGORIES.length; c++) {
+            categoryStart[c] = buffer.getInt(28 + 4 * c);
+        }
+
+        int codes = HEADER_INTS * 4;
+        nameOffsets = codes + padded(mealCount);
+        ingredientStart = nameOffsets + 4 * (mealCount + 1);
+        alphabetical = ingredientStart + 4 * (mealCount + 1);
+        ingredientRefs = alphabetical + 4 * mealCount;
+        int ingredientNames = ingredientRefs + 4 * ingredientRefCount;
+        nameBlob = ingredientNames + 4 * (ingredientCount + 1);
+        int ingredientNameBlob = nameBlob + nameBlobLength;
+
+        if ((long) ingredientNameBlob + ingredientNameBlobLength != buffer.capacity()) {
+            throw new IOException("Truncated catalog snapshot");
+        }
+
+        dictionaryIds = new int[ingredientCount];
+        for (int i = 0; i < ingredientCount; i++) {
+            int start = buffer.getInt(ingredientNames + 4 * i);
+            int end = buffer.getInt(ingredientNames + 4 * (i + 1));
+            dictionaryIds[i] = dictionary.intern(decode(ingredientNameBlob + start, end - start));
+        }
+    }
+
+    // maps the file; ingredient names are interned into the shared dictionary
+    public static CatalogSnapshot load(Path file) throws IOException {
+        return load(file, IngredientDictionary.shared());
+    }
+
+    public static CatalogSnapshot load(Path file, IngredientDictionary dictionary) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Catalog snapshot too large to map: " + channel.size() + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CatalogSnapshot(buffer, dictionary);
+        }
+    }
+
+    // re-reads the catalog from the database, replaces the file atomically and maps the new one
+    public static CatalogSnapshot refresh(MealRepository db, Path file) throws SQLException, IOException {
+        Map<String, List<Main.Meal>> mealsByCategory = new HashMap<>();
+        for (String category : MEAL_CATEGORIES) {
+            mealsByCategory.put(category, db.getMealsByCategory(category));
+        }
+        write(mealsByCategory, file);
+        return load(file);
+    }
+
+    // meals keep their order within a category
+    public static void write(Map<String, List<Main.Meal>> mealsByCategory, Path file) throws IOException {
+        List<Main.Meal> meals = new ArrayList<>();
+        int[] categoryStart = new int[MEAL_CATEGORIES.length + 1];
+        for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+            categoryStart[c] = meals.size();
+            meals.addAll(mealsByCategory.getOrDefault(MEAL_CATEGORIES[c], Collections.emptyList()));
+        }
+        categoryStart[MEAL_CATEGORIES.length] = meals.size();
+
+        Map<String, Integer> ingredientIds = new LinkedHashMap<>();
+        List<byte[]> names = new ArrayList<>(meals.size());
+        int nameBlobLength = 0;
+        int ingredientRefCount = 0;
+        for (Main.Meal meal : meals) {
+            byte[] name = meal.getName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            nameBlobLength += name.length;
+            for (String ingredient : meal.getIngredients()) {
+                ingredientIds.putIfAbsent(ingredient, ingredientIds.size());
+            }
+            ingredientRefCount += meal.getIngredientIds().length;
+        }
+
+        List<byte[]> ingredientNames = new ArrayList<>(ingredientIds.size());
+        int ingredientNameBlobLength = 0;
+        for (String ingredient : ingredientIds.keySet()) {
+            byte[] name = ingredient.getBytes(StandardCharsets.UTF_8);
+            ingredientNames.add(name);
+            ingredientNameBlobLength += name.length;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(meals.size());
+            out.writeInt(ingredientIds.size());
+            out.writeInt(nameBlobLength);
+            out.writeInt(ingredientRefCount);
+            out.writeInt(ingredientNameBlobLength);
+            for (int start : categoryStart) {
+                out.writeInt(start);
+            }
+
+            for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+                for (int i = categoryStart[c]; i < categoryStart[c + 1]; i++) {
+                    out.writeByte(c);
+                }
+            }
+            for (int i = meals.size(); i < padded(meals.size()); i++) {
+                out.writeByte(0);
+            }
+
+            int offset = 0;
+            for (byte[] name : names) {
+                out.writeInt(offset);
+                offset += name.length;
+            }
+            out.writeInt(offset);
+
+            offset = 0;
+            for (Main.Meal meal : meals) {
+                out.writeInt(offset);
+                offset += meal.getIngredientIds().length;
+            }
+            out.writeInt(offset);
+
+            for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+                Integer[] order = new Integer[categoryStart[c + 1] - categoryStart[c]];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = categoryStart[c] + i;
+                }
+                // stable, so equal names keep the order they were added in
+                Arrays.sort(order, Comparator.comparing(i -> meals.get(i).getName()));
+                for (int index : order) {
+                    out.writeInt(index);
+                }
+            }
+
+            for (Main.Meal meal : meals) {
+                for (String ingredient : meal.getIngredients()) {
+                    out.writeInt(ingredientIds.get(ingredient));
+                }
+            }
+
+            offset = 0;
+            for (byte[] name : ingredientNames) {
+                out.writeInt(offset);
+                offset += name.length;
+            }
+            out.writeInt(offset);
+
+            for (byte[] name : names) {
+                out.write(name);
+            }
+            for (byte[] name : ingredientNames) {
+                out.write(name);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getMealCount() {
+        return mealCount;
+    }
+
+    public int getMealCount(String category) {
+        int c = categoryCode(category);
+        return categoryStart[c + 1] - categoryStart[c];
+    }
+
+    public String getCategory(int meal) {
+        checkMeal(meal);
+        return MEAL_CATEGORIES[buffer.get(HEADER_INTS * 4 + meal)];
+    }
+
+    public String getName(int meal) {
+        checkMeal(meal);
+        int start = buffer.getInt(nameOffsets + 4 * meal);
+        int end = buffer.getInt(nameOffsets + 4 * (meal + 1));
+        return decode(nameBlob + start, end - start);
+    }
+
+    public int getIngredientCount(int meal) {
+        checkMeal(meal);
+        return buffer.getInt(ingredientStart + 4 * (meal + 1)) - buffer.getInt(ingredientStart + 4 * meal);
+    }
+
+    // id in getDictionary()
+    public int getIngredientId(int meal, int index) {
+        if (index < 0 || index >= getIngredientCount(meal)) {
+            throw new IndexOutOfBoundsException("Ingredient " + index + " of meal " + meal);
+        }
+        return dictionaryIds[buffer.getInt(ingredientRefs + 4 * (buffer.getInt(ingredientStart + 4 * meal) + index))];
+    }
+
+    public IngredientDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public Main.Meal getMeal(int meal) {
+        int[] ingredientIds = new int[getIngredientCount(meal)];
+        for (int i = 0; i < ingredientIds.length; i++) {
+            ingredientIds[i] = getIngredientId(meal, i);
+        }
+        return new Main.Meal(getCategory(meal), getName(meal), ingredientIds, dictionary);
+    }
+
+    // meal indexes of a category without creating any objects
+    public void forEachMeal(String category, boolean alphabeticalOrder, IntConsumer action) {
+        int c = categoryCode(category);
+        for (int i = categoryStart[c]; i < categoryStart[c + 1]; i++) {
+            action.accept(alphabeticalOrder ? buffer.getInt(alphabetical + 4 * i) : i);
+        }
+    }
+
+    public List<Main.Meal> getMealsByCategory(String category) {
+        List<Main.Meal> meals = new ArrayList<>(getMealCount(category));
+        forEachMeal(category, false, meal -> meals.add(getMeal(meal)));
+        return meals;
+    }
+
+    public List<Main.Meal> getMealsByCategoryAlphabetical(String category) {
+        List<Main.Meal> meals = new ArrayList<>(getMealCount(category));
+        forEachMeal(category, true, meal -> meals.add(getMeal(meal)));
+        return meals;
+    }
+
+    private static int categoryCode(String category) {
+        for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+            if (MEAL_CATEGORIES[c].equalsIgnoreCase(category)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Unknown category: " + category);
+    }
+
+    private void checkMeal(int meal) {
+        if (meal < 0 || meal >= mealCount) {
+            throw new IndexOutOfBoundsException("Meal " + meal + " of " + mealCount);
+        }
+    }
+
+    private String decode(int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int padded(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+}
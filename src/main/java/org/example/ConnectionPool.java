@@ -0,0 +1,482 @@
+package org.example;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// small built-in connection pool. connections handed out are proxies: close() returns the
+// connection to the pool, and prepareStatement(sql) is served from a per-connection LRU cache
+// of statements whose close() only resets them, so repeated calls skip re-parsing the SQL.
+// statements a borrower leaves open are closed when the connection is returned, and a cached
+// one is then dropped from the cache, so a failed call cannot keep its statement or cursor open.
+// a daemon thread closes connections that stayed idle too long, so an unused pool shrinks
+public class ConnectionPool implements DataSource, AutoCloseable {
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60_000;
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 5_000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+
+    // most recently returned first, so the connections at the tail are the ones that go idle
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password) {
+        this(() -> DriverManager.getConnection(url, user, password), DEFAULT_MAX_SIZE, DEFAULT_BORROW_TIMEOUT_MILLIS,
+                DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_VALIDATION_INTERVAL_MILLIS, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    // idle connections older than idleTimeoutMillis are closed; connections idle for longer than
+    // validationIntervalMillis are checked with isValid() before they are handed out again
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis,
+                          long validationIntervalMillis, int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeoutMillis);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a pooled connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+
+        try {
+            evictIdle();
+
+            PooledConnection pooled;
+            while ((pooled = pollIdle()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.borrow();
+                }
+                pooled.closePhysical();
+            }
+            return new PooledConnection(factory.create()).borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the pool's credentials");
+    }
+
+    // closes connections that have been idle for longer than the idle timeout
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+
+        synchronized (idle) {
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.returnedAt < idleTimeoutMillis) {
+                    break;
+                }
+                it.remove();
+                expired.add(pooled);
+            }
+        }
+
+        for (PooledConnection pooled : expired) {
+            pooled.closePhysical();
+        }
+    }
+
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        List<PooledConnection> remaining;
+        synchronized (idle) {
+            remaining = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (PooledConnection pooled : remaining) {
+            pooled.closePhysical();
+        }
+    }
+
+    private PooledConnection pollIdle() {
+        synchronized (idle) {
+            return idle.pollFirst();
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.returnedAt < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return pooled.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        try {
+            boolean reusable = !closed && !pooled.raw.isClosed();
+            if (reusable && !pooled.raw.getAutoCommit()) {
+                // never hand an open transaction to the next borrower
+                pooled.raw.rollback();
+                pooled.raw.setAutoCommit(true);
+            }
+
+            if (reusable) {
+                pooled.returnedAt = System.currentTimeMillis();
+                synchronized (idle) {
+                    idle.addFirst(pooled);
+                }
+            } else {
+                pooled.closePhysical();
+            }
+        } catch (SQLException e) {
+            pooled.closePhysical();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // one physical connection and its statement cache
+    private class PooledConnection {
+        private final Connection raw;
+        private final Map<String, CachedStatement> statements;
+        private volatile long returnedAt;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() > statementCacheSize) {
+                        // a borrowed statement is closed when its borrower is done with it
+                        eldest.getValue().evict();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new ConnectionHandle(this));
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return raw.prepareStatement(sql);
+            }
+
+            CachedStatement cached = statements.get(sql);
+            if (cached == null) {
+                cached = new CachedStatement(sql, raw.prepareStatement(sql));
+                statements.put(sql, cached);
+            } else if (cached.inUse) {
+                // the same SQL is already open on this connection, give out a private copy
+                return raw.prepareStatement(sql);
+            }
+            return cached.borrow();
+        }
+
+        // a statement its borrower never closed may still hold a cursor, so it is not reused
+        void discard(CachedStatement cached) {
+            statements.remove(cached.sql, cached);
+            cached.inUse = false;
+            cached.closePhysical();
+        }
+
+        void closePhysical() {
+            for (CachedStatement cached : statements.values()) {
+                cached.closePhysical();
+            }
+            statements.clear();
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+                // the connection is being discarded anyway
+            }
+        }
+    }
+
+    private class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        // statements handed out through this handle that were open when last looked at
+        private final List<Statement> open = new ArrayList<>();
+        private boolean returned;
+
+        ConnectionHandle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("close")) {
+                if (!returned) {
+                    returned = true;
+                    closeLeftOpen();
+                    giveBack(pooled);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return returned || pooled.raw.isClosed();
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (name.equals("prepareStatement") && args.length == 1) {
+                return track(pooled.prepare((String) args[0]));
+            }
+            Object result = ConnectionPool.invoke(pooled.raw, method, args);
+            if (result instanceof Statement) {
+                track((Statement) result);
+            }
+            return result;
+        }
+
+        private Statement track(Statement statement) throws SQLException {
+            open.removeIf(ConnectionPool::isClosedQuietly);
+            open.add(statement);
+            return statement;
+        }
+
+        private void closeLeftOpen() {
+            for (Statement statement : open) {
+                if (isClosedQuietly(statement)) {
+                    continue;
+                }
+                if (Proxy.isProxyClass(statement.getClass())
+                        && Proxy.getInvocationHandler(statement) instanceof StatementHandle) {
+                    ((StatementHandle) Proxy.getInvocationHandler(statement)).discard(pooled);
+                } else {
+                    try {
+                        statement.close();
+                    } catch (SQLException ignored) {
+                        // the borrower is gone, nothing is left to report it to
+                    }
+                }
+            }
+            open.clear();
+        }
+    }
+
+    private static boolean isClosedQuietly(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    // one cached statement; every borrow gets its own proxy, which stops working once closed so a
+    // stale reference cannot reach the statement after the next borrower got it
+    private static class CachedStatement {
+        private final String sql;
+        private final PreparedStatement raw;
+        private final int defaultFetchSize;
+        private final int defaultMaxRows;
+        private final int defaultQueryTimeout;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(String sql, PreparedStatement raw) throws SQLException {
+            this.sql = sql;
+            this.raw = raw;
+            this.defaultFetchSize = raw.getFetchSize();
+            this.defaultMaxRows = raw.getMaxRows();
+            this.defaultQueryTimeout = raw.getQueryTimeout();
+        }
+
+        PreparedStatement borrow() {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandle(this));
+        }
+
+        // back to the state it was prepared in, settings included
+        void giveBack() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                closePhysical();
+                return;
+            }
+            raw.clearParameters();
+            raw.clearBatch();
+            raw.setFetchSize(defaultFetchSize);
+            raw.setMaxRows(defaultMaxRows);
+            raw.setQueryTimeout(defaultQueryTimeout);
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closePhysical();
+            }
+        }
+
+        void closePhysical() {
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+                // the statement is being discarded anyway
+            }
+        }
+    }
+
+    private static class StatementHandle implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed;
+
+        StatementHandle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        void discard(PooledConnection pooled) {
+            if (!closed) {
+                closed = true;
+                pooled.discard(cached);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    cached.giveBack();
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return closed || cached.raw.isClosed();
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (closed) {
+                throw new SQLException("statement closed");
+            }
+            return ConnectionPool.invoke(cached.raw, method, args);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
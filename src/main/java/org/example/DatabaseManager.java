@@ -1,10 +1,27 @@
 package org.example;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class DatabaseManager {
-    private Connection connection;
+// the JDBC MealRepository: PostgreSQL in production, embedded H2 in the tests and benchmarks
+public class DatabaseManager implements MealRepository {
+    // either one connection shared by every call, or a pool to borrow from per call
+    private final Connection sharedConnection;
+    private final DataSource dataSource;
+    private final ThreadLocal<BorrowedConnection> borrowed = new ThreadLocal<>();
+    private IdAllocator mealIds = new BlockIdAllocator(this::maxMealId);
+    private IdAllocator ingredientIds = new BlockIdAllocator(this::maxIngredientId);
+    private final List<MealListener> mealListeners = new CopyOnWriteArrayList<>();
+    // chunks added inside a transaction the caller holds, told to the listeners on commit().
+    // only the shared connection can stay in a transaction between calls, so one queue will do
+    private final List<Runnable> uncommittedNotices = new ArrayList<>();
+    private Metrics metrics = Metrics.shared();
+    // whether the database is PostgreSQL, null until first asked
+    private volatile Boolean postgres;
 
     private static final String CREATE_MEALS_TABLE_QUERY = "CREATE TABLE IF NOT EXISTS meals (" +
             "category VARCHAR(1024) NOT NULL," +
@@ -22,240 +39,1248 @@ public class DatabaseManager {
             "meal_id INTEGER NOT NULL," +
             "meal_option VARCHAR(1024) NOT NULL" +
             ")";
+    private static final String CREATE_SCHEMA_VERSION_TABLE_QUERY = "CREATE TABLE IF NOT EXISTS schema_version (" +
+            "version INTEGER PRIMARY KEY," +
+            "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL" +
+            ")";
 
-    public static final String[] DAYS_OF_WEEK = {
-            "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"
+    // schema changes applied in order on top of the base tables; entry i upgrades to version i + 1.
+    // never edit a released entry, append a new one instead
+    private static final String[][] MIGRATIONS = {
+            {
+                    "ALTER TABLE meals ADD CONSTRAINT meals_pkey PRIMARY KEY (meal_id)",
+                    "ALTER TABLE ingredients ADD CONSTRAINT ingredients_pkey PRIMARY KEY (ingredient_id)",
+                    "ALTER TABLE plan ADD CONSTRAINT plan_pkey PRIMARY KEY (day, meal_category)"
+            },
+            {
+                    "CREATE INDEX IF NOT EXISTS meals_category_idx ON meals (LOWER(category))",
+                    "CREATE INDEX IF NOT EXISTS meals_meal_idx ON meals (meal)",
+                    "CREATE INDEX IF NOT EXISTS ingredients_meal_id_idx ON ingredients (meal_id)"
+            },
+            {
+                    // plans are kept per user and week; existing rows become user 0, week 0
+                    "ALTER TABLE plan ADD COLUMN user_id INTEGER DEFAULT 0 NOT NULL",
+                    "ALTER TABLE plan ADD COLUMN week INTEGER DEFAULT 0 NOT NULL",
+                    "ALTER TABLE plan DROP CONSTRAINT plan_pkey",
+                    "ALTER TABLE plan ADD CONSTRAINT plan_pkey PRIMARY KEY (user_id, week, day, meal_category)"
+            },
+            {
+                    // append-only log of plan slot changes; meal ids are 0 for an empty slot
+                    "CREATE TABLE IF NOT EXISTS plan_changes (" +
+                            "seq BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY," +
+                            "user_id INTEGER NOT NULL," +
+                            "week INTEGER NOT NULL," +
+                            "day VARCHAR(1024) NOT NULL," +
+                            "meal_category VARCHAR(1024) NOT NULL," +
+                            "old_meal_id INTEGER NOT NULL," +
+                            "old_meal VARCHAR(1024)," +
+                            "new_meal_id INTEGER NOT NULL," +
+                            "new_meal VARCHAR(1024)," +
+                            "changed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL" +
+                            ")",
+                    // the slots planned so far open the log, so replaying it from 0 rebuilds every plan
+                    "INSERT INTO plan_changes (user_id, week, day, meal_category, old_meal_id, new_meal_id, new_meal) " +
+                            "SELECT user_id, week, day, meal_category, 0, meal_id, meal_option FROM plan"
+            },
+            {
+                    // ingredient counts of every planned week, kept up to date by the plan writes
+                    "CREATE TABLE IF NOT EXISTS shopping_list (" +
+                            "user_id INTEGER NOT NULL," +
+                            "week INTEGER NOT NULL," +
+                            "ingredient VARCHAR(1024) NOT NULL," +
+                            "amount INTEGER NOT NULL," +
+                            "CONSTRAINT shopping_list_pkey PRIMARY KEY (user_id, week, ingredient)" +
+                            ")",
+                    "INSERT INTO shopping_list (user_id, week, ingredient, amount) " +
+                            "SELECT p.user_id, p.week, i.ingredient, COUNT(*) FROM plan p JOIN ingredients i ON i.meal_id = p.meal_id " +
+                            "GROUP BY p.user_id, p.week, i.ingredient"
+            },
+            {
+                    // keys of the category pages; the category index is a prefix of both
+                    "CREATE INDEX IF NOT EXISTS meals_category_meal_id_idx ON meals (LOWER(category), meal_id)",
+                    "CREATE INDEX IF NOT EXISTS meals_category_meal_idx ON meals (LOWER(category), meal, meal_id)",
+                    "DROP INDEX IF EXISTS meals_category_idx"
+            },
+            {
+                    // one row per planned week, locked by its plan writers so their diffs never overlap
+                    "CREATE TABLE IF NOT EXISTS plan_weeks (" +
+                            "user_id INTEGER NOT NULL," +
+                            "week INTEGER NOT NULL," +
+                            "CONSTRAINT plan_weeks_pkey PRIMARY KEY (user_id, week)" +
+                            ")",
+                    "INSERT INTO plan_weeks (user_id, week) SELECT DISTINCT user_id, week FROM plan"
+            }
     };
 
+    // expression indexes are PostgreSQL-only; other engines (such as the embedded H2 used by the
+    // benchmarks) get the closest plain equivalent instead
+    private static final Map<String, String> PORTABLE_MIGRATION_STATEMENTS = new HashMap<>();
+
+    static {
+        PORTABLE_MIGRATION_STATEMENTS.put(
+                "CREATE INDEX IF NOT EXISTS meals_category_idx ON meals (LOWER(category))",
+                "CREATE INDEX IF NOT EXISTS meals_category_idx ON meals (category)");
+        PORTABLE_MIGRATION_STATEMENTS.put(
+                "CREATE INDEX IF NOT EXISTS meals_category_meal_id_idx ON meals (LOWER(category), meal_id)",
+                "CREATE INDEX IF NOT EXISTS meals_category_meal_id_idx ON meals (category, meal_id)");
+        PORTABLE_MIGRATION_STATEMENTS.put(
+                "CREATE INDEX IF NOT EXISTS meals_category_meal_idx ON meals (LOWER(category), meal, meal_id)",
+                "CREATE INDEX IF NOT EXISTS meals_category_meal_idx ON meals (category, meal, meal_id)");
+    }
+
+    private static final String INSERT_MEAL_QUERY = "INSERT INTO meals (category, meal, meal_id) VALUES (?, ?, ?)";
+    private static final String INSERT_INGREDIENT_QUERY = "INSERT INTO ingredients (ingredient, ingredient_id, meal_id) VALUES (?, ?, ?)";
+
+    private static final String INSERT_PLAN_SLOT_QUERY = "INSERT INTO plan (meal_id, meal_option, user_id, week, day, meal_category) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_PLAN_SLOT_QUERY = "UPDATE plan SET meal_id = ?, meal_option = ? " +
+            "WHERE user_id = ? AND week = ? AND day = ? AND meal_category = ?";
+
+    // the change log statements take the parameters of the slot statement they accompany; a
+    // replaced or deleted slot is logged from its row, before that row is written
+    private static final String LOG_INSERTED_SLOT_QUERY = "INSERT INTO plan_changes " +
+            "(new_meal_id, new_meal, user_id, week, day, meal_category, old_meal_id) VALUES (?, ?, ?, ?, ?, ?, 0)";
+    private static final String LOG_UPDATED_SLOT_QUERY = "INSERT INTO plan_changes " +
+            "(new_meal_id, new_meal, user_id, week, day, meal_category, old_meal_id, old_meal) " +
+            "SELECT ?, ?, user_id, week, day, meal_category, meal_id, meal_option FROM plan " +
+            "WHERE user_id = ? AND week = ? AND day = ? AND meal_category = ?";
+    private static final String LOG_DELETED_SLOTS_QUERY = "INSERT INTO plan_changes " +
+            "(user_id, week, day, meal_category, old_meal_id, old_meal, new_meal_id) " +
+            "SELECT user_id, week, day, meal_category, meal_id, meal_option, 0 FROM plan WHERE user_id = ? AND week = ?";
+    private static final String PLAN_CHANGES_QUERY = "SELECT seq, user_id, week, day, meal_category, " +
+            "old_meal_id, old_meal, new_meal_id, new_meal FROM plan_changes WHERE seq > ? ORDER BY seq LIMIT ?";
+
+    // the shopping list is read from its table through the primary key, whatever the plan holds
+    private static final String SHOPPING_LIST_QUERY = "SELECT ingredient, amount FROM shopping_list " +
+            "WHERE user_id = ? AND week = ? ";
+
+    // plan writers of one week queue on its row in plan_weeks, created by the first of them;
+    // DO NOTHING waits for a concurrent insert of the same week and then lets it win
+    private static final String INSERT_PLAN_WEEK_QUERY = "INSERT INTO plan_weeks (user_id, week) VALUES (?, ?) ON CONFLICT DO NOTHING";
+    private static final String LOCK_PLAN_WEEK_QUERY = "SELECT user_id FROM plan_weeks WHERE user_id = ? AND week = ? FOR UPDATE";
+    private static final String PLAN_SLOTS_QUERY = "SELECT day, meal_category, meal_id, meal_option FROM plan WHERE user_id = ? AND week = ?";
+
+    // fixed arity whatever the number of slots, so each is prepared once per connection;
+    // the first meal added under a name wins, as in getMealId
+    private static final String MEAL_IDS_QUERY = "SELECT meal, meal_id FROM meals WHERE meal = ANY(?) ORDER BY meal_id";
+    private static final String MEALS_INGREDIENTS_QUERY = "SELECT meal_id, ingredient FROM ingredients WHERE meal_id = ANY(?)";
+    // both take the user, the week, the ingredient and the delta
+    private static final String UPSERT_SHOPPING_LIST_QUERY = "INSERT INTO shopping_list (user_id, week, ingredient, amount) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (user_id, week, ingredient) DO UPDATE SET amount = shopping_list.amount + EXCLUDED.amount";
+    // H2 has no ON CONFLICT ... DO UPDATE, but the standard MERGE
+    private static final String MERGE_SHOPPING_LIST_QUERY = "MERGE INTO shopping_list s USING (VALUES (" +
+            "CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS VARCHAR), CAST(? AS INTEGER))) AS d (user_id, week, ingredient, amount) " +
+            "ON s.user_id = d.user_id AND s.week = d.week AND s.ingredient = d.ingredient " +
+            "WHEN MATCHED THEN UPDATE SET amount = s.amount + d.amount " +
+            "WHEN NOT MATCHED THEN INSERT (user_id, week, ingredient, amount) VALUES (d.user_id, d.week, d.ingredient, d.amount)";
+    private static final String DELETE_EMPTY_SHOPPING_LIST_ROWS_QUERY = "DELETE FROM shopping_list " +
+            "WHERE user_id = ? AND week = ? AND amount <= 0";
+
+    // rows fetched per round trip when streaming large results
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private static final String MEAL_ID_SEQUENCE = "meal_id_seq";
+    private static final String INGREDIENT_ID_SEQUENCE = "ingredient_id_seq";
+
+    public static final int ID_BLOCK_SIZE = 100;
+
+    private static final String ORDER_ALPHABETICALLY = "ORDER BY ingredient";
+    // most needed first, equal counts grouped together
+    private static final String ORDER_BY_COUNT = "ORDER BY amount DESC, ingredient";
+
     public DatabaseManager(Connection connection) {
-        this.connection = connection;
+        this.sharedConnection = connection;
+        this.dataSource = null;
     }
 
-    public void initializeDatabase() throws SQLException {
-        Statement statement = connection.createStatement();
-        statement.executeUpdate(CREATE_MEALS_TABLE_QUERY);
-        statement.executeUpdate(CREATE_INGREDIENTS_TABLE_QUERY);
-        statement.executeUpdate(CREATE_PLAN_TABLE_QUERY);
-        statement.close();
+    // every thread borrows its own connection, so one instance can be shared between threads
+    public DatabaseManager(DataSource dataSource) {
+        this.sharedConnection = null;
+        this.dataSource = dataSource;
     }
 
+    // nested calls on the same thread reuse the outer call's connection, which keeps
+    // them inside its transaction and never needs a second connection from the pool
+    private Connection acquire() throws SQLException {
+        if (dataSource == null) {
+            return sharedConnection;
+        }
 
-    public void addMeal(String category, String name, List<String> ingredients) throws SQLException {
-        int mealId = getNextMealId();
+        BorrowedConnection current = borrowed.get();
+        if (current == null) {
+            current = new BorrowedConnection(dataSource.getConnection());
+            borrowed.set(current);
+        }
+        current.depth++;
+        return current.connection;
+    }
 
-        String insertMealQuery = "INSERT INTO meals (category, meal, meal_id) VALUES (?, ?, ?)";
-        PreparedStatement mealStmt = connection.prepareStatement(insertMealQuery);
-        mealStmt.setString(1, category);
-        mealStmt.setString(2, name);
-        mealStmt.setInt(3, mealId);
-        mealStmt.executeUpdate();
+    private void release(Connection connection) throws SQLException {
+        if (dataSource == null) {
+            return;
+        }
 
-        for (String ingredient : ingredients) {
-            int ingredientId = getNextIngredientId();
+        BorrowedConnection current = borrowed.get();
+        if (--current.depth == 0) {
+            borrowed.remove();
+            connection.close();
+        }
+    }
+
+    private static class BorrowedConnection {
+        private final Connection connection;
+        private int depth;
 
-            String insertIngredientQuery = "INSERT INTO ingredients (ingredient, ingredient_id, meal_id) VALUES (?, ?, ?)";
-            PreparedStatement ingredientStmt = connection.prepareStatement(insertIngredientQuery);
-            ingredientStmt.setString(1, ingredient);
-            ingredientStmt.setInt(2, ingredientId);
-            ingredientStmt.setInt(3, mealId);
-            ingredientStmt.executeUpdate();
-            ingredientStmt.close();
+        BorrowedConnection(Connection connection) {
+            this.connection = connection;
         }
+    }
 
-        mealStmt.close();
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
     }
 
-    // get meals in the order they were added
-    public List<Main.Meal> getMealsByCategory(String category) throws SQLException {
-        String query = "SELECT * FROM meals WHERE LOWER(category) = ? ORDER BY meal_id";
-        PreparedStatement statement = connection.prepareStatement(query);
-        statement.setString(1, category);
+    // latency of a public call, nested calls included
+    private void timed(String method, long startTime) {
+        metrics.recordSince(Metrics.DB_CALL_SECONDS, "method", method, startTime);
+    }
 
-        ResultSet rs = statement.executeQuery();
+    // one per execute or executeBatch, and per commit
+    private void roundTrips(String statement, int count) {
+        metrics.counter(Metrics.DB_ROUND_TRIPS, "statement", statement).add(count);
+    }
 
-        List<Main.Meal> mealList = new ArrayList<>();
+    private void rowsRead(String method, long rows) {
+        metrics.counter(Metrics.DB_ROWS_READ, "method", method).add(rows);
+    }
 
-        while (rs.next()) {
-            int id = rs.getInt("meal_id");
-            String mealName = rs.getString("meal");
+    @Override
+    public void initializeDatabase() throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(CREATE_MEALS_TABLE_QUERY);
+                statement.executeUpdate(CREATE_INGREDIENTS_TABLE_QUERY);
+                statement.executeUpdate(CREATE_PLAN_TABLE_QUERY);
+                statement.executeUpdate(CREATE_SCHEMA_VERSION_TABLE_QUERY);
+            }
+            roundTrips("create_tables", 4);
 
-            PreparedStatement ps = connection.prepareStatement(
-                    "SELECT ingredient FROM ingredients WHERE meal_id = ?"
-            );
-            ps.setInt(1, id);
-            ResultSet ingredientRs = ps.executeQuery();
+            boolean postgres = isPostgres(connection);
+            for (int version = getSchemaVersion() + 1; version <= MIGRATIONS.length; version++) {
+                applyMigration(version, MIGRATIONS[version - 1], postgres);
+            }
+            // on PostgreSQL the batch, import, interactive and write-behind processes may insert at
+            // once, so ids come from the shared sequences instead of each process's own MAX(id)
+            if (postgres) {
+                useSequenceIds();
+            }
+        } finally {
+            release(connection);
+            timed("initializeDatabase", startTime);
+        }
+    }
 
-            List<String> ingredients = new ArrayList<>();
-            while (ingredientRs.next()) {
-                ingredients.add(ingredientRs.getString("ingredient"));
+    public int getSchemaVersion() throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                roundTrips("schema_version", 1);
+                int version = 0;
+                if (rs.next()) {
+                    version = rs.getInt(1);
+                    rowsRead("getSchemaVersion", 1);
+                }
+                return version;
             }
+        } finally {
+            release(connection);
+            timed("getSchemaVersion", startTime);
+        }
+    }
+
+    // a migration and its version row commit together, so a failed upgrade is retried on the next start.
+    // like the other write paths it joins the caller's transaction when auto-commit is already off
+    private void applyMigration(int version, String[] statements, boolean postgres) throws SQLException {
+        Connection connection = acquire();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            try {
+                connection.setAutoCommit(false);
+
+                try (Statement stmt = connection.createStatement()) {
+                    for (String sql : statements) {
+                        stmt.executeUpdate(postgres ? sql : PORTABLE_MIGRATION_STATEMENTS.getOrDefault(sql, sql));
+                    }
+                }
 
-            ps.close();
-            ingredientRs.close();
+                try (PreparedStatement versionStmt = connection.prepareStatement("INSERT INTO schema_version (version) VALUES (?)")) {
+                    versionStmt.setInt(1, version);
+                    versionStmt.executeUpdate();
+                }
+                roundTrips("migration", statements.length + 1);
 
-            Main.Meal meal = new Main.Meal(category, mealName, ingredients);
-            mealList.add(meal);
+                if (autoCommit) {
+                    connection.commit();
+                    roundTrips("commit", 1);
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (autoCommit) {
+                    rollback(connection, e);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } finally {
+            release(connection);
         }
+    }
+
+
+    // bulk import: ids come from the id allocators, rows go in as JDBC batches
+    // and every chunk of meals is committed on its own, unless the caller already holds
+    // a transaction (auto-commit off), which then owns commit and rollback; returns the new meal ids
+    @Override
+    public int[] addMeals(Collection<Main.Meal> meals, int chunkSize, ImportProgress progress) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+            }
+
+            int[] mealIds = new int[meals.size()];
+            if (meals.isEmpty()) {
+                return mealIds;
+            }
+
+            boolean autoCommit = connection.getAutoCommit();
+            long rows = 0;
+            int imported = 0;
+            int pending = 0;
+
+            List<Main.Meal> chunk = new ArrayList<>(Math.min(chunkSize, meals.size()));
 
-        rs.close();
-        statement.close();
+            try (PreparedStatement mealStmt = connection.prepareStatement(INSERT_MEAL_QUERY);
+                 PreparedStatement ingredientStmt = connection.prepareStatement(INSERT_INGREDIENT_QUERY)) {
+                connection.setAutoCommit(false);
 
-        return mealList;
+                for (Main.Meal meal : meals) {
+                    int mealId = getNextMealId();
+                    mealIds[imported++] = mealId;
+                    chunk.add(meal);
+
+                    mealStmt.setString(1, meal.getCategory());
+                    mealStmt.setString(2, meal.getName());
+                    mealStmt.setInt(3, mealId);
+                    mealStmt.addBatch();
+
+                    for (String ingredient : meal.getIngredients()) {
+                        ingredientStmt.setString(1, ingredient);
+                        ingredientStmt.setInt(2, getNextIngredientId());
+                        ingredientStmt.setInt(3, mealId);
+                        ingredientStmt.addBatch();
+                    }
+                    rows += 1 + meal.getIngredients().size();
+
+                    if (++pending == chunkSize || imported == mealIds.length) {
+                        mealStmt.executeBatch();
+                        ingredientStmt.executeBatch();
+                        roundTrips("insert_meal", 1);
+                        roundTrips("insert_ingredient", 1);
+                        if (autoCommit) {
+                            connection.commit();
+                            roundTrips("commit", 1);
+                        }
+                        int[] chunkIds = Arrays.copyOfRange(mealIds, imported - pending, imported);
+                        if (autoCommit) {
+                            notifyMealsAdded(chunk, chunkIds);
+                        } else {
+                            List<Main.Meal> uncommitted = new ArrayList<>(chunk);
+                            synchronized (uncommittedNotices) {
+                                uncommittedNotices.add(() -> notifyMealsAdded(uncommitted, chunkIds));
+                            }
+                        }
+                        chunk.clear();
+                        pending = 0;
+
+                        if (progress != null) {
+                            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+                            progress.chunkCommitted(imported, rows, seconds > 0 ? rows / seconds : rows);
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                // chunks committed so far stay; only the current one is lost
+                if (autoCommit) {
+                    rollback(connection, e);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+
+            return mealIds;
+        } finally {
+            release(connection);
+            timed("addMeals", startTime);
+        }
+    }
+
+    // meals joined with their ingredients; rows of one meal arrive next to each other
+    private static final String MEALS_WITH_INGREDIENTS_QUERY = "SELECT m.meal_id, m.meal, i.ingredient " +
+            "FROM meals m LEFT JOIN ingredients i ON i.meal_id = m.meal_id " +
+            "WHERE LOWER(m.category) = ? ";
+    private static final String ORDER_MEALS_ADDED = "ORDER BY m.meal_id, i.ingredient_id";
+    private static final String ORDER_MEALS_ALPHABETICALLY = "ORDER BY m.meal, m.meal_id, i.ingredient_id";
+
+    // a page of meals is picked by key from the category index first, then joined with the
+    // ingredients, so the limit counts meals rather than joined rows
+    private static final String MEALS_PAGE_QUERY = "SELECT m.meal_id, m.meal, i.ingredient FROM (" +
+            "SELECT meal_id, meal FROM meals WHERE LOWER(category) = ? AND %s LIMIT ?" +
+            ") m LEFT JOIN ingredients i ON i.meal_id = m.meal_id ";
+    private static final String MEALS_AFTER_ID = "meal_id > ? ORDER BY meal_id";
+    private static final String MEALS_AFTER_NAME = "(meal, meal_id) > (?, ?) ORDER BY meal, meal_id";
+
+    // receives the grouped meals of readMeals with their ids
+    private interface MealSink {
+        void meal(int mealId, Main.Meal meal);
+    }
+
+    // get meals in the order they were added
+    @Override
+    public List<Main.Meal> getMealsByCategory(String category) throws SQLException {
+        return getMealsWithIngredients("getMealsByCategory", category,
+                MEALS_WITH_INGREDIENTS_QUERY + ORDER_MEALS_ADDED);
     }
 
     // get meals in their alphabetical order
+    @Override
     public List<Main.Meal> getMealsByCategoryAlphabetical(String category) throws SQLException {
-        String query = "SELECT * FROM meals WHERE LOWER(category) = ? ORDER BY meal";
-        PreparedStatement statement = connection.prepareStatement(query);
-        statement.setString(1, category);
+        return getMealsWithIngredients("getMealsByCategoryAlphabetical", category,
+                MEALS_WITH_INGREDIENTS_QUERY + ORDER_MEALS_ALPHABETICALLY);
+    }
+
+    // one round trip: group the joined rows into meals as they stream in
+    private List<Main.Meal> getMealsWithIngredients(String method, String category, String query) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, category);
+
+                try (ResultSet rs = statement.executeQuery()) {
+                    roundTrips("select_meals", 1);
+
+                    List<Main.Meal> mealList = new ArrayList<>();
+                    long rows = readMeals(rs, category, (mealId, meal) -> mealList.add(meal));
+                    rowsRead(method, rows);
+
+                    return mealList;
+                }
+            }
+        } finally {
+            release(connection);
+            timed(method, startTime);
+        }
+    }
+
+    @Override
+    public MealPage getMealsByCategoryPage(String category, MealOrder order, MealPage after, int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            boolean alphabetical = order == MealOrder.ALPHABETICAL;
+            List<Main.Meal> mealList = new ArrayList<>(limit);
+            int[] pageIds = new int[limit];
+            int[] lastMealId = {after == null ? MealPage.FIRST_MEAL_ID : after.getLastMealId()};
+            try (PreparedStatement statement = connection.prepareStatement(
+                    String.format(MEALS_PAGE_QUERY, alphabetical ? MEALS_AFTER_NAME : MEALS_AFTER_ID)
+                            + (alphabetical ? ORDER_MEALS_ALPHABETICALLY : ORDER_MEALS_ADDED))) {
+                int index = 1;
+                statement.setString(index++, category);
+                if (alphabetical) {
+                    statement.setString(index++, after == null ? MealPage.FIRST_NAME : after.getLastName());
+                }
+                statement.setInt(index++, after == null ? MealPage.FIRST_MEAL_ID : after.getLastMealId());
+                statement.setInt(index, limit);
 
-        ResultSet rs = statement.executeQuery();
+                try (ResultSet rs = statement.executeQuery()) {
+                    roundTrips("select_meals", 1);
 
-        List<Main.Meal> mealList = new ArrayList<>();
+                    long rows = readMeals(rs, category, (mealId, meal) -> {
+                        pageIds[mealList.size()] = mealId;
+                        mealList.add(meal);
+                        lastMealId[0] = mealId;
+                    });
+                    rowsRead("getMealsByCategoryPage", rows);
+                }
+            }
+
+            String lastName = mealList.isEmpty()
+                    ? (after == null ? MealPage.FIRST_NAME : after.getLastName())
+                    : mealList.get(mealList.size() - 1).getName();
+            return new MealPage(mealList, Arrays.copyOf(pageIds, mealList.size()), lastMealId[0], lastName, mealList.size() == limit);
+        } finally {
+            release(connection);
+            timed("getMealsByCategoryPage", startTime);
+        }
+    }
+
+    // one query read STREAM_FETCH_SIZE rows at a time; only the meal being grouped is held in memory
+    @Override
+    public void forEachMealInCategory(String category, MealOrder order, MealHandler handler) throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            // PostgreSQL only reads through a cursor inside a transaction, otherwise the fetch
+            // size is ignored and the whole result is loaded at once
+            boolean autoCommit = connection.getAutoCommit();
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(MEALS_WITH_INGREDIENTS_QUERY
+                    + (order == MealOrder.ALPHABETICAL ? ORDER_MEALS_ALPHABETICALLY : ORDER_MEALS_ADDED))) {
+                statement.setString(1, category);
+                statement.setFetchSize(STREAM_FETCH_SIZE);
+
+                long rows = 0;
+                try (ResultSet rs = statement.executeQuery()) {
+                    roundTrips("select_meals", 1);
+                    rows = readMeals(rs, category, (mealId, meal) -> {
+                        try {
+                            handler.meal(meal);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    rowsRead("forEachMealInCategory", rows);
+                }
+            } finally {
+                // ends the read-only transaction
+                if (autoCommit) {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } finally {
+            release(connection);
+            timed("forEachMealInCategory", startTime);
+        }
+    }
+
+    @Override
+    public int countMeals() throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM meals")) {
+                roundTrips("count_meals", 1);
+                rs.next();
+                return rs.getInt(1);
+            }
+        } finally {
+            release(connection);
+            timed("countMeals", startTime);
+        }
+    }
+
+    // groups the joined rows of consecutive meals; returns the number of rows read
+    private static long readMeals(ResultSet rs, String category, MealSink sink) throws SQLException {
+        IngredientDictionary dictionary = IngredientDictionary.shared();
+        boolean hasMeal = false;
+        int currentId = 0;
+        String currentName = null;
+        // ingredient ids of the current meal, reused for every meal
+        int[] ingredientIds = new int[16];
+        int ingredientCount = 0;
+        long rows = 0;
 
         while (rs.next()) {
+            rows++;
             int id = rs.getInt("meal_id");
-            String mealName = rs.getString("meal");
 
-            PreparedStatement ps = connection.prepareStatement(
-                    "SELECT ingredient FROM ingredients WHERE meal_id = ?"
-            );
-            ps.setInt(1, id);
-            ResultSet ingredientRs = ps.executeQuery();
+            if (!hasMeal || id != currentId) {
+                if (hasMeal) {
+                    sink.meal(currentId, new Main.Meal(category, currentName, Arrays.copyOf(ingredientIds, ingredientCount), dictionary));
+                }
+                currentId = id;
+                currentName = rs.getString("meal");
+                ingredientCount = 0;
+                hasMeal = true;
+            }
 
-            List<String> ingredients = new ArrayList<>();
-            while (ingredientRs.next()) {
-                ingredients.add(ingredientRs.getString("ingredient"));
+            String ingredient = rs.getString("ingredient");
+            if (ingredient != null) {
+                if (ingredientCount == ingredientIds.length) {
+                    ingredientIds = Arrays.copyOf(ingredientIds, ingredientCount * 2);
+                }
+                ingredientIds[ingredientCount++] = dictionary.intern(ingredient);
             }
+        }
+
+        if (hasMeal) {
+            sink.meal(currentId, new Main.Meal(category, currentName, Arrays.copyOf(ingredientIds, ingredientCount), dictionary));
+        }
+        return rows;
+    }
+
+    @Override
+    public void deleteOldPlan(int userId, int week) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            try {
+                connection.setAutoCommit(false);
+                lockWeek(connection, userId, week);
 
-            ps.close();
-            ingredientRs.close();
+                try (PreparedStatement logStmt = connection.prepareStatement(LOG_DELETED_SLOTS_QUERY)) {
+                    logStmt.setInt(1, userId);
+                    logStmt.setInt(2, week);
+                    logStmt.executeUpdate();
+                }
+                roundTrips("log_plan_changes", 1);
 
-            Main.Meal meal = new Main.Meal(category, mealName, ingredients);
-            mealList.add(meal);
+                try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM plan WHERE user_id = ? AND week = ?")) {
+                    stmt.setInt(1, userId);
+                    stmt.setInt(2, week);
+                    stmt.executeUpdate();
+                }
+                roundTrips("delete_plan", 1);
+
+                try (PreparedStatement listStmt = connection.prepareStatement("DELETE FROM shopping_list WHERE user_id = ? AND week = ?")) {
+                    listStmt.setInt(1, userId);
+                    listStmt.setInt(2, week);
+                    listStmt.executeUpdate();
+                }
+                roundTrips("delete_shopping_list", 1);
+
+                if (autoCommit) {
+                    connection.commit();
+                    roundTrips("commit", 1);
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (autoCommit) {
+                    rollback(connection, e);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } finally {
+            release(connection);
+            timed("deleteOldPlan", startTime);
         }
+    }
+
+    // upsert of one user's week: only slots whose meal changed are written and logged, and the
+    // shopping list is moved by the ingredients of exactly those slots, all in one transaction.
+    // the week is locked before its plan is read, so concurrent saves apply their diffs one after
+    // the other; a save takes the same number of round trips whatever the number of slots
+    @Override
+    public void savePlanToDatabase(int userId, int week, Map<String, String> breakfastPlan, Map<String, String> lunchPlan, Map<String, String> dinnerPlan) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            List<Map<String, String>> plans = Arrays.asList(breakfastPlan, lunchPlan, dinnerPlan);
+            boolean autoCommit = connection.getAutoCommit();
+
+            try {
+                connection.setAutoCommit(false);
+                lockWeek(connection, userId, week);
+                Map<String, PlanSlot> currentSlots = readPlanSlots(connection, userId, week);
+
+                // the changed slots in day and category order, and the names of their new meals
+                List<String[]> changedSlots = new ArrayList<>();
+                Set<String> incomingNames = new HashSet<>();
+                for (String day : DAYS_OF_WEEK) {
+                    for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+                        String meal = plans.get(c).get(day);
+                        PlanSlot previous = currentSlots.get(day + '\n' + MEAL_CATEGORIES[c]);
+                        if (meal == null || previous != null && meal.equals(previous.meal)) {
+                            continue;
+                        }
+                        changedSlots.add(new String[]{day, MEAL_CATEGORIES[c], meal});
+                        incomingNames.add(meal);
+                    }
+                }
+                if (changedSlots.isEmpty()) {
+                    if (autoCommit) {
+                        connection.commit();
+                        roundTrips("commit", 1);
+                    }
+                    return;
+                }
+                Map<String, Integer> mealIdsByName = readMealIds(connection, incomingNames);
+
+                // meal id -> how often it comes into the week, negative for the meals replaced
+                Map<Integer, Integer> mealCounts = new HashMap<>();
+                Map<String, Integer> shoppingListDelta;
+                try (PreparedStatement insertStmt = connection.prepareStatement(INSERT_PLAN_SLOT_QUERY);
+                     PreparedStatement updateStmt = connection.prepareStatement(UPDATE_PLAN_SLOT_QUERY);
+                     PreparedStatement logInsertStmt = connection.prepareStatement(LOG_INSERTED_SLOT_QUERY);
+                     PreparedStatement logUpdateStmt = connection.prepareStatement(LOG_UPDATED_SLOT_QUERY)) {
+                    int inserts = 0;
+                    int updates = 0;
+
+                    for (String[] slot : changedSlots) {
+                        String day = slot[0];
+                        String category = slot[1];
+                        String meal = slot[2];
+                        PlanSlot previous = currentSlots.get(day + '\n' + category);
+                        int mealId = mealIdsByName.getOrDefault(meal, -1);
+                        setSlot(previous == null ? insertStmt : updateStmt, mealId, meal, userId, week, day, category);
+                        setSlot(previous == null ? logInsertStmt : logUpdateStmt, mealId, meal, userId, week, day, category);
+
+                        if (previous == null) {
+                            inserts++;
+                        } else {
+                            updates++;
+                            if (previous.mealId > 0) {
+                                mealCounts.merge(previous.mealId, -1, Integer::sum);
+                            }
+                        }
+                        if (mealId > 0) {
+                            mealCounts.merge(mealId, 1, Integer::sum);
+                        }
+                    }
 
-        rs.close();
-        statement.close();
+                    shoppingListDelta = readIngredientDelta(connection, mealCounts);
 
-        return mealList;
+                    if (inserts > 0) {
+                        insertStmt.executeBatch();
+                        logInsertStmt.executeBatch();
+                        roundTrips("insert_plan_slot", 1);
+                        roundTrips("log_plan_changes", 1);
+                    }
+                    if (updates > 0) {
+                        // logged first, while the rows still hold the meals being replaced
+                        logUpdateStmt.executeBatch();
+                        updateStmt.executeBatch();
+                        roundTrips("log_plan_changes", 1);
+                        roundTrips("update_plan_slot", 1);
+                    }
+                }
+                applyShoppingListDelta(connection, userId, week, shoppingListDelta);
+
+                if (autoCommit) {
+                    connection.commit();
+                    roundTrips("commit", 1);
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (autoCommit) {
+                    rollback(connection, e);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } finally {
+            release(connection);
+            timed("savePlanToDatabase", startTime);
+        }
     }
 
-    public void deleteOldPlan() throws SQLException {
-        Statement stmt = connection.createStatement();
-        stmt.executeUpdate("DELETE FROM plan");
-        stmt.close();
+    // undoes the transaction a write path began itself. any failure, not only an SQLException, has
+    // to end here: restoring auto-commit in the finally would otherwise commit the half-done work
+    private static void rollback(Connection connection, Exception cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
     }
 
-    public void savePlanToDatabase(Map<String, String> breakfastPlan, Map<String, String> lunchPlan, Map<String, String> dinnerPlan) throws SQLException {
-        String insertPlanQuery = "INSERT INTO plan (day, meal_category, meal_id, meal_option) VALUES (?, ?, ?, ?)";
-        PreparedStatement planStmt = connection.prepareStatement(insertPlanQuery);
+    // held until the transaction ends; every writer of the week's plan and shopping list takes it first
+    private void lockWeek(Connection connection, int userId, int week) throws SQLException {
+        try (PreparedStatement insertStmt = connection.prepareStatement(INSERT_PLAN_WEEK_QUERY)) {
+            insertStmt.setInt(1, userId);
+            insertStmt.setInt(2, week);
+            insertStmt.executeUpdate();
+        }
 
-        for (String day : DAYS_OF_WEEK) {
-            // Breakfast
-            String breakfast = breakfastPlan.get(day);
-            int breakfastId = getMealId(breakfast);
-            planStmt.setString(1, day);
-            planStmt.setString(2, "breakfast");
-            planStmt.setInt(3, breakfastId);
-            planStmt.setString(4, breakfast);
-            planStmt.addBatch();
+        try (PreparedStatement lockStmt = connection.prepareStatement(LOCK_PLAN_WEEK_QUERY)) {
+            lockStmt.setInt(1, userId);
+            lockStmt.setInt(2, week);
+            lockStmt.executeQuery().close();
+        }
+        roundTrips("lock_plan_week", 2);
+    }
 
-            // Lunch
-            String lunch = lunchPlan.get(day);
-            int lunchId = getMealId(lunch);
-            planStmt.setString(1, day);
-            planStmt.setString(2, "lunch");
-            planStmt.setInt(3, lunchId);
-            planStmt.setString(4, lunch);
-            planStmt.addBatch();
+    // day + '\n' + category -> slot
+    private Map<String, PlanSlot> readPlanSlots(Connection connection, int userId, int week) throws SQLException {
+        Map<String, PlanSlot> slots = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(PLAN_SLOTS_QUERY)) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, week);
+            try (ResultSet rs = stmt.executeQuery()) {
+                roundTrips("select_plan", 1);
+                while (rs.next()) {
+                    slots.put(rs.getString("day") + '\n' + rs.getString("meal_category"),
+                            new PlanSlot(rs.getInt("meal_id"), rs.getString("meal_option")));
+                }
+            }
+        }
+        rowsRead("savePlanToDatabase", slots.size());
+        return slots;
+    }
 
-            // Dinner
-            String dinner = dinnerPlan.get(day);
-            int dinnerId = getMealId(dinner);
-            planStmt.setString(1, day);
-            planStmt.setString(2, "dinner");
-            planStmt.setInt(3, dinnerId);
-            planStmt.setString(4, dinner);
-            planStmt.addBatch();
+    // names missing from the catalog are left out
+    private Map<String, Integer> readMealIds(Connection connection, Collection<String> names) throws SQLException {
+        Map<String, Integer> mealIds = new HashMap<>();
+        long rows = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(MEAL_IDS_QUERY)) {
+            stmt.setArray(1, connection.createArrayOf("varchar", names.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                roundTrips("select_meal_ids", 1);
+                while (rs.next()) {
+                    rows++;
+                    mealIds.putIfAbsent(rs.getString("meal"), rs.getInt("meal_id"));
+                }
+            }
         }
+        rowsRead("savePlanToDatabase", rows);
+        return mealIds;
+    }
 
-        planStmt.executeBatch();
-        planStmt.close();
+    // ingredient -> change of its count when every meal comes in or goes out as often as counted
+    private Map<String, Integer> readIngredientDelta(Connection connection, Map<Integer, Integer> mealCounts) throws SQLException {
+        Map<String, Integer> delta = new TreeMap<>();
+        if (mealCounts.isEmpty()) {
+            return delta;
+        }
+        long rows = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(MEALS_INGREDIENTS_QUERY)) {
+            stmt.setArray(1, connection.createArrayOf("integer", mealCounts.keySet().toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                roundTrips("select_plan_ingredients", 1);
+                while (rs.next()) {
+                    rows++;
+                    // a meal planned on several days counts once per day
+                    delta.merge(rs.getString("ingredient"), mealCounts.get(rs.getInt("meal_id")), Integer::sum);
+                }
+            }
+        }
+        rowsRead("savePlanToDatabase", rows);
+        return delta;
     }
 
-    public Map<String, Map<String, String>> getPlannedMeals() throws SQLException {
-        String query = "SELECT * FROM plan";
-        PreparedStatement stmt = connection.prepareStatement(query);
-        ResultSet rs = stmt.executeQuery();
+    // adds every delta to its row in one batch, creating the rows not on the list yet, and drops
+    // those that fell to zero; the week lock keeps other writers of these rows out
+    private void applyShoppingListDelta(Connection connection, int userId, int week, Map<String, Integer> delta) throws SQLException {
+        boolean removed = false;
+        try (PreparedStatement upsertStmt = connection.prepareStatement(isPostgres(connection) ? UPSERT_SHOPPING_LIST_QUERY : MERGE_SHOPPING_LIST_QUERY)) {
+            int upserts = 0;
+            for (Map.Entry<String, Integer> entry : delta.entrySet()) {
+                if (entry.getValue() != 0) {
+                    upsertStmt.setInt(1, userId);
+                    upsertStmt.setInt(2, week);
+                    upsertStmt.setString(3, entry.getKey());
+                    upsertStmt.setInt(4, entry.getValue());
+                    upsertStmt.addBatch();
+                    upserts++;
+                    removed |= entry.getValue() < 0;
+                }
+            }
+            if (upserts > 0) {
+                upsertStmt.executeBatch();
+                roundTrips("upsert_shopping_list", 1);
+            }
+        }
 
-        Map<String, Map<String, String>> weeklyPlan = new LinkedHashMap<>();
-        while (rs.next()) {
-            String day = rs.getString("day");
-            String category = rs.getString("meal_category");
-            String mealOptionStr = rs.getString("meal_option");
+        if (removed) {
+            try (PreparedStatement deleteStmt = connection.prepareStatement(DELETE_EMPTY_SHOPPING_LIST_ROWS_QUERY)) {
+                deleteStmt.setInt(1, userId);
+                deleteStmt.setInt(2, week);
+                deleteStmt.executeUpdate();
+            }
+            roundTrips("delete_shopping_list", 1);
+        }
+    }
 
-            weeklyPlan.computeIfAbsent(day, k -> new HashMap<>()).put(category, mealOptionStr);
+    // ON CONFLICT ... DO UPDATE is PostgreSQL's; asked once, the answer is the same for every connection
+    private boolean isPostgres(Connection connection) throws SQLException {
+        Boolean postgres = this.postgres;
+        if (postgres == null) {
+            postgres = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+            this.postgres = postgres;
         }
+        return postgres;
+    }
 
-        rs.close();
-        stmt.close();
+    private static class PlanSlot {
+        private final int mealId;
+        private final String meal;
+
+        PlanSlot(int mealId, String meal) {
+            this.mealId = mealId;
+            this.meal = meal;
+        }
+    }
 
-        return weeklyPlan;
+    private static void setSlot(PreparedStatement stmt, int mealId, String meal, int userId, int week, String day, String category) throws SQLException {
+        stmt.setInt(1, mealId);
+        stmt.setString(2, meal);
+        stmt.setInt(3, userId);
+        stmt.setInt(4, week);
+        stmt.setString(5, day);
+        stmt.setString(6, category);
+        stmt.addBatch();
+    }
+
+    // identity values are handed out before commit, so with several concurrent plan writers a
+    // change can become visible after a later sequence number was already read; the command loops
+    // and batch runs write plans from one thread at a time
+    @Override
+    public List<PlanChange> getPlanChangesSince(long sequence, int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            List<PlanChange> changes = new ArrayList<>();
+            try (PreparedStatement stmt = connection.prepareStatement(PLAN_CHANGES_QUERY)) {
+                stmt.setLong(1, sequence);
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    roundTrips("select_plan_changes", 1);
+                    while (rs.next()) {
+                        changes.add(new PlanChange(rs.getLong("seq"), rs.getInt("user_id"), rs.getInt("week"),
+                                rs.getString("day"), rs.getString("meal_category"),
+                                rs.getInt("old_meal_id"), rs.getString("old_meal"),
+                                rs.getInt("new_meal_id"), rs.getString("new_meal")));
+                    }
+                }
+            }
+            rowsRead("getPlanChangesSince", changes.size());
+            return changes;
+        } finally {
+            release(connection);
+            timed("getPlanChangesSince", startTime);
+        }
     }
 
+    // one user's week, read through the plan primary key
+    @Override
+    public Map<String, Map<String, String>> getPlannedMeals(int userId, int week) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            String query = "SELECT day, meal_category, meal_option FROM plan WHERE user_id = ? AND week = ?";
+            Map<String, Map<String, String>> weeklyPlan = new LinkedHashMap<>();
+            long rows = 0;
+            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, week);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    roundTrips("select_plan", 1);
+                    while (rs.next()) {
+                        rows++;
+                        String day = rs.getString("day");
+                        String category = rs.getString("meal_category");
+                        String mealOptionStr = rs.getString("meal_option");
 
+                        weeklyPlan.computeIfAbsent(day, k -> new HashMap<>()).put(category, mealOptionStr);
+                    }
+                }
+            }
+            rowsRead("getPlannedMeals", rows);
+
+            return weeklyPlan;
+        } finally {
+            release(connection);
+            timed("getPlannedMeals", startTime);
+        }
+    }
+
+    @Override
     public int getMealId(String mealName) throws SQLException {
-        String query = "SELECT meal_id FROM meals WHERE meal = ?";
-        PreparedStatement stmt = connection.prepareStatement(query);
-        stmt.setString(1, mealName);
-        ResultSet rs = stmt.executeQuery();
-        int mealId = -1;
-        if (rs.next()) {
-            mealId = rs.getInt("meal_id");
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            String query = "SELECT meal_id FROM meals WHERE meal = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                stmt.setString(1, mealName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    roundTrips("select_meal_id", 1);
+                    int mealId = -1;
+                    if (rs.next()) {
+                        mealId = rs.getInt("meal_id");
+                        rowsRead("getMealId", 1);
+                    }
+                    return mealId;
+                }
+            }
+        } finally {
+            release(connection);
+            timed("getMealId", startTime);
         }
-        rs.close();
-        stmt.close();
-        return mealId;
     }
 
     public int getNextMealId() throws SQLException {
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT MAX(meal_id) FROM meals");
-        int maxId = 0;
-        if (rs.next() && rs.getObject(1) != null) {
-            maxId = rs.getInt(1);
+        return mealIds.nextId();
+    }
+
+    public int getNextIngredientId() throws SQLException {
+        return ingredientIds.nextId();
+    }
+
+    @Override
+    public void addMealListener(MealListener listener) {
+        mealListeners.add(listener);
+    }
+
+    @Override
+    public void removeMealListener(MealListener listener) {
+        mealListeners.remove(listener);
+    }
+
+    // commits the transaction the caller holds on the shared connection, then tells the
+    // listeners about the meals it added
+    public void commit() throws SQLException {
+        Connection connection = acquire();
+        try {
+            connection.commit();
+            roundTrips("commit", 1);
+        } finally {
+            release(connection);
+        }
+        List<Runnable> notices;
+        synchronized (uncommittedNotices) {
+            notices = new ArrayList<>(uncommittedNotices);
+            uncommittedNotices.clear();
+        }
+        for (Runnable notice : notices) {
+            notice.run();
         }
-        stmt.close();
-        return maxId + 1;
     }
 
+    // rolls back the transaction the caller holds; the listeners never hear of its meals
+    public void rollback() throws SQLException {
+        synchronized (uncommittedNotices) {
+            uncommittedNotices.clear();
+        }
+        Connection connection = acquire();
+        try {
+            connection.rollback();
+        } finally {
+            release(connection);
+        }
+    }
 
-    public int getNextIngredientId() throws SQLException {
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT MAX(ingredient_id) FROM ingredients");
-        int maxId = 0;
-        if (rs.next() && rs.getObject(1) != null) {
-            maxId = rs.getInt(1);
+    private void notifyMealsAdded(List<Main.Meal> meals, int[] mealIds) {
+        if (mealListeners.isEmpty()) {
+            return;
+        }
+        List<Main.Meal> added = Collections.unmodifiableList(new ArrayList<>(meals));
+        for (MealListener listener : mealListeners) {
+            listener.mealsAdded(added, mealIds);
         }
-        stmt.close();
-        return maxId + 1;
     }
 
-    public List<String> getIngredientsForMeal(int mealId) throws SQLException {
-        String ingredientQuery = "SELECT ingredient FROM ingredients WHERE meal_id = ?";
-        PreparedStatement ingredientStmt = connection.prepareStatement(ingredientQuery);
-        ingredientStmt.setInt(1, mealId);
-        ResultSet ingredientRs = ingredientStmt.executeQuery();
+    public void setIdAllocators(IdAllocator mealIds, IdAllocator ingredientIds) {
+        this.mealIds = mealIds;
+        this.ingredientIds = ingredientIds;
+    }
+
+    // switch to hi/lo allocation over database sequences so that several processes can insert
+    public void useSequenceIds() throws SQLException {
+        createIdSequence(MEAL_ID_SEQUENCE, maxMealId());
+        createIdSequence(INGREDIENT_ID_SEQUENCE, maxIngredientId());
+        setIdAllocators(
+                new SequenceIdAllocator(() -> nextSequenceValue(MEAL_ID_SEQUENCE), ID_BLOCK_SIZE),
+                new SequenceIdAllocator(() -> nextSequenceValue(INGREDIENT_ID_SEQUENCE), ID_BLOCK_SIZE));
+    }
+
+    private void createIdSequence(String sequence, int maxId) throws SQLException {
+        // the first block handed out starts above every id already in the table
+        long firstHi = maxId / ID_BLOCK_SIZE + 1;
+        executeSequenceUpdate("CREATE SEQUENCE IF NOT EXISTS " + sequence + " START WITH " + firstHi);
+
+        // an existing sequence may lag behind ids inserted without it, so step it past them.
+        // the sequence only ever moves forward, so processes starting at once cannot rewind it
+        // under each other; the value drawn for the check is skipped, leaving a gap of one block
+        long hi = nextSequenceValue(sequence);
+        while (hi < firstHi) {
+            executeSequenceUpdate("ALTER SEQUENCE " + sequence + " INCREMENT BY " + (firstHi - hi));
+            hi = nextSequenceValue(sequence);
+            executeSequenceUpdate("ALTER SEQUENCE " + sequence + " INCREMENT BY 1");
+        }
+    }
+
+    private void executeSequenceUpdate(String sql) throws SQLException {
+        Connection connection = acquire();
+        try {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate(sql);
+            }
+            roundTrips("create_sequence", 1);
+        } finally {
+            release(connection);
+        }
+    }
+
+    private long nextSequenceValue(String sequence) throws SQLException {
+        Connection connection = acquire();
+        try {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT nextval('" + sequence + "')")) {
+                roundTrips("next_sequence_value", 1);
+                rs.next();
+                return rs.getLong(1);
+            }
+        } finally {
+            release(connection);
+        }
+    }
 
-        List<String> ingredients = new ArrayList<>();
-        while (ingredientRs.next()) {
-            ingredients.add(ingredientRs.getString("ingredient"));
+    private int maxMealId() throws SQLException {
+        Connection connection = acquire();
+        try {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(meal_id) FROM meals")) {
+                roundTrips("max_id", 1);
+                int maxId = 0;
+                if (rs.next() && rs.getObject(1) != null) {
+                    maxId = rs.getInt(1);
+                }
+                return maxId;
+            }
+        } finally {
+            release(connection);
         }
+    }
 
-        ingredientRs.close();
-        ingredientStmt.close();
+    private int maxIngredientId() throws SQLException {
+        Connection connection = acquire();
+        try {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(ingredient_id) FROM ingredients")) {
+                roundTrips("max_id", 1);
+                int maxId = 0;
+                if (rs.next() && rs.getObject(1) != null) {
+                    maxId = rs.getInt(1);
+                }
+                return maxId;
+            }
+        } finally {
+            release(connection);
+        }
+    }
 
-        return ingredients;
+    // ingredient -> number of planned meals using it, counted by the database in one query
+    @Override
+    public Map<String, Integer> getShoppingList(int userId, int week) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            Map<String, Integer> shoppingList = new LinkedHashMap<>();
+            try (PreparedStatement stmt = connection.prepareStatement(SHOPPING_LIST_QUERY + ORDER_ALPHABETICALLY)) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, week);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    roundTrips("shopping_list", 1);
+                    while (rs.next()) {
+                        shoppingList.put(rs.getString("ingredient"), rs.getInt("amount"));
+                    }
+                }
+            }
+            rowsRead("getShoppingList", shoppingList.size());
+
+            return shoppingList;
+        } finally {
+            release(connection);
+            timed("getShoppingList", startTime);
+        }
+    }
+
+    // same rows as getShoppingList, handed to the handler row by row without building a map
+    @Override
+    public void forEachShoppingListRow(int userId, int week, ShoppingListOrder order, ShoppingListRowHandler handler) throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            try (PreparedStatement stmt = connection.prepareStatement(SHOPPING_LIST_QUERY + (order == ShoppingListOrder.BY_COUNT ? ORDER_BY_COUNT : ORDER_ALPHABETICALLY))) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, week);
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+
+                long rows = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    roundTrips("shopping_list", 1);
+                    while (rs.next()) {
+                        rows++;
+                        handler.row(rs.getString("ingredient"), rs.getInt("amount"));
+                    }
+                } finally {
+                    rowsRead("forEachShoppingListRow", rows);
+                }
+            }
+        } finally {
+            release(connection);
+            timed("forEachShoppingListRow", startTime);
+        }
+    }
+
+    @Override
+    public boolean hasPlan(int userId, int week) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT meal_id FROM plan WHERE user_id = ? AND week = ?")) {
+                stmt.setMaxRows(1);
+                stmt.setInt(1, userId);
+                stmt.setInt(2, week);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    roundTrips("has_plan", 1);
+                    boolean found = rs.next();
+                    if (found) {
+                        rowsRead("hasPlan", 1);
+                    }
+                    return found;
+                }
+            }
+        } finally {
+            release(connection);
+            timed("hasPlan", startTime);
+        }
+    }
+
+    @Override
+    public List<String> getIngredientsForMeal(int mealId) throws SQLException {
+        long startTime = System.nanoTime();
+        Connection connection = acquire();
+        try {
+            String ingredientQuery = "SELECT ingredient FROM ingredients WHERE meal_id = ?";
+            List<String> ingredients = new ArrayList<>();
+            try (PreparedStatement ingredientStmt = connection.prepareStatement(ingredientQuery)) {
+                ingredientStmt.setInt(1, mealId);
+                try (ResultSet ingredientRs = ingredientStmt.executeQuery()) {
+                    roundTrips("select_ingredients", 1);
+                    while (ingredientRs.next()) {
+                        ingredients.add(ingredientRs.getString("ingredient"));
+                    }
+                }
+            }
+            rowsRead("getIngredientsForMeal", ingredients.size());
+
+            return ingredients;
+        } finally {
+            release(connection);
+            timed("getIngredientsForMeal", startTime);
+        }
     }
 }
@@ -0,0 +1,14 @@
+package org.example;
+
+import java.sql.SQLException;
+
+// hands out unique ids for one table; implementations must be safe to share between threads
+public interface IdAllocator {
+
+    int nextId() throws SQLException;
+
+    // a single value read from the database, e.g. MAX(id) or nextval of a sequence
+    interface Source {
+        long fetch() throws SQLException;
+    }
+}
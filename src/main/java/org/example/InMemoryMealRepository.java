@@ -0,0 +1,377 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// a MealRepository that lives in the process: nothing survives a restart, but nothing needs a
+// database server either. it answers like DatabaseManager does, down to the orderings and the
+// -1 meal id a plan slot gets for an unknown meal, so both pass the same contract tests and
+// benchmarks can compare them on one workload. readers share a lock, writers take it alone
+public class InMemoryMealRepository implements MealRepository {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IngredientDictionary dictionary = IngredientDictionary.shared();
+    // meal id - 1 -> meal
+    private final List<Main.Meal> meals = new ArrayList<>();
+    // lower-cased category -> ids in the order they were added
+    private final Map<String, List<Integer>> mealIdsByCategory = new HashMap<>();
+    // the first meal added under a name wins, like the unordered SELECT does in practice
+    private final Map<String, Integer> mealIdsByName = new HashMap<>();
+    // (user, week) -> day -> category -> slot
+    private final Map<Long, Map<String, Map<String, PlanSlot>>> plans = new HashMap<>();
+    // sequence number - 1 -> change
+    private final List<PlanChange> planChanges = new ArrayList<>();
+    private final List<MealListener> mealListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void initializeDatabase() {
+        // nothing to create
+    }
+
+    @Override
+    public int[] addMeals(Collection<Main.Meal> newMeals, int chunkSize, ImportProgress progress) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+
+        int[] mealIds = new int[newMeals.size()];
+        long startTime = System.nanoTime();
+        long rows = 0;
+        int imported = 0;
+        List<Main.Meal> chunk = new ArrayList<>(Math.min(chunkSize, newMeals.size()));
+
+        for (Main.Meal meal : newMeals) {
+            chunk.add(meal);
+            rows += 1 + meal.getIngredientIds().length;
+            if (chunk.size() == chunkSize || imported + chunk.size() == mealIds.length) {
+                int[] chunkIds = store(chunk);
+                System.arraycopy(chunkIds, 0, mealIds, imported, chunkIds.length);
+                imported += chunkIds.length;
+                notifyMealsAdded(chunk, chunkIds);
+                chunk.clear();
+
+                if (progress != null) {
+                    double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+                    progress.chunkCommitted(imported, rows, seconds > 0 ? rows / seconds : rows);
+                }
+            }
+        }
+        return mealIds;
+    }
+
+    private int[] store(List<Main.Meal> chunk) {
+        int[] ids = new int[chunk.size()];
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < chunk.size(); i++) {
+                Main.Meal meal = chunk.get(i);
+                // every stored meal shares one dictionary, as meals read from the database do
+                if (meal.getDictionary() != dictionary) {
+                    meal = new Main.Meal(meal.getCategory(), meal.getName(), dictionary.internAll(meal.getIngredients()), dictionary);
+                }
+                meals.add(meal);
+                int id = meals.size();
+                ids[i] = id;
+                mealIdsByCategory.computeIfAbsent(meal.getCategory().toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(id);
+                mealIdsByName.putIfAbsent(meal.getName(), id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return ids;
+    }
+
+    @Override
+    public List<Main.Meal> getMealsByCategory(String category) {
+        lock.readLock().lock();
+        try {
+            List<Integer> ids = mealIdsByCategory.getOrDefault(category, Collections.emptyList());
+            List<Main.Meal> result = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                Main.Meal meal = meals.get(id - 1);
+                // reported under the category that was asked for, as the database query does
+                result.add(new Main.Meal(category, meal.getName(), meal.getIngredientIds(), dictionary));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countMeals() {
+        lock.readLock().lock();
+        try {
+            return meals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Main.Meal> getMealsByCategoryAlphabetical(String category) {
+        List<Main.Meal> result = getMealsByCategory(category);
+        // stable, so equal names keep the order they were added in
+        result.sort(Comparator.comparing(Main.Meal::getName));
+        return result;
+    }
+
+    @Override
+    public MealPage getMealsByCategoryPage(String category, MealOrder order, MealPage after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        int afterId = after == null ? MealPage.FIRST_MEAL_ID : after.getLastMealId();
+        String afterName = after == null ? MealPage.FIRST_NAME : after.getLastName();
+        List<Integer> pageIds = new ArrayList<>(limit);
+
+        lock.readLock().lock();
+        try {
+            List<Integer> ids = mealIdsByCategory.getOrDefault(category, Collections.emptyList());
+            if (order == MealOrder.ALPHABETICAL) {
+                // the ids are not kept by name: one pass keeps the limit smallest keys after the page
+                Comparator<Integer> byName = Comparator.<Integer, String>comparing(id -> meals.get(id - 1).getName())
+                        .thenComparingInt(id -> id);
+                PriorityQueue<Integer> smallest = new PriorityQueue<>(limit + 1, byName.reversed());
+                for (int id : ids) {
+                    int compared = meals.get(id - 1).getName().compareTo(afterName);
+                    if (compared > 0 || compared == 0 && id > afterId) {
+                        smallest.add(id);
+                        if (smallest.size() > limit) {
+                            smallest.poll();
+                        }
+                    }
+                }
+                pageIds.addAll(smallest);
+                pageIds.sort(byName);
+            } else {
+                // ids grow in the order meals are added
+                int start = Collections.binarySearch(ids, afterId);
+                start = start >= 0 ? start + 1 : -start - 1;
+                pageIds.addAll(ids.subList(start, Math.min(ids.size(), start + limit)));
+            }
+
+            List<Main.Meal> result = new ArrayList<>(pageIds.size());
+            for (int id : pageIds) {
+                result.add(new Main.Meal(category, meals.get(id - 1).getName(), meals.get(id - 1).getIngredientIds(), dictionary));
+            }
+            if (result.isEmpty()) {
+                return new MealPage(result, new int[0], afterId, afterName, false);
+            }
+            int[] resultIds = pageIds.stream().mapToInt(Integer::intValue).toArray();
+            return new MealPage(result, resultIds, pageIds.get(pageIds.size() - 1), result.get(result.size() - 1).getName(), result.size() == limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the category is copied under the lock and handed out after it, so the handler may write
+    @Override
+    public void forEachMealInCategory(String category, MealOrder order, MealHandler handler) throws IOException {
+        List<Main.Meal> result = order == MealOrder.ALPHABETICAL ? getMealsByCategoryAlphabetical(category) : getMealsByCategory(category);
+        for (Main.Meal meal : result) {
+            handler.meal(meal);
+        }
+    }
+
+    @Override
+    public int getMealId(String mealName) {
+        lock.readLock().lock();
+        try {
+            return mealIdsByName.getOrDefault(mealName, -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getIngredientsForMeal(int mealId) {
+        lock.readLock().lock();
+        try {
+            if (mealId < 1 || mealId > meals.size()) {
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(meals.get(mealId - 1).getIngredients());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteOldPlan(int userId, int week) {
+        lock.writeLock().lock();
+        try {
+            Map<String, Map<String, PlanSlot>> plan = plans.remove(planKey(userId, week));
+            if (plan == null) {
+                return;
+            }
+            for (String day : DAYS_OF_WEEK) {
+                Map<String, PlanSlot> slots = plan.getOrDefault(day, Collections.emptyMap());
+                for (String category : MEAL_CATEGORIES) {
+                    PlanSlot slot = slots.get(category);
+                    if (slot != null) {
+                        logChange(userId, week, day, category, slot, null);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void savePlanToDatabase(int userId, int week, Map<String, String> breakfastPlan, Map<String, String> lunchPlan, Map<String, String> dinnerPlan) {
+        List<Map<String, String>> categoryPlans = Arrays.asList(breakfastPlan, lunchPlan, dinnerPlan);
+        lock.writeLock().lock();
+        try {
+            Map<String, Map<String, PlanSlot>> plan = plans.computeIfAbsent(planKey(userId, week), k -> new HashMap<>());
+            for (String day : DAYS_OF_WEEK) {
+                for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+                    String meal = categoryPlans.get(c).get(day);
+                    if (meal == null) {
+                        continue;
+                    }
+                    Map<String, PlanSlot> slots = plan.computeIfAbsent(day, k -> new HashMap<>());
+                    PlanSlot previous = slots.get(MEAL_CATEGORIES[c]);
+                    if (previous != null && meal.equals(previous.meal)) {
+                        continue;
+                    }
+                    PlanSlot slot = new PlanSlot(meal, mealIdsByName.getOrDefault(meal, -1));
+                    slots.put(MEAL_CATEGORIES[c], slot);
+                    logChange(userId, week, day, MEAL_CATEGORIES[c], previous, slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // called with the write lock held; null stands for an empty slot
+    private void logChange(int userId, int week, String day, String category, PlanSlot oldSlot, PlanSlot newSlot) {
+        planChanges.add(new PlanChange(planChanges.size() + 1, userId, week, day, category,
+                oldSlot == null ? PlanChange.NO_MEAL : oldSlot.mealId, oldSlot == null ? null : oldSlot.meal,
+                newSlot == null ? PlanChange.NO_MEAL : newSlot.mealId, newSlot == null ? null : newSlot.meal));
+    }
+
+    @Override
+    public List<PlanChange> getPlanChangesSince(long sequence, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        lock.readLock().lock();
+        try {
+            int from = (int) Math.min(Math.max(sequence, 0), planChanges.size());
+            return new ArrayList<>(planChanges.subList(from, (int) Math.min((long) from + limit, planChanges.size())));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getPlannedMeals(int userId, int week) {
+        lock.readLock().lock();
+        try {
+            Map<String, Map<String, String>> weeklyPlan = new LinkedHashMap<>();
+            Map<String, Map<String, PlanSlot>> plan = plans.getOrDefault(planKey(userId, week), Collections.emptyMap());
+            for (String day : DAYS_OF_WEEK) {
+                Map<String, PlanSlot> slots = plan.get(day);
+                if (slots == null) {
+                    continue;
+                }
+                Map<String, String> dayPlan = new HashMap<>();
+                for (Map.Entry<String, PlanSlot> slot : slots.entrySet()) {
+                    dayPlan.put(slot.getKey(), slot.getValue().meal);
+                }
+                weeklyPlan.put(day, dayPlan);
+            }
+            return weeklyPlan;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean hasPlan(int userId, int week) {
+        lock.readLock().lock();
+        try {
+            Map<String, Map<String, PlanSlot>> plan = plans.get(planKey(userId, week));
+            return plan != null && !plan.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getShoppingList(int userId, int week) {
+        return countIngredients(userId, week).toMap(dictionary);
+    }
+
+    // rows are computed under the lock and handed out after it was released
+    @Override
+    public void forEachShoppingListRow(int userId, int week, ShoppingListOrder order, ShoppingListRowHandler handler) throws IOException {
+        List<Map.Entry<String, Integer>> rows = new ArrayList<>(getShoppingList(userId, week).entrySet());
+        if (order == ShoppingListOrder.BY_COUNT) {
+            // the alphabetical order is kept among equal counts
+            rows.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        }
+        for (Map.Entry<String, Integer> row : rows) {
+            handler.row(row.getKey(), row.getValue());
+        }
+    }
+
+    private IngredientCounter countIngredients(int userId, int week) {
+        IngredientCounter counter = new IngredientCounter(dictionary.size());
+        lock.readLock().lock();
+        try {
+            Map<String, Map<String, PlanSlot>> plan = plans.getOrDefault(planKey(userId, week), Collections.emptyMap());
+            for (Map<String, PlanSlot> slots : plan.values()) {
+                for (PlanSlot slot : slots.values()) {
+                    // slots of unknown meals join no ingredients
+                    if (slot.mealId > 0) {
+                        counter.addMeal(meals.get(slot.mealId - 1));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counter;
+    }
+
+    @Override
+    public void addMealListener(MealListener listener) {
+        mealListeners.add(listener);
+    }
+
+    @Override
+    public void removeMealListener(MealListener listener) {
+        mealListeners.remove(listener);
+    }
+
+    private void notifyMealsAdded(List<Main.Meal> chunk, int[] mealIds) {
+        if (mealListeners.isEmpty()) {
+            return;
+        }
+        List<Main.Meal> added = Collections.unmodifiableList(new ArrayList<>(chunk));
+        for (MealListener listener : mealListeners) {
+            listener.mealsAdded(added, mealIds);
+        }
+    }
+
+    private static long planKey(int userId, int week) {
+        return ((long) userId << 32) | (week & 0xFFFFFFFFL);
+    }
+
+    private static class PlanSlot {
+        private final String meal;
+        private final int mealId;
+
+        PlanSlot(String meal, int mealId) {
+            this.meal = meal;
+            this.mealId = mealId;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.example;
+
+import java.util.*;
+
+// counts dense ingredient ids in a plain int[] indexed by id: no boxing and no hashing per
+// increment. memory follows the largest id counted, iteration only the ids actually seen
+public class IngredientCounter {
+    private int[] counts;
+    // ids with a non-zero count, in the order they were first counted
+    private int[] seen;
+    private int distinct;
+
+    public IngredientCounter() {
+        this(64);
+    }
+
+    public IngredientCounter(int expectedIds) {
+        counts = new int[Math.max(expectedIds, 1)];
+        seen = new int[16];
+    }
+
+    public interface IdCount {
+        void accept(int ingredientId, int count);
+    }
+
+    public void increment(int ingredientId) {
+        add(ingredientId, 1);
+    }
+
+    public void add(int ingredientId, int amount) {
+        if (ingredientId < 0) {
+            throw new IllegalArgumentException("Ingredient id must not be negative: " + ingredientId);
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount must be positive: " + amount);
+        }
+        if (ingredientId >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(ingredientId + 1, counts.length * 2));
+        }
+        if (counts[ingredientId] == 0) {
+            if (distinct == seen.length) {
+                seen = Arrays.copyOf(seen, distinct * 2);
+            }
+            seen[distinct++] = ingredientId;
+        }
+        counts[ingredientId] += amount;
+    }
+
+    public void addMeal(Main.Meal meal) {
+        for (int ingredientId : meal.getIngredientIds()) {
+            increment(ingredientId);
+        }
+    }
+
+    public void addAll(IngredientCounter other) {
+        other.forEach(this::add);
+    }
+
+    public int get(int ingredientId) {
+        return ingredientId >= 0 && ingredientId < counts.length ? counts[ingredientId] : 0;
+    }
+
+    // number of distinct ingredients counted
+    public int size() {
+        return distinct;
+    }
+
+    public void forEach(IdCount consumer) {
+        for (int i = 0; i < distinct; i++) {
+            consumer.accept(seen[i], counts[seen[i]]);
+        }
+    }
+
+    // same shape as DatabaseManager.getShoppingList: names in alphabetical order
+    public Map<String, Integer> toMap(IngredientDictionary dictionary) {
+        String[] names = new String[distinct];
+        for (int i = 0; i < distinct; i++) {
+            names[i] = dictionary.name(seen[i]);
+        }
+        Arrays.sort(names);
+
+        Map<String, Integer> shoppingList = new LinkedHashMap<>();
+        for (String name : names) {
+            shoppingList.put(name, counts[dictionary.idOf(name)]);
+        }
+        return shoppingList;
+    }
+
+    // only the counted slots are reset, so clearing stays cheap for large dictionaries
+    public void clear() {
+        for (int i = 0; i < distinct; i++) {
+            counts[seen[i]] = 0;
+        }
+        distinct = 0;
+    }
+}
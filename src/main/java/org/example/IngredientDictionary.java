@@ -0,0 +1,104 @@
+package org.example;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// interns ingredient names to dense ids 0..size-1, so a meal holds an int[] instead of
+// its own copies of the strings. ids are never reused; lookups do not lock
+public class IngredientDictionary {
+    private static final IngredientDictionary SHARED = new IngredientDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // id -> name; replaced, never shrunk, when it fills up
+    private volatile String[] names = new String[64];
+    private int size;
+
+    // the dictionary meals built from plain strings intern into
+    public static IngredientDictionary shared() {
+        return SHARED;
+    }
+
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+
+            int newId = size;
+            String[] current = names;
+            if (newId == current.length) {
+                current = Arrays.copyOf(current, newId * 2);
+            }
+            current[newId] = name;
+            names = current;
+            size = newId + 1;
+            // published last, so whoever sees the id also sees its name
+            ids.put(name, newId);
+            return newId;
+        }
+    }
+
+    public int[] internAll(List<String> names) {
+        int[] result = new int[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = intern(names.get(i));
+        }
+        return result;
+    }
+
+    // -1 for names that were never interned
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    // lookup only, -1 for names that were never interned
+    public int[] idsOf(List<String> names) {
+        int[] result = new int[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = idOf(names.get(i));
+        }
+        return result;
+    }
+
+    public String name(int id) {
+        String[] current = names;
+        if (id < 0 || id >= current.length || current[id] == null) {
+            throw new IllegalArgumentException("Unknown ingredient id: " + id);
+        }
+        return current[id];
+    }
+
+    // read-only view that resolves the names on access
+    public List<String> names(int[] ingredientIds) {
+        return new NameList(ingredientIds);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    private class NameList extends AbstractList<String> implements RandomAccess {
+        private final int[] ingredientIds;
+
+        NameList(int[] ingredientIds) {
+            this.ingredientIds = ingredientIds;
+        }
+
+        @Override
+        public String get(int index) {
+            return name(ingredientIds[index]);
+        }
+
+        @Override
+        public int size() {
+            return ingredientIds.length;
+        }
+    }
+}
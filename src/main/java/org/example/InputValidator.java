@@ -0,0 +1,128 @@
+package org.example;
+
+import java.util.*;
+
+// validation and normalization of what users type in, shared by the interactive loop, batch
+// files and the API. the checks scan the characters by hand instead of String.matches, which
+// compiles a new Pattern on every call, so validating an ingredient allocates nothing
+public final class InputValidator {
+    public static final char INGREDIENT_SEPARATOR = ',';
+
+    private InputValidator() {
+    }
+
+    // letters a-z and A-Z and spaces, at least one character; same as [a-zA-Z ]+
+    public static boolean isLettersAndSpaces(String value) {
+        return firstInvalidChar(value) == -1 && !value.isEmpty();
+    }
+
+    public static boolean isValidName(String name) {
+        return isLettersAndSpaces(name);
+    }
+
+    public static boolean isValidIngredient(String ingredient) {
+        return isLettersAndSpaces(ingredient);
+    }
+
+    public static boolean isValidCategory(String category) {
+        return normalizeCategory(category) != null;
+    }
+
+    // the canonical lower-case category, ignoring case and surrounding whitespace, or null when
+    // it is none of breakfast, lunch, dinner. meals are stored and looked up under this form
+    public static String normalizeCategory(String category) {
+        if (category == null) {
+            return null;
+        }
+        int start = 0;
+        int end = category.length();
+        while (start < end && Character.isWhitespace(category.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(category.charAt(end - 1))) {
+            end--;
+        }
+        for (String candidate : MealRepository.MEAL_CATEGORIES) {
+            if (candidate.length() == end - start && category.regionMatches(true, start, candidate, 0, end - start)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // index of the first character that is neither an ASCII letter nor a space, -1 if none
+    static int firstInvalidChar(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // splits a comma-separated list like String.split(",") does, trailing empty items dropped,
+    // and checks every item instead of stopping at the first bad one
+    public static IngredientList validateIngredients(String input) {
+        List<String> ingredients = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        int end = input.length();
+        while (end > 0 && input.charAt(end - 1) == INGREDIENT_SEPARATOR) {
+            end--;
+        }
+
+        int start = 0;
+        int position = 1;
+        while (start < end || position == 1) {
+            int separator = input.indexOf(INGREDIENT_SEPARATOR, start);
+            if (separator == -1 || separator > end) {
+                separator = end;
+            }
+            String ingredient = input.substring(start, separator);
+            String error = describe(ingredient);
+            if (error == null) {
+                ingredients.add(ingredient);
+            } else {
+                errors.add("Ingredient " + position + " '" + ingredient + "': " + error);
+            }
+            start = separator + 1;
+            position++;
+        }
+        return new IngredientList(ingredients, errors);
+    }
+
+    private static String describe(String ingredient) {
+        if (ingredient.isEmpty()) {
+            return "empty";
+        }
+        int invalid = firstInvalidChar(ingredient);
+        if (invalid != -1) {
+            return "unexpected '" + ingredient.charAt(invalid) + "' at " + (invalid + 1) + ", use letters only";
+        }
+        return null;
+    }
+
+    public static class IngredientList {
+        private final List<String> ingredients;
+        private final List<String> errors;
+
+        IngredientList(List<String> ingredients, List<String> errors) {
+            this.ingredients = Collections.unmodifiableList(ingredients);
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        // the valid items in input order
+        public List<String> getIngredients() {
+            return ingredients;
+        }
+
+        // one message per invalid item, numbered from 1 in input order
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty() && !ingredients.isEmpty();
+        }
+    }
+}
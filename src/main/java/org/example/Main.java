@@ -1,34 +1,71 @@
 package org.example;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
 
-import static org.example.DatabaseManager.DAYS_OF_WEEK;
+import static org.example.MealRepository.DAYS_OF_WEEK;
+import static org.example.MealRepository.MEAL_CATEGORIES;
 
 public class Main {
 
+    // -Dmealplanner.storage=memory keeps everything in the process; otherwise meals are stored in
+    // the JDBC database at mealplanner.db.url (any URL whose driver is on the classpath)
+    private static final boolean IN_MEMORY = "memory".equals(System.getProperty("mealplanner.storage"));
+    private static final String DB_URL = System.getProperty("mealplanner.db.url", "jdbc:postgresql://localhost:5432/meals_db");
+    private static final String USER = System.getProperty("mealplanner.db.user", "postgres");
+    private static final String PASS = System.getProperty("mealplanner.db.password", "1111");
+
     private static final Scanner scanner = new Scanner(System.in);
-    private static DatabaseManager db;
+    private static MealRepository db;
+    private static MealCatalogCache catalog;
+    // only set in write-behind mode; meals are then written in the background
+    private static WriteBehindQueue writeBehind;
+    private static boolean pendingWrites;
 
     private static Map<String, String> breakfastPlan = new LinkedHashMap<>();
     private static Map<String, String> lunchPlan = new LinkedHashMap<>();
     private static Map<String, String> dinnerPlan = new LinkedHashMap<>();
 
-    private static Map<String, List<String>> mealsByCategory = new HashMap<>();
+    // category -> meal name -> meal, alphabetically, for the plan being made
+    private static Map<String, Map<String, Meal>> mealsByCategory = new HashMap<>();
+    // kept current by the repository, so planning never reloads the catalog for it
+    private static MealRecommender recommender;
+    // suggestions shown per slot
+    private static final int SUGGESTIONS = 10;
 
     public static void main(String[] args) {
-        String DB_URL = "jdbc:postgresql://localhost:5432/meals_db";
-        String USER = "postgres";
-        String PASS = "1111";
-            try (Connection connection = DriverManager.getConnection(DB_URL, USER, PASS)) {
-                db = new DatabaseManager(connection);
+        // --serve [port] starts the HTTP API, --import <meals> bulk-loads a meal file, --write-behind
+        // the interactive loop with meals added in the background, any other arguments switch to
+        // headless batch mode: --file <commands> or one command per argument
+        if (args.length > 0 && args[0].equals("--serve")) {
+            runServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--import")) {
+            runImport(args);
+            return;
+        }
+        boolean writeBehindMode = args.length == 1 && args[0].equals("--write-behind");
+        if (args.length > 0 && !writeBehindMode) {
+            runBatch(args);
+            return;
+        }
+
+            try (ConnectionPool pool = IN_MEMORY ? null : new ConnectionPool(DB_URL, USER, PASS)) {
+                db = pool == null ? new InMemoryMealRepository() : new DatabaseManager(pool);
                 db.initializeDatabase();
+                catalog = new MealCatalogCache(db);
+                if (writeBehindMode) {
+                    writeBehind = new WriteBehindQueue(db);
+                }
                 String command = "";
 
                 while (true) {
-                    System.out.println("What would you like to do (add, show, plan, list plan, save, exit)?");
+                    System.out.println("What would you like to do (add, show, plan, list plan, save, metrics, exit)?");
                     if (!scanner.hasNextLine()) {
                         // No more input; exit gracefully
                         break;
@@ -40,6 +77,8 @@ public class Main {
                         break;
                     }
 
+                    // includes the time spent answering the command's prompts
+                    long commandStart = System.nanoTime();
                     switch (command) {
                         case "add":
                             addMeal();
@@ -56,9 +95,19 @@ public class Main {
                         case "save":
                             save();
                             break;
+                        case "metrics":
+                            System.out.print(Metrics.shared().report());
+                            break;
                         default:
                             System.out.println("Unknown command");
+                            continue;
                     }
+                    Metrics.shared().recordSince(Metrics.COMMAND_SECONDS, "command", command, commandStart);
+                }
+
+                // queued meals are written before the pool closes
+                if (writeBehind != null) {
+                    writeBehind.close();
                 }
 
             } catch (SQLException e) {
@@ -66,16 +115,71 @@ public class Main {
             }
         }
 
+    // a batch is one JDBC transaction, so it always runs against the database
+    private static void runBatch(String[] args) {
+        try {
+            List<String> commands = BatchRunner.parseArguments(args);
+            try (Connection connection = DriverManager.getConnection(DB_URL, USER, PASS)) {
+                new BatchRunner(connection, System.out).run(commands);
+            }
+        } catch (SQLException | IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // chunks are committed as they go and reported with their rows per second
+    private static void runImport(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: --import <meals>");
+            System.exit(1);
+        }
+        try (Connection connection = DriverManager.getConnection(DB_URL, USER, PASS)) {
+            DatabaseManager importDb = new DatabaseManager(connection);
+            importDb.initializeDatabase();
+            new MealImport(importDb, System.out).importFile(Paths.get(args[1]));
+        } catch (SQLException | IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // the server keeps the JVM alive; the pool and server are closed on shutdown
+    private static void runServer(String[] args) {
+        ConnectionPool pool = IN_MEMORY ? null : new ConnectionPool(DB_URL, USER, PASS);
+        try {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : ApiServer.DEFAULT_PORT;
+            MealRepository serverDb = pool == null ? new InMemoryMealRepository() : new DatabaseManager(pool);
+            serverDb.initializeDatabase();
+
+            ApiServer server = new ApiServer(serverDb, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                if (pool != null) {
+                    pool.close();
+                }
+            }));
+            server.start();
+            System.out.println("Serving the meal planner API on port " + server.getPort());
+        } catch (SQLException | IOException | NumberFormatException e) {
+            e.printStackTrace();
+            if (pool != null) {
+                pool.close();
+            }
+            System.exit(1);
+        }
+    }
+
     private static void addMeal() {
         String name;
         String category;
-        List<String> ingredients = new ArrayList<>();
+        List<String> ingredients;
 
         // get meal category
         while (true) {
             System.out.println("Which meal do you want to add (breakfast, lunch, dinner)?");
-            category = scanner.nextLine();
-            if (isValidCategory(category)) {
+            category = InputValidator.normalizeCategory(scanner.nextLine());
+            if (category != null) {
                 break;
             } else {
                 System.out.println("Wrong meal category! Choose from: breakfast, lunch, dinner.");
@@ -86,7 +190,7 @@ public class Main {
         while (true) {
             System.out.println("Input the meal's name:");
             name = scanner.nextLine();
-            if (isValidName(name)) {
+            if (InputValidator.isValidName(name)) {
                 break;
             } else {
                 System.out.println("Wrong format. Use letters only!");
@@ -96,92 +200,100 @@ public class Main {
         // get the ingredients
         while (true) {
             System.out.println("Input the ingredients:");
-            String ingredientsInput = scanner.nextLine();
-            String[] ingredientsArray = ingredientsInput.split(",");
-            boolean valid = true;
-            ingredients.clear();
-
-            for (String ingredient : ingredientsArray) {
-                if (isValidIngredient(ingredient)) {
-                    ingredients.add(ingredient);
-                } else {
-                    System.out.println("Wrong format. Use letters only!");
-                    valid = false;
-                    break;
-                }
+            InputValidator.IngredientList checked = InputValidator.validateIngredients(scanner.nextLine());
+            if (checked.isValid()) {
+                ingredients = checked.getIngredients();
+                break;
             }
+            System.out.println("Wrong format. Use letters only!");
+            for (String error : checked.getErrors()) {
+                System.out.println("  " + error);
+            }
+        }
 
-            if (valid && !ingredients.isEmpty()) {
-                break;
+        if (writeBehind != null) {
+            try {
+                writeBehind.submit(category, name, ingredients).whenComplete((mealId, failure) -> {
+                    if (failure != null) {
+                        reportError("add", failure);
+                    }
+                });
+                pendingWrites = true;
+                System.out.println("The meal has been added!");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reportError("add", e);
             }
+            return;
         }
 
         try {
-            db.addMeal(category, name, ingredients);
+            catalog.addMeal(category, name, ingredients);
             System.out.println("The meal has been added!");
         } catch (SQLException e) {
-            e.printStackTrace();
+            reportError("add", e);
+        }
+    }
+
+    // reads see every meal added before them: wait for the queue, then drop what the cache
+    // loaded while the meals were still on their way
+    private static void awaitPendingWrites() {
+        if (writeBehind == null || !pendingWrites) {
+            return;
+        }
+        try {
+            writeBehind.flush();
+            pendingWrites = false;
+            catalog.invalidateAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     private static void showMeals() {
+        awaitPendingWrites();
         while (true) {
             System.out.println("Which category do you want to print (breakfast, lunch, dinner)?");
-            String inputCategory = scanner.nextLine();
+            String inputCategory = InputValidator.normalizeCategory(scanner.nextLine());
 
-            if (!isValidCategory(inputCategory)) {
+            if (inputCategory == null) {
                 System.out.println("Wrong meal category! Choose from: breakfast, lunch, dinner.");
                 continue;
             }
 
+            // streamed from the repository, so the first meal prints before the last one is read
+            // and a category of any size needs the memory of one meal
             try {
-                List<Meal> mealList = db.getMealsByCategory(inputCategory);
-
-                if (mealList.isEmpty()) {
-                    System.out.println("No meals found.");
-                    return;
-                }
-                System.out.println("Category: " + inputCategory);
-
-                for (int i = 0; i < mealList.size(); i++) {
-                    Meal meal = mealList.get(i);
-
-                    if (i > 0) {
-                        System.out.println();
-                    }
-
-                    System.out.println("Name: " + meal.getName());
-                    System.out.println("Ingredients:");
-
-                    for (String ingredient : meal.getIngredients()) {
-                        System.out.println(ingredient);
-                    }
-                }
-
+                MealPrinter printer = new MealPrinter(System.out, inputCategory);
+                db.forEachMealInCategory(inputCategory, MealRepository.MealOrder.ADDED, printer);
+                printer.finish();
                 break;
 
-            } catch (SQLException e) {
-                e.printStackTrace();
+            } catch (SQLException | IOException e) {
+                reportError("show", e);
                 break;
             }
         }
     }
 
     private static void planMeals() {
+        awaitPendingWrites();
         mealsByCategory.clear();
-        String[] categories = {"breakfast", "lunch", "dinner"};
 
         try {
-            for (String category : categories) {
-                List<Meal> meals = db.getMealsByCategoryAlphabetical(category);
-                List<String> mealNames = new ArrayList<>();
-                for (Meal meal : meals) {
-                    mealNames.add(meal.getName());
+            for (String category : MEAL_CATEGORIES) {
+                Map<String, Meal> mealsByName = new LinkedHashMap<>();
+                for (Meal meal : catalog.getMealsByCategoryAlphabetical(category)) {
+                    mealsByName.putIfAbsent(meal.getName(), meal);
                 }
-                mealsByCategory.put(category, mealNames);
+                mealsByCategory.put(category, mealsByName);
+            }
+            // built on the first plan, so sessions that never plan skip loading every meal
+            if (recommender == null) {
+                recommender = MealRecommender.build(db);
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            reportError("plan", e);
             return;
         }
 
@@ -192,20 +304,14 @@ public class Main {
             return;
         }
 
-        // delete the old plan if it exists
-        try {
-            db.deleteOldPlan();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return;
-        }
-
+        // meals chosen so far this week, which the suggestions try to share ingredients with
+        List<Meal> planned = new ArrayList<>();
         for (String day : DAYS_OF_WEEK) {
             // plan breakfast, lunch, dinner
             System.out.println(day);
-            planMealForCategory(day, "breakfast", breakfastPlan); //helper method
-            planMealForCategory(day, "lunch", lunchPlan);
-            planMealForCategory(day, "dinner", dinnerPlan);
+            planMealForCategory(day, "breakfast", breakfastPlan, planned); //helper method
+            planMealForCategory(day, "lunch", lunchPlan, planned);
+            planMealForCategory(day, "dinner", dinnerPlan, planned);
 
             System.out.println("Yeah! We planned the meals for " + day + ".");
         }
@@ -213,23 +319,22 @@ public class Main {
         try {
             db.savePlanToDatabase(breakfastPlan, lunchPlan, dinnerPlan);
         } catch (SQLException e) {
-            e.printStackTrace();
+            reportError("plan", e);
         }
 
-        for (String day : DAYS_OF_WEEK) {
-            System.out.println(day);
-            System.out.println("Breakfast: " + breakfastPlan.get(day));
-            System.out.println("Lunch: " + lunchPlan.get(day));
-            System.out.println("Dinner: " + dinnerPlan.get(day));
-            System.out.println();
-        }
+        printPlan(System.out, breakfastPlan, lunchPlan, dinnerPlan);
     }
 
-    private static void planMealForCategory(String day, String category, Map<String, String> mealPlan) {
-        List<String> meals = mealsByCategory.get(category);
+    private static void planMealForCategory(String day, String category, Map<String, String> mealPlan, List<Meal> planned) {
+        Map<String, Meal> meals = mealsByCategory.get(category);
 
-        for (String meal : meals) {
-            System.out.println(meal);
+        // the best matches for the week so far instead of the whole category
+        List<MealRecommender.Suggestion> suggestions = recommender.recommend(category, planned, SUGGESTIONS);
+        for (MealRecommender.Suggestion suggestion : suggestions) {
+            System.out.println(suggestion.getMeal().getName() + " (" + suggestion.getNewIngredients() + " new ingredients)");
+        }
+        if (meals.size() > suggestions.size()) {
+            System.out.println("... or any other of the " + meals.size() + " " + category + " meals");
         }
 
         System.out.println();
@@ -239,8 +344,9 @@ public class Main {
             System.out.println(prompt);
             String chosenMeal = scanner.nextLine();
 
-            if (meals.contains(chosenMeal)) {
+            if (meals.containsKey(chosenMeal)) {
                 mealPlan.put(day, chosenMeal);
+                planned.add(meals.get(chosenMeal));
                 break;
             } else {
                 System.out.println("This meal doesn’t exist. Choose a meal from the list above.");
@@ -256,88 +362,126 @@ public class Main {
                 return;
             }
 
-            for (String day : DAYS_OF_WEEK) {
-                Map<String, String> dayPlan = weeklyPlan.get(day);
-                if (dayPlan != null) {
-                    System.out.println(day);
-                    System.out.println("Breakfast: " + dayPlan.get("breakfast"));
-                    System.out.println("Lunch: " + dayPlan.get("lunch"));
-                    System.out.println("Dinner: " + dayPlan.get("dinner"));
-                    System.out.println();
-                }
-            }
+            printWeeklyPlan(System.out, weeklyPlan);
 
         } catch (SQLException e) {
-            e.printStackTrace();
+            reportError("list plan", e);
         }
     }
 
     private static void save() {
-        try{
-            Map<String, Map<String, String>> weeklyPlan = db.getPlannedMeals();
-
-            if (weeklyPlan.isEmpty()) {
+        try {
+            if (!db.hasPlan()) {
                 System.out.println("Unable to save. Plan your meals first.");
                 return;
             }
 
-            Map<String, Integer> ingredientCounts = new HashMap<>();
-
-            for (Map<String, String> dayPlan : weeklyPlan.values()) {
-                for (String mealName : dayPlan.values()) {
-                    int mealId = db.getMealId(mealName);
-                    List<String> ingredients = db.getIngredientsForMeal(mealId);
-                    for (String ingredient : ingredients) {
-                        ingredientCounts.put(ingredient, ingredientCounts.getOrDefault(ingredient, 0) + 1);
-                    }
-                }
-            }
-
             System.out.println("Input a filename:");
             String filename = scanner.nextLine();
 
-            // write the shopping list to the file
-            try (FileWriter writer = new FileWriter(filename)) {
-                for (Map.Entry<String, Integer> entry : ingredientCounts.entrySet()) {
-                    String ingredient = entry.getKey();
-                    int count = entry.getValue();
-                    if (count > 1) {
-                        writer.write(ingredient + " x" + count + "\n");
-                    } else {
-                        writer.write(ingredient + "\n");
-                    }
-                }
-                System.out.println("Saved!");
-            } catch (IOException e) {
+            // stream the shopping list into the file
+            try {
+                ShoppingListExporter.ExportStats stats = new ShoppingListExporter(db).export(Paths.get(filename),
+                        ShoppingListExporter.Format.TEXT, MealRepository.ShoppingListOrder.ALPHABETICAL);
+                System.out.println("Saved! (" + stats + ")");
+            } catch (IOException | InvalidPathException e) {
                 System.out.println("Unable to save. Plan your meals first.");
             }
 
         } catch (SQLException e) {
-            e.printStackTrace();
+            reportError("save", e);
         }
     }
 
-    private static boolean isValidName(String name) {
-        return name.matches("[a-zA-Z ]+");
+    // failures are counted per command before they are printed
+    static void reportError(String command, Throwable e) {
+        Metrics.shared().counter(Metrics.COMMAND_ERRORS, "command", command).increment();
+        e.printStackTrace();
     }
 
-    private static boolean isValidCategory(String category) {
-        return category.equalsIgnoreCase("breakfast") || category.equalsIgnoreCase("lunch") || category.equalsIgnoreCase("dinner");
+    // output shared by the interactive loop and the batch runner
+    static void printMeals(PrintStream out, String category, List<Meal> mealList) {
+        MealPrinter printer = new MealPrinter(out, category);
+        for (Meal meal : mealList) {
+            printer.meal(meal);
+        }
+        printer.finish();
     }
 
-    private static boolean isValidIngredient(String ingredient) {
-        return ingredient.matches("[a-zA-Z ]+");
+    // prints meals as they arrive: the header comes with the first one, the empty-category
+    // message from finish when none came at all
+    static class MealPrinter implements MealRepository.MealHandler {
+        private final PrintStream out;
+        private final String category;
+        private int printed;
+
+        MealPrinter(PrintStream out, String category) {
+            this.out = out;
+            this.category = category;
+        }
+
+        @Override
+        public void meal(Meal meal) {
+            if (printed++ == 0) {
+                out.println("Category: " + category);
+            } else {
+                out.println();
+            }
+
+            out.println("Name: " + meal.getName());
+            out.println("Ingredients:");
+
+            for (String ingredient : meal.getIngredients()) {
+                out.println(ingredient);
+            }
+        }
+
+        void finish() {
+            if (printed == 0) {
+                out.println("No meals found.");
+            }
+        }
     }
 
-    static class Meal {
+    static void printPlan(PrintStream out, Map<String, String> breakfastPlan, Map<String, String> lunchPlan, Map<String, String> dinnerPlan) {
+        for (String day : DAYS_OF_WEEK) {
+            out.println(day);
+            out.println("Breakfast: " + breakfastPlan.get(day));
+            out.println("Lunch: " + lunchPlan.get(day));
+            out.println("Dinner: " + dinnerPlan.get(day));
+            out.println();
+        }
+    }
+
+    static void printWeeklyPlan(PrintStream out, Map<String, Map<String, String>> weeklyPlan) {
+        for (String day : DAYS_OF_WEEK) {
+            Map<String, String> dayPlan = weeklyPlan.get(day);
+            if (dayPlan != null) {
+                out.println(day);
+                out.println("Breakfast: " + dayPlan.get("breakfast"));
+                out.println("Lunch: " + dayPlan.get("lunch"));
+                out.println("Dinner: " + dayPlan.get("dinner"));
+                out.println();
+            }
+        }
+    }
+
+    public static class Meal {
         private final String category;
         private final String name;
-        private final List<String> ingredients;
+        // ingredients as ids of the dictionary, in the order they were given
+        private final int[] ingredientIds;
+        private final IngredientDictionary dictionary;
 
         public Meal(String category, String name, List<String> ingredients) {
+            this(category, name, IngredientDictionary.shared().internAll(ingredients), IngredientDictionary.shared());
+        }
+
+        public Meal(String category, String name, int[] ingredientIds, IngredientDictionary dictionary) {
             this.category = category;
             this.name = name;
-            this.ingredients = ingredients;
+            this.ingredientIds = ingredientIds;
+            this.dictionary = dictionary;
         }
 
         public String getCategory() {
@@ -348,8 +492,18 @@ public class Main {
             return name;
         }
 
+        // read-only, the names are resolved through the dictionary
         public List<String> getIngredients() {
-            return ingredients;
+            return dictionary.names(ingredientIds);
+        }
+
+        // the meal's own array, not a copy
+        public int[] getIngredientIds() {
+            return ingredientIds;
+        }
+
+        public IngredientDictionary getDictionary() {
+            return dictionary;
         }
     }
 }
@@ -0,0 +1,230 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// read-through cache in front of a MealRepository for catalog data that rarely changes.
+// the maps are concurrent, so lookups never wait for each other; the cache is bounded by the
+// number of meals it holds (a category listing counts its meals, an id or an ingredient list
+// counts one) and drops the least recently used entries when it grows past that.
+// meals added through addMeal, or committed by anyone through the repository it listens to,
+// drop the entries they affect. hits and misses are counted per instance and, across all
+// caches, in the shared Metrics
+public class MealCatalogCache implements MealRepository.MealListener {
+    public static final int DEFAULT_MAX_MEALS = 100_000;
+
+    private final MealRepository db;
+    private final long maxMeals;
+    private final Map<String, Entry<List<Main.Meal>>> mealsByCategory = new ConcurrentHashMap<>();
+    private final Map<String, Entry<Integer>> mealIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Entry<List<String>>> ingredientsByMealId = new ConcurrentHashMap<>();
+    private final AtomicLong cachedMeals = new AtomicLong();
+    // taken only by the thread that found the cache over its bound
+    private final Object evictionLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // bumped on every invalidation so that loads racing with a write are not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    public MealCatalogCache(MealRepository db) {
+        this(db, DEFAULT_MAX_MEALS);
+    }
+
+    public MealCatalogCache(MealRepository db, int maxMeals) {
+        if (maxMeals <= 0) {
+            throw new IllegalArgumentException("Max meals must be positive: " + maxMeals);
+        }
+        this.db = db;
+        this.maxMeals = maxMeals;
+        db.addMealListener(this);
+    }
+
+    public List<Main.Meal> getMealsByCategory(String category) throws SQLException {
+        String key = categoryKey(category, false);
+        List<Main.Meal> meals = lookup(mealsByCategory, key);
+        if (meals == null) {
+            long loadGeneration = generation.get();
+            meals = Collections.unmodifiableList(db.getMealsByCategory(category));
+            store(mealsByCategory, key, meals, meals.size(), loadGeneration);
+        }
+        return meals;
+    }
+
+    public List<Main.Meal> getMealsByCategoryAlphabetical(String category) throws SQLException {
+        String key = categoryKey(category, true);
+        List<Main.Meal> meals = lookup(mealsByCategory, key);
+        if (meals == null) {
+            long loadGeneration = generation.get();
+            meals = Collections.unmodifiableList(db.getMealsByCategoryAlphabetical(category));
+            store(mealsByCategory, key, meals, meals.size(), loadGeneration);
+        }
+        return meals;
+    }
+
+    // unknown names are cached as -1 as well, addMeal removes them again
+    public int getMealId(String mealName) throws SQLException {
+        Integer mealId = lookup(mealIds, mealName);
+        if (mealId == null) {
+            long loadGeneration = generation.get();
+            mealId = db.getMealId(mealName);
+            store(mealIds, mealName, mealId, 1, loadGeneration);
+        }
+        return mealId;
+    }
+
+    public List<String> getIngredientsForMeal(int mealId) throws SQLException {
+        List<String> ingredients = lookup(ingredientsByMealId, mealId);
+        if (ingredients == null) {
+            long loadGeneration = generation.get();
+            ingredients = Collections.unmodifiableList(db.getIngredientsForMeal(mealId));
+            store(ingredientsByMealId, mealId, ingredients, 1, loadGeneration);
+        }
+        return ingredients;
+    }
+
+    // invalidates right away as well, so a caller holding a transaction reads its own meal
+    // before the commit tells the listeners
+    public int addMeal(String category, String name, List<String> ingredients) throws SQLException {
+        int mealId = db.addMeal(category, name, ingredients);
+        invalidate(category, name);
+        return mealId;
+    }
+
+    @Override
+    public void mealsAdded(List<Main.Meal> meals, int[] mealIds) {
+        for (Main.Meal meal : meals) {
+            invalidate(meal.getCategory(), meal.getName());
+        }
+    }
+
+    public void invalidate(String category, String mealName) {
+        generation.incrementAndGet();
+        // lookups match the category case-insensitively, so every spelling of it is stale
+        for (Map.Entry<String, Entry<List<Main.Meal>>> cached : mealsByCategory.entrySet()) {
+            String key = cached.getKey();
+            if (key.substring(key.indexOf('/') + 1).equalsIgnoreCase(category)) {
+                remove(mealsByCategory, key, cached.getValue());
+            }
+        }
+        Entry<Integer> mealId = mealIds.get(mealName);
+        if (mealId != null) {
+            remove(mealIds, mealName, mealId);
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        clear(mealsByCategory);
+        clear(mealIds);
+        clear(ingredientsByMealId);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // entries, not meals
+    public int size() {
+        return mealsByCategory.size() + mealIds.size() + ingredientsByMealId.size();
+    }
+
+    public long getCachedMeals() {
+        return cachedMeals.get();
+    }
+
+    private <K, V> V lookup(Map<K, Entry<V>> map, K key) {
+        Entry<V> entry = map.get(key);
+        if (entry != null) {
+            entry.lastUsed = System.nanoTime();
+            hits.incrementAndGet();
+            Metrics.shared().counter(Metrics.CACHE_LOOKUPS, "result", "hit").increment();
+            return entry.value;
+        }
+        misses.incrementAndGet();
+        Metrics.shared().counter(Metrics.CACHE_LOOKUPS, "result", "miss").increment();
+        return null;
+    }
+
+    private <K, V> void store(Map<K, Entry<V>> map, K key, V value, int meals, long loadGeneration) {
+        Entry<V> entry = new Entry<>(value, meals);
+        if (entry.meals > maxMeals) {
+            return;
+        }
+        Entry<V> previous = map.put(key, entry);
+        cachedMeals.addAndGet(entry.meals - (previous == null ? 0 : previous.meals));
+        // an invalidation that started after the put removes the entry itself; one that started
+        // after the load but before the put is caught here
+        if (generation.get() != loadGeneration) {
+            remove(map, key, entry);
+            return;
+        }
+        if (cachedMeals.get() > maxMeals) {
+            evict();
+        }
+    }
+
+    private <K, V> void remove(Map<K, Entry<V>> map, K key, Entry<V> entry) {
+        if (map.remove(key, entry)) {
+            cachedMeals.addAndGet(-entry.meals);
+        }
+    }
+
+    private <K, V> void clear(Map<K, Entry<V>> map) {
+        for (Map.Entry<K, Entry<V>> cached : map.entrySet()) {
+            remove(map, cached.getKey(), cached.getValue());
+        }
+    }
+
+    // one pass over every entry, oldest first, down to an eighth below the bound so that the
+    // next few stores do not have to scan again
+    private void evict() {
+        synchronized (evictionLock) {
+            if (cachedMeals.get() <= maxMeals) {
+                return;
+            }
+            // last use -> removal of the entry
+            List<Map.Entry<Long, Runnable>> entries = new ArrayList<>(size());
+            collect(mealsByCategory, entries);
+            collect(mealIds, entries);
+            collect(ingredientsByMealId, entries);
+
+            entries.sort(Map.Entry.comparingByKey());
+            long target = maxMeals - maxMeals / 8;
+            for (int i = 0; i < entries.size() && cachedMeals.get() > target; i++) {
+                entries.get(i).getValue().run();
+            }
+        }
+    }
+
+    private <K, V> void collect(Map<K, Entry<V>> map, List<Map.Entry<Long, Runnable>> entries) {
+        for (Map.Entry<K, Entry<V>> cached : map.entrySet()) {
+            K key = cached.getKey();
+            Entry<V> entry = cached.getValue();
+            entries.add(new AbstractMap.SimpleEntry<>(entry.lastUsed, () -> remove(map, key, entry)));
+        }
+    }
+
+    private static String categoryKey(String category, boolean alphabetical) {
+        return (alphabetical ? "alphabetical/" : "added/") + category;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        // an empty listing still takes a slot
+        private final int meals;
+        private volatile long lastUsed = System.nanoTime();
+
+        Entry(V value, int meals) {
+            this.value = value;
+            this.meals = Math.max(1, meals);
+        }
+    }
+}
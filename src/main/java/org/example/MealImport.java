@@ -0,0 +1,82 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+
+// bulk import of a meal file through addMeals, with a line of progress per chunk. one meal per
+// line, as the batch add command without its "add": <category>;<name>;<ingredient>,<ingredient>...
+// blank lines and lines starting with '#' are skipped
+public class MealImport {
+    static final String FIELD_SEPARATOR = ";";
+
+    private final MealRepository db;
+    private final PrintStream out;
+
+    public MealImport(MealRepository db, PrintStream out) {
+        this.db = db;
+        this.out = out;
+    }
+
+    // every line is checked before the first meal is written; returns the new meal ids
+    public int[] importFile(Path file) throws SQLException, IOException {
+        List<Main.Meal> meals = readMeals(file);
+        long startTime = System.nanoTime();
+        int[] mealIds = db.addMeals(meals, MealRepository.DEFAULT_IMPORT_CHUNK_SIZE, progressPrinter(out));
+        out.println(String.format("Imported %d meals from %s in %.2f s", mealIds.length, file,
+                (System.nanoTime() - startTime) / 1_000_000_000.0));
+        return mealIds;
+    }
+
+    public static List<Main.Meal> readMeals(Path file) throws IOException {
+        List<Main.Meal> meals = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int line = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                String trimmed = text.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = trimmed.split(FIELD_SEPARATOR, -1);
+                if (fields.length != 3) {
+                    throw new IllegalArgumentException("Line " + line + ": expected <category>;<name>;<ingredients>");
+                }
+                try {
+                    meals.add(parseMeal(fields[0].trim(), fields[1].trim(), fields[2].trim()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + line + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return meals;
+    }
+
+    // the checks of the add command, shared with BatchRunner
+    static Main.Meal parseMeal(String categoryInput, String name, String ingredientsInput) {
+        String category = InputValidator.normalizeCategory(categoryInput);
+        if (category == null) {
+            throw new IllegalArgumentException("Wrong meal category: " + categoryInput);
+        }
+        if (!InputValidator.isValidName(name)) {
+            throw new IllegalArgumentException("Wrong meal name: " + name);
+        }
+        InputValidator.IngredientList ingredients = InputValidator.validateIngredients(ingredientsInput);
+        if (!ingredients.getErrors().isEmpty()) {
+            throw new IllegalArgumentException("Wrong ingredients: " + String.join("; ", ingredients.getErrors()));
+        }
+        return new Main.Meal(category, name, ingredients.getIngredients());
+    }
+
+    // one line per chunk: meals and rows so far and the rows per second of the import
+    public static MealRepository.ImportProgress progressPrinter(PrintStream out) {
+        return (mealsImported, rowsImported, rowsPerSecond) -> out.println(String.format(
+                "  %,d meals, %,d rows (%,.0f rows/s)", mealsImported, rowsImported, rowsPerSecond));
+    }
+}
@@ -0,0 +1,48 @@
+package org.example;
+
+import java.util.List;
+
+// one page of a category listing and the key the next page starts after: the id of the last
+// meal and, for the alphabetical order, its name. pages are read by key rather than by offset,
+// so the database seeks straight to the next page however deep into the category it lies
+public class MealPage {
+    // the key of the first page: below every meal id and every name
+    static final int FIRST_MEAL_ID = 0;
+    static final String FIRST_NAME = "";
+
+    private final List<Main.Meal> meals;
+    private final int[] mealIds;
+    private final int lastMealId;
+    private final String lastName;
+    private final boolean full;
+
+    public MealPage(List<Main.Meal> meals, int[] mealIds, int lastMealId, String lastName, boolean full) {
+        this.meals = meals;
+        this.mealIds = mealIds;
+        this.lastMealId = lastMealId;
+        this.lastName = lastName;
+        this.full = full;
+    }
+
+    public List<Main.Meal> getMeals() {
+        return meals;
+    }
+
+    // the ids of the meals, in the same order
+    public int[] getMealIds() {
+        return mealIds;
+    }
+
+    public int getLastMealId() {
+        return lastMealId;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    // a page shorter than the limit is the last one; a full page may be followed by an empty one
+    public boolean hasMore() {
+        return full;
+    }
+}
@@ -0,0 +1,303 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// suggests meals for a plan slot that share the most ingredients with the meals already planned,
+// so the shopping list grows as little as possible. every meal gets a MinHash signature over its
+// ingredient ids when it is added: the share of equal positions in two signatures estimates the
+// Jaccard similarity of the ingredient sets. the signatures are cut into bands and every band is
+// hashed into a bucket per category (locality sensitive hashing), so a query only looks at meals
+// sharing a bucket with a planned meal instead of scanning the whole category
+public class MealRecommender implements MealRepository.MealListener {
+    static final int BANDS = 20;
+    static final int ROWS = 3;
+    static final int SIGNATURE_SIZE = BANDS * ROWS;
+    private static final long SEED = 0x5DEECE66DL;
+
+    // hash i of ingredient x is (multipliers[i] * x + offsets[i]) >>> 33, the same for every instance
+    private static final long[] MULTIPLIERS = new long[SIGNATURE_SIZE];
+    private static final long[] OFFSETS = new long[SIGNATURE_SIZE];
+
+    static {
+        Random random = new Random(SEED);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            MULTIPLIERS[i] = random.nextLong() | 1;
+            OFFSETS[i] = random.nextLong();
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Main.Meal[] meals = new Main.Meal[1024];
+    // signature of doc d at [d * SIGNATURE_SIZE, (d + 1) * SIGNATURE_SIZE)
+    private int[] signatures = new int[1024 * SIGNATURE_SIZE];
+    private int mealCount;
+    // lower-cased category -> docs in the order they were added
+    private final Map<String, Docs> docsByCategory = new HashMap<>();
+    // (category, band, rows of the band) -> docs
+    private final Map<Long, Docs> buckets = new HashMap<>();
+
+    // loads every category and keeps the signatures current through the repository's addMeals
+    public static MealRecommender build(MealRepository db) throws SQLException {
+        MealRecommender recommender = new MealRecommender();
+        db.loadCatalog(recommender);
+        return recommender;
+    }
+
+    @Override
+    public void mealsAdded(List<Main.Meal> meals, int[] mealIds) {
+        addAll(meals);
+    }
+
+    public void add(Main.Meal meal) {
+        addAll(Collections.singletonList(meal));
+    }
+
+    public void addAll(Collection<Main.Meal> newMeals) {
+        int[] signature = new int[SIGNATURE_SIZE];
+        lock.writeLock().lock();
+        try {
+            for (Main.Meal meal : newMeals) {
+                int doc = mealCount;
+                if (doc == meals.length) {
+                    meals = Arrays.copyOf(meals, doc * 2);
+                    signatures = Arrays.copyOf(signatures, doc * 2 * SIGNATURE_SIZE);
+                }
+                // stored with shared dictionary ids, so they compare with those of the planned meals
+                if (meal.getDictionary() != IngredientDictionary.shared()) {
+                    meal = new Main.Meal(meal.getCategory(), meal.getName(), sharedIds(meal), IngredientDictionary.shared());
+                }
+                meals[doc] = meal;
+                mealCount++;
+
+                signature(meal.getIngredientIds(), signature);
+                System.arraycopy(signature, 0, signatures, doc * SIGNATURE_SIZE, SIGNATURE_SIZE);
+                String category = meal.getCategory().toLowerCase(Locale.ROOT);
+                docsByCategory.computeIfAbsent(category, k -> new Docs()).add(doc);
+                for (int band = 0; band < BANDS; band++) {
+                    buckets.computeIfAbsent(bucketKey(category, band, signature), k -> new Docs()).add(doc);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return mealCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // up to limit meals of the category, most similar to any planned meal first, then those adding
+    // the fewest ingredients to the shopping list. planned meals are not suggested again. when
+    // fewer similar meals exist, the rest of the category follows in the order it was added
+    public List<Suggestion> recommend(String category, Collection<Main.Meal> planned, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        String key = category.toLowerCase(Locale.ROOT);
+        Set<String> plannedNames = new HashSet<>();
+        Set<Integer> plannedIngredients = new HashSet<>();
+        int[][] plannedSignatures = new int[planned.size()][];
+        // ingredients no catalog meal uses get ids below zero for this call only
+        Map<String, Integer> unknownIds = new HashMap<>();
+        int p = 0;
+        for (Main.Meal meal : planned) {
+            plannedNames.add(meal.getName());
+            int[] ids = lookupIds(meal, unknownIds);
+            for (int id : ids) {
+                plannedIngredients.add(id);
+            }
+            plannedSignatures[p] = new int[SIGNATURE_SIZE];
+            signature(ids, plannedSignatures[p++]);
+        }
+
+        lock.readLock().lock();
+        try {
+            Docs categoryDocs = docsByCategory.get(key);
+            if (categoryDocs == null) {
+                return new ArrayList<>();
+            }
+
+            // bucket neighbours of the planned meals, each scored once
+            BitSet seen = new BitSet(mealCount);
+            PriorityQueue<Suggestion> best = new PriorityQueue<>(limit + 1, Suggestion.RANKING.reversed());
+            for (int[] plannedSignature : plannedSignatures) {
+                for (int band = 0; band < BANDS; band++) {
+                    Docs bucket = buckets.get(bucketKey(key, band, plannedSignature));
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < bucket.size; i++) {
+                        int doc = bucket.docs[i];
+                        if (seen.get(doc)) {
+                            continue;
+                        }
+                        seen.set(doc);
+                        // bucket keys of two categories can collide
+                        if (plannedNames.contains(meals[doc].getName()) || !meals[doc].getCategory().equalsIgnoreCase(key)) {
+                            continue;
+                        }
+                        best.add(suggestion(doc, plannedSignatures, plannedIngredients));
+                        if (best.size() > limit) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+
+            List<Suggestion> suggestions = new ArrayList<>(best);
+            suggestions.sort(Suggestion.RANKING);
+            for (int i = 0; i < categoryDocs.size && suggestions.size() < limit; i++) {
+                int doc = categoryDocs.docs[i];
+                if (!seen.get(doc) && !plannedNames.contains(meals[doc].getName())) {
+                    seen.set(doc);
+                    suggestions.add(suggestion(doc, plannedSignatures, plannedIngredients));
+                }
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Suggestion suggestion(int doc, int[][] plannedSignatures, Set<Integer> plannedIngredients) {
+        int bestMatches = 0;
+        for (int[] plannedSignature : plannedSignatures) {
+            bestMatches = Math.max(bestMatches, matches(signatures, doc * SIGNATURE_SIZE, plannedSignature));
+        }
+
+        Main.Meal meal = meals[doc];
+        int[] ingredientIds = meal.getIngredientIds();
+        int newIngredients = 0;
+        for (int i = 0; i < ingredientIds.length; i++) {
+            if (!plannedIngredients.contains(ingredientIds[i]) && !seenBefore(ingredientIds, i)) {
+                newIngredients++;
+            }
+        }
+        return new Suggestion(meal, doc, (double) bestMatches / SIGNATURE_SIZE, newIngredients);
+    }
+
+    // a meal listing an ingredient twice needs it once
+    private static boolean seenBefore(int[] ids, int index) {
+        for (int i = 0; i < index; i++) {
+            if (ids[i] == ids[index]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the planned meals are only looked up, so asking does not grow the shared dictionary
+    private static int[] lookupIds(Main.Meal meal, Map<String, Integer> unknownIds) {
+        if (meal.getDictionary() == IngredientDictionary.shared()) {
+            return meal.getIngredientIds();
+        }
+        List<String> names = meal.getIngredients();
+        int[] ids = IngredientDictionary.shared().idsOf(names);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] < 0) {
+                Integer unknown = unknownIds.get(names.get(i));
+                if (unknown == null) {
+                    unknown = -1 - unknownIds.size();
+                    unknownIds.put(names.get(i), unknown);
+                }
+                ids[i] = unknown;
+            }
+        }
+        return ids;
+    }
+
+    // ingredients are hashed by their id in the shared dictionary, so equal names hash equally
+    // whichever dictionary a meal came with
+    private static int[] sharedIds(Main.Meal meal) {
+        if (meal.getDictionary() == IngredientDictionary.shared()) {
+            return meal.getIngredientIds();
+        }
+        return IngredientDictionary.shared().internAll(meal.getIngredients());
+    }
+
+    static void signature(int[] ingredientIds, int[] signature) {
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int id : ingredientIds) {
+            for (int h = 0; h < SIGNATURE_SIZE; h++) {
+                int value = (int) ((MULTIPLIERS[h] * id + OFFSETS[h]) >>> 33);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+    }
+
+    // equal positions of the signature at offset and the other one; divided by SIGNATURE_SIZE
+    // this estimates the Jaccard similarity of the two ingredient sets
+    static int matches(int[] signatures, int offset, int[] other) {
+        int matches = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (signatures[offset + i] == other[i]) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static long bucketKey(String category, int band, int[] signature) {
+        long key = category.hashCode() * 31L + band;
+        for (int row = 0; row < ROWS; row++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[band * ROWS + row];
+        }
+        return key;
+    }
+
+    public static class Suggestion {
+        // most similar first, then fewest new ingredients, then the order the meals were added
+        static final Comparator<Suggestion> RANKING = Comparator
+                .comparingDouble((Suggestion s) -> -s.similarity)
+                .thenComparingInt(s -> s.newIngredients)
+                .thenComparingInt(s -> s.doc);
+
+        private final Main.Meal meal;
+        private final int doc;
+        private final double similarity;
+        private final int newIngredients;
+
+        Suggestion(Main.Meal meal, int doc, double similarity, int newIngredients) {
+            this.meal = meal;
+            this.doc = doc;
+            this.similarity = similarity;
+            this.newIngredients = newIngredients;
+        }
+
+        public Main.Meal getMeal() {
+            return meal;
+        }
+
+        // estimated Jaccard similarity to the closest planned meal, 0 to 1
+        public double getSimilarity() {
+            return similarity;
+        }
+
+        // ingredients of the meal not yet needed by the planned meals
+        public int getNewIngredients() {
+            return newIngredients;
+        }
+    }
+
+    private static class Docs {
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.example;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+
+// storage of the catalog, the weekly plans and the shopping lists derived from them.
+// DatabaseManager keeps it in PostgreSQL or any JDBC database with a compatible dialect (the
+// embedded H2 of the tests and benchmarks), InMemoryMealRepository keeps it in process. every
+// backend reports failures as SQLException, so callers handle them the same way
+public interface MealRepository {
+    int DEFAULT_IMPORT_CHUNK_SIZE = 1000;
+
+    // the single household and week used by callers that do not pass their own
+    int DEFAULT_USER_ID = 0;
+    int DEFAULT_WEEK = 0;
+
+    String[] DAYS_OF_WEEK = {
+            "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"
+    };
+
+    // the categories a meal can have and a plan fills each day, in plan order
+    String[] MEAL_CATEGORIES = {"breakfast", "lunch", "dinner"};
+
+    // called after every committed chunk of addMeals
+    interface ImportProgress {
+        void chunkCommitted(int mealsImported, long rowsImported, double rowsPerSecond);
+    }
+
+    // told about every chunk of meals addMeals has written once it is committed; when the caller
+    // holds the transaction the chunks wait for its commit and are dropped by its rollback
+    interface MealListener {
+        void mealsAdded(List<Main.Meal> meals, int[] mealIds);
+    }
+
+    // receives shopping list rows one at a time while the result set is read
+    interface ShoppingListRowHandler {
+        void row(String ingredient, int count) throws IOException;
+    }
+
+    // receives meals one at a time while the result set is read
+    interface MealHandler {
+        void meal(Main.Meal meal) throws IOException;
+    }
+
+    enum MealOrder {
+        // the order the meals were added in, as getMealsByCategory
+        ADDED,
+        // by name, ties in the order they were added, as getMealsByCategoryAlphabetical
+        ALPHABETICAL
+    }
+
+    enum ShoppingListOrder {
+        ALPHABETICAL,
+        // most needed first, equal counts grouped together
+        BY_COUNT
+    }
+
+    // creates or upgrades whatever the backend needs before first use
+    void initializeDatabase() throws SQLException;
+
+    default int addMeal(String category, String name, List<String> ingredients) throws SQLException {
+        return addMeals(Collections.singletonList(new Main.Meal(category, name, ingredients)))[0];
+    }
+
+    default int[] addMeals(Collection<Main.Meal> meals) throws SQLException {
+        return addMeals(meals, DEFAULT_IMPORT_CHUNK_SIZE, null);
+    }
+
+    // returns the new meal ids in the order of the meals
+    int[] addMeals(Collection<Main.Meal> meals, int chunkSize, ImportProgress progress) throws SQLException;
+
+    // meals whose lower-cased category equals the given one, in the order they were added
+    List<Main.Meal> getMealsByCategory(String category) throws SQLException;
+
+    // same meals by name, ties in the order they were added
+    List<Main.Meal> getMealsByCategoryAlphabetical(String category) throws SQLException;
+
+    // the next at most limit meals of the category after the given page, null for the first one
+    MealPage getMealsByCategoryPage(String category, MealOrder order, MealPage after, int limit) throws SQLException;
+
+    // the same meals as getMealsByCategory or getMealsByCategoryAlphabetical, handed to the handler
+    // one at a time while they are read instead of collected into a list
+    void forEachMealInCategory(String category, MealOrder order, MealHandler handler) throws SQLException, IOException;
+
+    // nothing deletes meals, so a different count means meals were added, by any process
+    int countMeals() throws SQLException;
+
+    // -1 for an unknown name
+    int getMealId(String mealName) throws SQLException;
+
+    List<String> getIngredientsForMeal(int mealId) throws SQLException;
+
+    default void deleteOldPlan() throws SQLException {
+        deleteOldPlan(DEFAULT_USER_ID, DEFAULT_WEEK);
+    }
+
+    void deleteOldPlan(int userId, int week) throws SQLException;
+
+    default void savePlanToDatabase(Map<String, String> breakfastPlan, Map<String, String> lunchPlan, Map<String, String> dinnerPlan) throws SQLException {
+        savePlanToDatabase(DEFAULT_USER_ID, DEFAULT_WEEK, breakfastPlan, lunchPlan, dinnerPlan);
+    }
+
+    // day -> meal per category; days missing from a map keep their current meal
+    void savePlanToDatabase(int userId, int week, Map<String, String> breakfastPlan, Map<String, String> lunchPlan, Map<String, String> dinnerPlan) throws SQLException;
+
+    default Map<String, Map<String, String>> getPlannedMeals() throws SQLException {
+        return getPlannedMeals(DEFAULT_USER_ID, DEFAULT_WEEK);
+    }
+
+    // day -> category -> meal name, days in no particular order
+    Map<String, Map<String, String>> getPlannedMeals(int userId, int week) throws SQLException;
+
+    default boolean hasPlan() throws SQLException {
+        return hasPlan(DEFAULT_USER_ID, DEFAULT_WEEK);
+    }
+
+    boolean hasPlan(int userId, int week) throws SQLException;
+
+    // ingredient -> number of planned meals using it
+    default Map<String, Integer> getShoppingList() throws SQLException {
+        return getShoppingList(DEFAULT_USER_ID, DEFAULT_WEEK);
+    }
+
+    // in alphabetical order
+    Map<String, Integer> getShoppingList(int userId, int week) throws SQLException;
+
+    default void forEachShoppingListRow(ShoppingListOrder order, ShoppingListRowHandler handler) throws SQLException, IOException {
+        forEachShoppingListRow(DEFAULT_USER_ID, DEFAULT_WEEK, order, handler);
+    }
+
+    // same rows as getShoppingList, handed to the handler row by row
+    void forEachShoppingListRow(int userId, int week, ShoppingListOrder order, ShoppingListRowHandler handler) throws SQLException, IOException;
+
+    // the plan change log after the given sequence number, oldest first and at most limit
+    // entries; 0 starts from the beginning. every write to a plan slot, deletes included, is
+    // logged in the transaction that makes it
+    List<PlanChange> getPlanChangesSince(long sequence, int limit) throws SQLException;
+
+    void addMealListener(MealListener listener);
+
+    void removeMealListener(MealListener listener);
+
+    // hands every meal of the plan categories to the listener, then keeps it current with the
+    // meals added later; a meal committed while the load runs reaches the listener once.
+    // returns the listener actually registered, for removeMealListener
+    default MealListener loadCatalog(MealListener listener) throws SQLException {
+        CatalogLoad load = new CatalogLoad(listener);
+        addMealListener(load);
+        try {
+            load.run(this);
+        } catch (SQLException | RuntimeException e) {
+            removeMealListener(load);
+            throw e;
+        }
+        return load;
+    }
+}
@@ -0,0 +1,343 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// in-process search over the catalog: an inverted index from ingredient to the meals using it,
+// and a radix trie over meal names for prefix lookups. both match case-insensitively.
+// meals get dense document numbers in the order they reach the index, so every posting list is
+// sorted by construction and AND queries are merges of sorted int arrays. that is index order:
+// build loads category by category (MEAL_CATEGORIES order, each in the order its meals were
+// added), then the meals added later follow as they are committed. it is not meal id order
+public class MealSearchIndex implements MealRepository.MealListener {
+    private static final int[] NO_DOCS = new int[0];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Main.Meal[] meals = new Main.Meal[1024];
+    private int mealCount;
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final TrieNode names = new TrieNode("");
+    // the repository build subscribed the index to, and the listener it registered
+    private MealRepository source;
+    private MealRepository.MealListener registration;
+
+    // loads every category and keeps the index current through the manager's addMeals
+    public static MealSearchIndex build(MealRepository db) throws SQLException {
+        MealSearchIndex index = new MealSearchIndex();
+        index.registration = db.loadCatalog(index);
+        index.source = db;
+        return index;
+    }
+
+    // stops the updates build subscribed to, e.g. once a rebuilt index replaces this one
+    public void detach() {
+        if (source != null) {
+            source.removeMealListener(registration);
+            source = null;
+        }
+    }
+
+    @Override
+    public void mealsAdded(List<Main.Meal> meals, int[] mealIds) {
+        addAll(meals);
+    }
+
+    public void add(Main.Meal meal) {
+        addAll(Collections.singletonList(meal));
+    }
+
+    public void addAll(Collection<Main.Meal> newMeals) {
+        lock.writeLock().lock();
+        try {
+            for (Main.Meal meal : newMeals) {
+                int doc = mealCount;
+                if (doc == meals.length) {
+                    meals = Arrays.copyOf(meals, doc * 2);
+                }
+                meals[doc] = meal;
+                mealCount++;
+
+                // a meal listing an ingredient twice is posted once
+                for (String ingredient : meal.getIngredients()) {
+                    postings.computeIfAbsent(normalize(ingredient), k -> new Postings()).addOnce(doc);
+                }
+                names.insert(normalize(meal.getName()), 0, doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return mealCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // meals containing every one of the ingredients, in index order
+    public List<Main.Meal> findByAllIngredients(Collection<String> ingredients) {
+        lock.readLock().lock();
+        try {
+            if (ingredients.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Postings> lists = new ArrayList<>(ingredients.size());
+            for (String ingredient : ingredients) {
+                Postings list = postings.get(normalize(ingredient));
+                if (list == null) {
+                    return Collections.emptyList();
+                }
+                lists.add(list);
+            }
+            // start from the rarest ingredient, so the candidate set only shrinks from there
+            lists.sort(Comparator.comparingInt(list -> list.size));
+
+            int[] result = Arrays.copyOf(lists.get(0).docs, lists.get(0).size);
+            int resultSize = result.length;
+            for (int l = 1; l < lists.size() && resultSize > 0; l++) {
+                resultSize = intersect(result, resultSize, lists.get(l));
+            }
+            return toMeals(result, resultSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // meals containing at least one of the ingredients, in index order
+    public List<Main.Meal> findByAnyIngredient(Collection<String> ingredients) {
+        lock.readLock().lock();
+        try {
+            BitSet docs = new BitSet(mealCount);
+            for (String ingredient : ingredients) {
+                Postings list = postings.get(normalize(ingredient));
+                if (list != null) {
+                    for (int i = 0; i < list.size; i++) {
+                        docs.set(list.docs[i]);
+                    }
+                }
+            }
+
+            List<Main.Meal> result = new ArrayList<>(docs.cardinality());
+            for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+                result.add(meals[doc]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // up to limit meals whose name starts with the prefix, alphabetically
+    public List<Main.Meal> findByNamePrefix(String prefix, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        lock.readLock().lock();
+        try {
+            TrieNode node = names.find(normalize(prefix));
+            List<Main.Meal> result = new ArrayList<>();
+            if (node != null) {
+                node.collect(meals, result, limit);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // keeps the docs of result[0..size) that are also in the list; returns the new size
+    private static int intersect(int[] result, int size, Postings list) {
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < size && from < list.size; i++) {
+            int position = gallop(list.docs, from, list.size, result[i]);
+            if (position < list.size && list.docs[position] == result[i]) {
+                result[kept++] = result[i];
+                from = position + 1;
+            } else {
+                from = position;
+            }
+        }
+        return kept;
+    }
+
+    // first position in docs[from..to) holding a value >= target: doubling steps, then binary search
+    private static int gallop(int[] docs, int from, int to, int target) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < to && docs[high] < target) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (docs[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private List<Main.Meal> toMeals(int[] docs, int size) {
+        List<Main.Meal> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(meals[docs[i]]);
+        }
+        return result;
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        // docs only ever grow, so a repeat can only be the last one
+        void addOnce(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    // radix trie: every edge carries a whole label, so the node count stays proportional to
+    // the number of names rather than to their total length
+    private static class TrieNode {
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+        private String label;
+        // sorted by the first character of their label
+        private TrieNode[] children = NO_CHILDREN;
+        private int childCount;
+        private int[] docs = NO_DOCS;
+        private int docCount;
+
+        TrieNode(String label) {
+            this.label = label;
+        }
+
+        void insert(String key, int offset, int doc) {
+            TrieNode node = this;
+            while (offset < key.length()) {
+                int slot = node.childSlot(key.charAt(offset));
+                if (slot < 0) {
+                    node.addChild(-slot - 1, new TrieNode(key.substring(offset))).addDoc(doc);
+                    return;
+                }
+
+                TrieNode child = node.children[slot];
+                int common = commonPrefix(child.label, key, offset);
+                if (common < child.label.length()) {
+                    // split the edge: the shared part becomes a node of its own
+                    TrieNode middle = new TrieNode(child.label.substring(0, common));
+                    child.label = child.label.substring(common);
+                    middle.addChild(0, child);
+                    node.children[slot] = middle;
+                    child = middle;
+                }
+                node = child;
+                offset += common;
+            }
+            node.addDoc(doc);
+        }
+
+        // the node under which every name with this prefix is stored, or null
+        TrieNode find(String prefix) {
+            TrieNode node = this;
+            int offset = 0;
+            while (offset < prefix.length()) {
+                int slot = node.childSlot(prefix.charAt(offset));
+                if (slot < 0) {
+                    return null;
+                }
+                TrieNode child = node.children[slot];
+                int common = commonPrefix(child.label, prefix, offset);
+                if (offset + common == prefix.length()) {
+                    return child;
+                }
+                if (common < child.label.length()) {
+                    return null;
+                }
+                node = child;
+                offset += common;
+            }
+            return node;
+        }
+
+        // depth first in child order, which is alphabetical
+        boolean collect(Main.Meal[] meals, List<Main.Meal> result, int limit) {
+            for (int i = 0; i < docCount; i++) {
+                if (result.size() == limit) {
+                    return false;
+                }
+                result.add(meals[docs[i]]);
+            }
+            for (int i = 0; i < childCount; i++) {
+                if (!children[i].collect(meals, result, limit)) {
+                    return false;
+                }
+            }
+            return result.size() < limit;
+        }
+
+        private void addDoc(int doc) {
+            if (docCount == docs.length) {
+                docs = Arrays.copyOf(docs, Math.max(1, docCount * 2));
+            }
+            docs[docCount++] = doc;
+        }
+
+        private TrieNode addChild(int slot, TrieNode child) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            System.arraycopy(children, slot, children, slot + 1, childCount - slot);
+            children[slot] = child;
+            childCount++;
+            return child;
+        }
+
+        // slot of the child starting with c, or -(insertion point) - 1
+        private int childSlot(char c) {
+            int low = 0;
+            int high = childCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char first = children[mid].label.charAt(0);
+                if (first < c) {
+                    low = mid + 1;
+                } else if (first > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -low - 1;
+        }
+
+        private static int commonPrefix(String label, String key, int offset) {
+            int max = Math.min(label.length(), key.length() - offset);
+            int i = 0;
+            while (i < max && label.charAt(i) == key.charAt(offset + i)) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
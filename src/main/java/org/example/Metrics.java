@@ -0,0 +1,192 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// process-wide registry of counters and latency histograms. a metric is a family name plus at
+// most one label, e.g. db_call_seconds{method="getPlannedMeals"}. lookups with constant strings
+// hit two ConcurrentHashMaps and allocate nothing, so hot paths can resolve their metric on
+// every call. histograms hold nanoseconds and are exported in seconds
+public class Metrics {
+    public static final String PROMETHEUS_PREFIX = "mealplanner_";
+    public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    // families shared by the database layer, the command loops and the API
+    public static final String DB_CALL_SECONDS = "db_call_seconds";
+    public static final String DB_ROUND_TRIPS = "db_round_trips_total";
+    public static final String DB_ROWS_READ = "db_rows_read_total";
+    public static final String CACHE_LOOKUPS = "catalog_cache_lookups_total";
+    public static final String COMMAND_SECONDS = "command_seconds";
+    public static final String COMMAND_ERRORS = "command_errors_total";
+    public static final String HTTP_REQUEST_SECONDS = "http_request_seconds";
+    public static final String HTTP_ERRORS = "http_errors_total";
+    public static final String WRITE_BEHIND_MEALS = "write_behind_meals_total";
+
+    private static final Metrics SHARED = new Metrics();
+    private static final String NO_LABEL = "";
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    private enum Type {
+        COUNTER, SUMMARY
+    }
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public LongAdder counter(String name) {
+        return counter(name, NO_LABEL, NO_LABEL);
+    }
+
+    public LongAdder counter(String name, String label, String value) {
+        return (LongAdder) family(name, Type.COUNTER, label).child(value);
+    }
+
+    public LatencyHistogram histogram(String name, String label, String value) {
+        return (LatencyHistogram) family(name, Type.SUMMARY, label).child(value);
+    }
+
+    public void recordSince(String name, String label, String value, long startNanos) {
+        histogram(name, label, value).recordSince(startNanos);
+    }
+
+    private Family family(String name, Type type, String label) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, k -> new Family(name, type, label));
+        }
+        if (family.type != type || !family.label.equals(label)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a "
+                    + family.type.name().toLowerCase(Locale.ROOT) + " labelled '" + family.label + "'");
+        }
+        return family;
+    }
+
+    // human readable dump, latencies in milliseconds
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Family family : sortedFamilies()) {
+            report.append(family.name).append('\n');
+            for (Map.Entry<String, Object> child : family.sortedChildren().entrySet()) {
+                String name = family.label.isEmpty() ? "(all)" : family.label + "=" + child.getKey();
+                report.append("  ").append(name);
+                if (family.type == Type.COUNTER) {
+                    report.append("  ").append(((LongAdder) child.getValue()).sum()).append('\n');
+                } else {
+                    LatencyHistogram histogram = (LatencyHistogram) child.getValue();
+                    report.append(String.format("  count=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f ms%n",
+                            histogram.getCount(), histogram.getMean() / 1e6,
+                            histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                            histogram.getValueAtPercentile(99) / 1e6, histogram.getMax() / 1e6));
+                }
+            }
+        }
+        return report.toString();
+    }
+
+    // Prometheus text exposition format; histograms become summaries
+    public void writePrometheus(Appendable out) throws IOException {
+        for (Family family : sortedFamilies()) {
+            String name = PROMETHEUS_PREFIX + family.name;
+            out.append("# TYPE ").append(name).append(' ')
+                    .append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+
+            for (Map.Entry<String, Object> child : family.sortedChildren().entrySet()) {
+                String labels = family.label.isEmpty() ? "" : family.label + "=\"" + escape(child.getKey()) + "\"";
+                if (family.type == Type.COUNTER) {
+                    sample(out, name, labels, Long.toString(((LongAdder) child.getValue()).sum()));
+                    continue;
+                }
+
+                LatencyHistogram histogram = (LatencyHistogram) child.getValue();
+                for (double quantile : QUANTILES) {
+                    String quantileLabel = "quantile=\"" + quantile + "\"";
+                    sample(out, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                            seconds(histogram.getValueAtPercentile(quantile * 100)));
+                }
+                sample(out, name + "_sum", labels, seconds(histogram.getSum()));
+                sample(out, name + "_count", labels, Long.toString(histogram.getCount()));
+            }
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        try {
+            writePrometheus(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    // written next to the target and moved over it, so a scraper never reads half a file
+    public void writePrometheus(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writePrometheus(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void clear() {
+        families.clear();
+    }
+
+    private List<Family> sortedFamilies() {
+        List<Family> sorted = new ArrayList<>(families.values());
+        sorted.sort(Comparator.comparing(family -> family.name));
+        return sorted;
+    }
+
+    private static void sample(Appendable out, String name, String labels, String value) throws IOException {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class Family {
+        private final String name;
+        private final Type type;
+        private final String label;
+        private final ConcurrentMap<String, Object> children = new ConcurrentHashMap<>();
+
+        Family(String name, Type type, String label) {
+            this.name = name;
+            this.type = type;
+            this.label = label;
+        }
+
+        Object child(String value) {
+            Object child = children.get(value);
+            if (child == null) {
+                child = children.computeIfAbsent(value, k -> type == Type.COUNTER ? new LongAdder() : new LatencyHistogram());
+            }
+            return child;
+        }
+
+        Map<String, Object> sortedChildren() {
+            return new TreeMap<>(children);
+        }
+    }
+}
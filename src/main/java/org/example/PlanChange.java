@@ -0,0 +1,78 @@
+package org.example;
+
+// one entry of the plan change log: a single slot of a user's week got a meal, lost it or got a
+// different one. sequence numbers grow with every change, so a consumer that remembers the last
+// one it applied can ask for everything after it and update its aggregates slot by slot
+public class PlanChange {
+    // meal id of an empty slot
+    public static final int NO_MEAL = 0;
+
+    private final long sequence;
+    private final int userId;
+    private final int week;
+    private final String day;
+    private final String category;
+    private final int oldMealId;
+    private final String oldMeal;
+    private final int newMealId;
+    private final String newMeal;
+
+    public PlanChange(long sequence, int userId, int week, String day, String category,
+                      int oldMealId, String oldMeal, int newMealId, String newMeal) {
+        this.sequence = sequence;
+        this.userId = userId;
+        this.week = week;
+        this.day = day;
+        this.category = category;
+        this.oldMealId = oldMealId;
+        this.oldMeal = oldMeal;
+        this.newMealId = newMealId;
+        this.newMeal = newMeal;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getWeek() {
+        return week;
+    }
+
+    public String getDay() {
+        return day;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    // NO_MEAL when the slot was empty, -1 when it held a meal missing from the catalog
+    public int getOldMealId() {
+        return oldMealId;
+    }
+
+    // null when the slot was empty
+    public String getOldMeal() {
+        return oldMeal;
+    }
+
+    // NO_MEAL when the slot was cleared, -1 for a meal missing from the catalog
+    public int getNewMealId() {
+        return newMealId;
+    }
+
+    // null when the slot was cleared
+    public String getNewMeal() {
+        return newMeal;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " user " + userId + " week " + week + " " + day + " " + category
+                + ": " + oldMeal + " -> " + newMeal;
+    }
+}
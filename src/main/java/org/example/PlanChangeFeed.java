@@ -0,0 +1,53 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.List;
+
+// tails the plan change log of a repository: every poll hands the changes made since the last
+// one to a handler, oldest first, and remembers how far it got. the log starts with the slots
+// planned before it existed, so replaying it from 0 rebuilds every plan; a consumer keeping an
+// aggregate of the plans, e.g. ingredient counts, then only touches the slots that changed
+public class PlanChangeFeed {
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private final MealRepository db;
+    private final int pageSize;
+    private long position;
+
+    public interface Handler {
+        void changed(PlanChange change) throws SQLException;
+    }
+
+    public PlanChangeFeed(MealRepository db, long position) {
+        this(db, position, DEFAULT_PAGE_SIZE);
+    }
+
+    public PlanChangeFeed(MealRepository db, long position, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.db = db;
+        this.position = position;
+        this.pageSize = pageSize;
+    }
+
+    // reads page by page until the log is exhausted; returns the number of changes handled.
+    // when the handler throws, the position stays before the failed change
+    public int poll(Handler handler) throws SQLException {
+        int handled = 0;
+        List<PlanChange> page;
+        do {
+            page = db.getPlanChangesSince(position, pageSize);
+            for (PlanChange change : page) {
+                handler.changed(change);
+                position = change.getSequence();
+                handled++;
+            }
+        } while (page.size() == pageSize);
+        return handled;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+}
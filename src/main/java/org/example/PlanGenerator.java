@@ -0,0 +1,287 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.example.MealRepository.DAYS_OF_WEEK;
+import static org.example.MealRepository.MEAL_CATEGORIES;
+
+// fills multi-week plans automatically instead of asking for every slot.
+// constraints, per category:
+//  - a meal is not repeated within noRepeatDays consecutive days (relaxed only when the category is too small)
+//  - among the allowed meals, the one whose share of ingredients already on this week's shopping list
+//    is closest to overlapTarget wins (1.0 = reuse ingredients as much as possible, 0.0 = maximum variety)
+//  - every slot of every category is filled
+public class PlanGenerator {
+    // meals drawn at random and scored per slot; keeps one slot O(1) in the catalog size
+    static final int CANDIDATE_SAMPLE = 64;
+
+    private final int weeks;
+    private final int noRepeatDays;
+    private final double overlapTarget;
+    private final CategoryMeals[] categories = new CategoryMeals[MEAL_CATEGORIES.length];
+    private final int ingredientCount;
+
+    public PlanGenerator(Map<String, List<Main.Meal>> mealsByCategory, int weeks, int noRepeatDays, double overlapTarget) {
+        if (weeks <= 0) {
+            throw new IllegalArgumentException("Weeks must be positive: " + weeks);
+        }
+        if (overlapTarget < 0 || overlapTarget > 1) {
+            throw new IllegalArgumentException("Overlap target must be between 0 and 1: " + overlapTarget);
+        }
+        this.weeks = weeks;
+        this.noRepeatDays = Math.max(noRepeatDays, 1);
+        this.overlapTarget = overlapTarget;
+
+        // the meals' dictionary ids index the shopping list directly, so they must share one dictionary
+        IngredientDictionary dictionary = null;
+        int maxIngredientId = -1;
+        for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+            List<Main.Meal> meals = mealsByCategory.get(MEAL_CATEGORIES[c]);
+            if (meals == null || meals.isEmpty()) {
+                throw new IllegalArgumentException("No meals to cover the " + MEAL_CATEGORIES[c] + " category");
+            }
+            for (Main.Meal meal : meals) {
+                if (dictionary == null) {
+                    dictionary = meal.getDictionary();
+                } else if (meal.getDictionary() != dictionary) {
+                    throw new IllegalArgumentException("Meals come from different ingredient dictionaries");
+                }
+            }
+            categories[c] = new CategoryMeals(meals);
+            maxIngredientId = Math.max(maxIngredientId, categories[c].maxIngredientId);
+        }
+        this.ingredientCount = maxIngredientId + 1;
+    }
+
+    public static PlanGenerator fromDatabase(MealRepository db, int weeks, int noRepeatDays, double overlapTarget) throws SQLException {
+        Map<String, List<Main.Meal>> mealsByCategory = new HashMap<>();
+        for (String category : MEAL_CATEGORIES) {
+            mealsByCategory.put(category, db.getMealsByCategoryAlphabetical(category));
+        }
+        return new PlanGenerator(mealsByCategory, weeks, noRepeatDays, overlapTarget);
+    }
+
+    // the same seed always produces the same plan
+    public GeneratedPlan generate(long seed) {
+        Random random = new Random(seed);
+        String[][][] slots = new String[weeks][DAYS_OF_WEEK.length][MEAL_CATEGORIES.length];
+        int[][] lastUsed = new int[MEAL_CATEGORIES.length][];
+        for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+            lastUsed[c] = new int[categories[c].names.length];
+            Arrays.fill(lastUsed[c], Integer.MIN_VALUE / 2);
+        }
+        boolean[] onShoppingList = new boolean[ingredientCount];
+        int[] sample = new int[CANDIDATE_SAMPLE];
+
+        for (int week = 0; week < weeks; week++) {
+            Arrays.fill(onShoppingList, false);
+
+            for (int day = 0; day < DAYS_OF_WEEK.length; day++) {
+                int absoluteDay = week * DAYS_OF_WEEK.length + day;
+
+                for (int c = 0; c < MEAL_CATEGORIES.length; c++) {
+                    CategoryMeals meals = categories[c];
+                    int chosen = choose(meals, lastUsed[c], absoluteDay, onShoppingList, sample, random);
+
+                    lastUsed[c][chosen] = absoluteDay;
+                    for (int ingredient : meals.ingredients[chosen]) {
+                        onShoppingList[ingredient] = true;
+                    }
+                    slots[week][day][c] = meals.names[chosen];
+                }
+            }
+        }
+
+        return new GeneratedPlan(slots);
+    }
+
+    // plans for many users at once, spread over the pool; user ids double as seeds
+    public BatchResult generateAll(Collection<Integer> userIds, ForkJoinPool pool) {
+        long startTime = System.nanoTime();
+        Map<Integer, GeneratedPlan> plans;
+        try {
+            plans = pool.submit(() -> userIds.parallelStream()
+                    .collect(Collectors.toConcurrentMap(userId -> userId, userId -> generate(userId))))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating plans", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Plan generation failed", e.getCause());
+        }
+        return new BatchResult(plans, System.nanoTime() - startTime);
+    }
+
+    private int choose(CategoryMeals meals, int[] lastUsed, int day, boolean[] onShoppingList, int[] sample, Random random) {
+        int count = meals.names.length;
+        int sampled = 0;
+        if (count > sample.length) {
+            sampled = drawSample(count, sample, random);
+            // drop the meals inside the no-repeat window; the rest stay a uniform sample
+            int kept = 0;
+            for (int i = 0; i < sampled; i++) {
+                if (day - lastUsed[sample[i]] >= noRepeatDays) {
+                    sample[kept++] = sample[i];
+                }
+            }
+            sampled = kept;
+        }
+
+        if (sampled == 0) {
+            // a category no larger than the sample, or every drawn meal was eaten too recently
+            int start = random.nextInt(count);
+            int leastRecent = start;
+            for (int i = 0; i < count && sampled < sample.length; i++) {
+                int meal = (start + i) % count;
+                if (day - lastUsed[meal] >= noRepeatDays) {
+                    sample[sampled++] = meal;
+                } else if (lastUsed[meal] < lastUsed[leastRecent]) {
+                    leastRecent = meal;
+                }
+            }
+            if (sampled == 0) {
+                // fewer meals than the no-repeat window: repeat the one eaten longest ago
+                return leastRecent;
+            }
+        }
+
+        // ties are broken at random, so no position in the sample is favoured
+        int best = sample[0];
+        double bestDistance = Double.MAX_VALUE;
+        int ties = 0;
+        for (int i = 0; i < sampled; i++) {
+            int meal = sample[i];
+            double distance = Math.abs(overlap(meals.ingredients[meal], onShoppingList) - overlapTarget);
+            if (distance < bestDistance) {
+                best = meal;
+                bestDistance = distance;
+                ties = 1;
+            } else if (distance == bestDistance && random.nextInt(++ties) == 0) {
+                best = meal;
+            }
+        }
+        return best;
+    }
+
+    // fills sample with sample.length distinct indices below count, every subset equally likely
+    // (Floyd's algorithm: one random number per index, however large count is)
+    static int drawSample(int count, int[] sample, Random random) {
+        int sampled = 0;
+        for (int j = count - sample.length; j < count; j++) {
+            int index = random.nextInt(j + 1);
+            for (int i = 0; i < sampled; i++) {
+                if (sample[i] == index) {
+                    index = j;
+                    break;
+                }
+            }
+            sample[sampled++] = index;
+        }
+        return sampled;
+    }
+
+    private static double overlap(int[] ingredients, boolean[] onShoppingList) {
+        if (ingredients.length == 0) {
+            return 0;
+        }
+        int shared = 0;
+        for (int ingredient : ingredients) {
+            if (onShoppingList[ingredient]) {
+                shared++;
+            }
+        }
+        return (double) shared / ingredients.length;
+    }
+
+    private static class CategoryMeals {
+        private final String[] names;
+        private final int[][] ingredients;
+        private int maxIngredientId = -1;
+
+        CategoryMeals(List<Main.Meal> meals) {
+            names = new String[meals.size()];
+            ingredients = new int[meals.size()][];
+            for (int i = 0; i < meals.size(); i++) {
+                Main.Meal meal = meals.get(i);
+                names[i] = meal.getName();
+                ingredients[i] = Arrays.stream(meal.getIngredientIds()).distinct().toArray();
+                for (int ingredient : ingredients[i]) {
+                    maxIngredientId = Math.max(maxIngredientId, ingredient);
+                }
+            }
+        }
+    }
+
+    public static class GeneratedPlan {
+        // [week][day][category]
+        private final String[][][] slots;
+
+        GeneratedPlan(String[][][] slots) {
+            this.slots = slots;
+        }
+
+        public int getWeeks() {
+            return slots.length;
+        }
+
+        // day -> meal name for one category of one week, in the shape savePlanToDatabase expects
+        public Map<String, String> getPlan(int week, String category) {
+            int c = Arrays.asList(MEAL_CATEGORIES).indexOf(category);
+            if (c < 0) {
+                throw new IllegalArgumentException("Unknown category: " + category);
+            }
+            Map<String, String> plan = new LinkedHashMap<>();
+            for (int day = 0; day < DAYS_OF_WEEK.length; day++) {
+                plan.put(DAYS_OF_WEEK[day], slots[week][day][c]);
+            }
+            return plan;
+        }
+
+        // every slot of every week, one entry per meal eaten
+        public List<String> getMeals() {
+            List<String> meals = new ArrayList<>(slots.length * DAYS_OF_WEEK.length * MEAL_CATEGORIES.length);
+            for (String[][] week : slots) {
+                for (String[] day : week) {
+                    meals.addAll(Arrays.asList(day));
+                }
+            }
+            return meals;
+        }
+
+        public void saveWeek(MealRepository db, int userId, int week) throws SQLException {
+            db.savePlanToDatabase(userId, week, getPlan(week, "breakfast"), getPlan(week, "lunch"), getPlan(week, "dinner"));
+        }
+    }
+
+    public static class BatchResult {
+        private final Map<Integer, GeneratedPlan> plans;
+        private final long elapsedNanos;
+
+        BatchResult(Map<Integer, GeneratedPlan> plans, long elapsedNanos) {
+            this.plans = plans;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Map<Integer, GeneratedPlan> getPlans() {
+            return plans;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getPlansPerSecond() {
+            return elapsedNanos == 0 ? plans.size() : plans.size() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d plans in %.1f ms (%.0f plans/s)",
+                    plans.size(), elapsedNanos / 1_000_000.0, getPlansPerSecond());
+        }
+    }
+}
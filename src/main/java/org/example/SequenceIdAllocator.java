@@ -0,0 +1,39 @@
+package org.example;
+
+import java.sql.SQLException;
+
+// hi/lo allocator: every value taken from a database sequence reserves blockSize ids,
+// so separate processes never collide and only one in blockSize calls hits the database
+public class SequenceIdAllocator implements IdAllocator {
+    private final Source nextHi;
+    private final int blockSize;
+    private long next;
+    private long limit;
+
+    public SequenceIdAllocator(Source nextHi, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.nextHi = nextHi;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public synchronized int nextId() throws SQLException {
+        if (next == limit) {
+            long hi = nextHi.fetch();
+            next = hi * blockSize;
+            limit = next + blockSize;
+        }
+
+        long id = next++;
+        if (id > Integer.MAX_VALUE) {
+            throw new SQLException("Id space exhausted at " + id);
+        }
+        return (int) id;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+}
@@ -0,0 +1,182 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// shopping lists for whole cohorts at once. users are split over a fork/join pool; every task
+// counts into its own IngredientCounters and the partial totals are merged when the tasks join,
+// so workers never share a lock or a counter
+public class ShoppingListAggregator {
+    private final IngredientDictionary dictionary;
+    // meal name -> ingredient ids; read-only once built, so safe to share between workers
+    private final Map<String, int[]> ingredientsByMeal = new HashMap<>();
+
+    public ShoppingListAggregator(Collection<Main.Meal> catalog) {
+        this(catalog, IngredientDictionary.shared());
+    }
+
+    // ids of meals from another dictionary are re-interned into this one
+    public ShoppingListAggregator(Collection<Main.Meal> catalog, IngredientDictionary dictionary) {
+        this.dictionary = dictionary;
+        for (Main.Meal meal : catalog) {
+            int[] ids = meal.getDictionary() == dictionary
+                    ? meal.getIngredientIds()
+                    : dictionary.internAll(meal.getIngredients());
+            ingredientsByMeal.putIfAbsent(meal.getName(), ids);
+        }
+    }
+
+    public static ShoppingListAggregator fromDatabase(MealRepository db) throws SQLException {
+        List<Main.Meal> catalog = new ArrayList<>();
+        for (String category : MealRepository.MEAL_CATEGORIES) {
+            catalog.addAll(db.getMealsByCategory(category));
+        }
+        return new ShoppingListAggregator(catalog);
+    }
+
+    public Result aggregatePlans(Map<Integer, PlanGenerator.GeneratedPlan> plans, ForkJoinPool pool) {
+        Map<Integer, List<String>> mealsByUser = new HashMap<>();
+        for (Map.Entry<Integer, PlanGenerator.GeneratedPlan> plan : plans.entrySet()) {
+            mealsByUser.put(plan.getKey(), plan.getValue().getMeals());
+        }
+        return aggregate(mealsByUser, pool);
+    }
+
+    // user id -> names of every meal the user eats in the period; a meal eaten twice counts twice
+    public Result aggregate(Map<Integer, ? extends Collection<String>> mealsByUser, ForkJoinPool pool) {
+        long startTime = System.nanoTime();
+        int[] userIds = new int[mealsByUser.size()];
+        List<Collection<String>> meals = new ArrayList<>(mealsByUser.size());
+        for (Map.Entry<Integer, ? extends Collection<String>> user : mealsByUser.entrySet()) {
+            userIds[meals.size()] = user.getKey();
+            meals.add(user.getValue());
+        }
+
+        // each user's slot is written by exactly one task
+        UserTotals[] perUser = new UserTotals[userIds.length];
+        Partial combined;
+        try {
+            combined = pool.submit(() -> IntStream.range(0, userIds.length).parallel()
+                    .collect(Partial::new, (partial, i) -> perUser[i] = partial.add(meals.get(i)), Partial::merge))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while aggregating shopping lists", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw new IllegalStateException("Shopping list aggregation failed", e.getCause());
+        }
+
+        Map<Integer, UserTotals> totalsByUser = new HashMap<>(userIds.length * 2);
+        for (int i = 0; i < userIds.length; i++) {
+            totalsByUser.put(userIds[i], perUser[i]);
+        }
+        return new Result(totalsByUser, combined.total, dictionary, System.nanoTime() - startTime);
+    }
+
+    // the per-task state of one fork/join leaf
+    private class Partial {
+        // reused for every user of this task, cleared in O(distinct); both grow only to the
+        // largest id this task sees
+        private final IngredientCounter user = new IngredientCounter();
+        private final IngredientCounter total = new IngredientCounter();
+
+        UserTotals add(Collection<String> meals) {
+            for (String meal : meals) {
+                int[] ingredients = ingredientsByMeal.get(meal);
+                if (ingredients == null) {
+                    throw new IllegalArgumentException("Meal not in the catalog: " + meal);
+                }
+                for (int ingredient : ingredients) {
+                    user.increment(ingredient);
+                }
+            }
+            UserTotals totals = new UserTotals(user);
+            total.addAll(user);
+            user.clear();
+            return totals;
+        }
+
+        void merge(Partial other) {
+            total.addAll(other.total);
+        }
+    }
+
+    // one user's counts as two parallel arrays, small no matter how large the dictionary is
+    private static class UserTotals {
+        private final int[] ingredientIds;
+        private final int[] counts;
+
+        UserTotals(IngredientCounter counter) {
+            ingredientIds = new int[counter.size()];
+            counts = new int[counter.size()];
+            int[] next = new int[1];
+            counter.forEach((id, count) -> {
+                ingredientIds[next[0]] = id;
+                counts[next[0]++] = count;
+            });
+        }
+
+        IngredientCounter toCounter() {
+            IngredientCounter counter = new IngredientCounter(ingredientIds.length);
+            for (int i = 0; i < ingredientIds.length; i++) {
+                counter.add(ingredientIds[i], counts[i]);
+            }
+            return counter;
+        }
+    }
+
+    public static class Result {
+        private final Map<Integer, UserTotals> perUser;
+        private final IngredientCounter combined;
+        private final IngredientDictionary dictionary;
+        private final long elapsedNanos;
+
+        Result(Map<Integer, UserTotals> perUser, IngredientCounter combined, IngredientDictionary dictionary, long elapsedNanos) {
+            this.perUser = perUser;
+            this.combined = combined;
+            this.dictionary = dictionary;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Set<Integer> getUserIds() {
+            return Collections.unmodifiableSet(perUser.keySet());
+        }
+
+        // ingredient -> count in alphabetical order, like MealRepository.getShoppingList
+        public Map<String, Integer> getShoppingList(int userId) {
+            UserTotals totals = perUser.get(userId);
+            if (totals == null) {
+                throw new IllegalArgumentException("No plan for user " + userId);
+            }
+            return totals.toCounter().toMap(dictionary);
+        }
+
+        public Map<String, Integer> getCombinedShoppingList() {
+            return combined.toMap(dictionary);
+        }
+
+        public IngredientCounter getCombinedCounts() {
+            return combined;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getUsersPerSecond() {
+            return elapsedNanos == 0 ? perUser.size() : perUser.size() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d shopping lists in %.1f ms (%.0f users/s)",
+                    perUser.size(), elapsedNanos / 1_000_000.0, getUsersPerSecond());
+        }
+    }
+}
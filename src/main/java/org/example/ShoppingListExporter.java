@@ -0,0 +1,156 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+// streams the shopping list from the database cursor into a channel through one reused buffer
+public class ShoppingListExporter {
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        // the original "ingredient x3" list
+        TEXT,
+        CSV,
+        JSON_LINES
+    }
+
+    private final MealRepository db;
+
+    public ShoppingListExporter(MealRepository db) {
+        this.db = db;
+    }
+
+    public ExportStats export(Path file, Format format, MealRepository.ShoppingListOrder order) throws SQLException, IOException {
+        return export(file, MealRepository.DEFAULT_USER_ID, MealRepository.DEFAULT_WEEK, format, order);
+    }
+
+    public ExportStats export(Path file, int userId, int week, Format format, MealRepository.ShoppingListOrder order) throws SQLException, IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return export(channel, userId, week, format, order);
+        }
+    }
+
+    public ExportStats export(WritableByteChannel channel, int userId, int week, Format format, MealRepository.ShoppingListOrder order) throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        RowWriter writer = new RowWriter(channel);
+
+        if (format == Format.CSV) {
+            writer.write("ingredient,count\n");
+        }
+
+        db.forEachShoppingListRow(userId, week, order, (ingredient, count) -> {
+            writer.write(formatRow(format, ingredient, count));
+            writer.rows++;
+        });
+        writer.flush();
+
+        return new ExportStats(writer.rows, writer.bytes, System.nanoTime() - startTime);
+    }
+
+    static String formatRow(Format format, String ingredient, int count) {
+        switch (format) {
+            case CSV:
+                return csvField(ingredient) + "," + count + "\n";
+            case JSON_LINES:
+                return "{\"ingredient\":\"" + jsonString(ingredient) + "\",\"count\":" + count + "}\n";
+            default:
+                return count > 1 ? ingredient + " x" + count + "\n" : ingredient + "\n";
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // only goes to the channel when the buffer is full, so a large list costs a handful of writes
+    private static class RowWriter {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long rows;
+        private long bytes;
+
+        RowWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(String text) throws IOException {
+            byte[] data = text.getBytes(StandardCharsets.UTF_8);
+            int offset = 0;
+            while (offset < data.length) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int length = Math.min(buffer.remaining(), data.length - offset);
+                buffer.put(data, offset, length);
+                offset += length;
+            }
+            bytes += data.length;
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    public static class ExportStats {
+        private final long rows;
+        private final long bytes;
+        private final long elapsedNanos;
+
+        public ExportStats(long rows, long bytes, long elapsedNanos) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows, %d bytes in %.1f ms", rows, bytes, elapsedNanos / 1_000_000.0);
+        }
+    }
+}
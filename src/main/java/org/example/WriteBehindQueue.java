@@ -0,0 +1,189 @@
+package org.example;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+// write-behind for meal additions: submit only enqueues, a background worker drains the queue
+// into addMeals batches of up to maxBatch meals, one transaction each. every submission gets a
+// future that completes with the meal id once its batch is committed, or exceptionally when the
+// batch failed, Errors included, so no submitter or flush waits forever. a full queue blocks
+// submitters until the worker catches up, and close writes everything still queued before it returns
+public class WriteBehindQueue implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_MAX_BATCH = MealRepository.DEFAULT_IMPORT_CHUNK_SIZE;
+    // how often an idle worker checks whether the queue was closed
+    private static final long IDLE_POLL_MILLIS = 50;
+
+    private final MealRepository db;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private final Thread worker;
+    // held while enqueueing and while closing: nothing is enqueued after the worker was told to
+    // finish, and lastSubmitted is always the future of the last meal in the queue
+    private final ReentrantLock submitLock = new ReentrantLock();
+    private volatile boolean closed;
+    // set if the worker itself died; submissions then fail at once
+    private volatile Throwable workerFailure;
+    // futures complete in queue order, so the latest one covers everything before it
+    private volatile CompletableFuture<Integer> lastSubmitted = CompletableFuture.completedFuture(0);
+
+    public WriteBehindQueue(MealRepository db) {
+        this(db, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    public WriteBehindQueue(MealRepository db, int capacity, int maxBatch) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Max batch must be positive: " + maxBatch);
+        }
+        this.db = db;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.worker = new Thread(this::drain, "meal-write-behind");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public CompletableFuture<Integer> submit(String category, String name, List<String> ingredients) throws InterruptedException {
+        return submit(new Main.Meal(category, name, ingredients));
+    }
+
+    // blocks while the queue is full; the worker drains it without the lock
+    public CompletableFuture<Integer> submit(Main.Meal meal) throws InterruptedException {
+        submitLock.lockInterruptibly();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-behind queue is closed");
+            }
+            if (workerFailure != null) {
+                throw new IllegalStateException("Write-behind worker failed", workerFailure);
+            }
+            Pending pending = new Pending(meal);
+            queue.put(pending);
+            lastSubmitted = pending.future;
+            return pending.future;
+        } finally {
+            submitLock.unlock();
+        }
+    }
+
+    // waits until every meal submitted so far was written or failed
+    public void flush() throws InterruptedException {
+        try {
+            lastSubmitted.get();
+        } catch (ExecutionException e) {
+            // the failure belongs to that meal's submitter
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        submitLock.lock();
+        try {
+            closed = true;
+        } finally {
+            submitLock.unlock();
+        }
+
+        boolean interrupted = false;
+        while (worker.isAlive()) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                // the queue still has to be written, so keep waiting and restore the flag after
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        try {
+            drainUntilClosed();
+        } catch (Throwable e) {
+            // write fails its own batch, so this is a bug in the loop; still, nobody is left waiting.
+            // a submitter may hold the lock while it waits for room, so room is made until it is free
+            List<Pending> queued = new ArrayList<>();
+            while (!submitLock.tryLock()) {
+                queue.drainTo(queued);
+                Thread.onSpinWait();
+            }
+            try {
+                workerFailure = e;
+                queue.drainTo(queued);
+            } finally {
+                submitLock.unlock();
+            }
+            for (Pending pending : queued) {
+                pending.future.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    private void drainUntilClosed() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        List<Main.Meal> meals = new ArrayList<>(maxBatch);
+        while (true) {
+            Pending first;
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // only close ends the worker; it exits once the queue is closed and empty
+                continue;
+            }
+            if (first == null) {
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            for (Pending pending : batch) {
+                meals.add(pending.meal);
+            }
+            write(batch, meals);
+            batch.clear();
+            meals.clear();
+        }
+    }
+
+    private void write(List<Pending> batch, List<Main.Meal> meals) {
+        int[] mealIds;
+        try {
+            mealIds = db.addMeals(meals, batch.size(), null);
+        } catch (Throwable e) {
+            // Errors too, e.g. a StackOverflowError from a listener: the worker carries on with the
+            // next batch instead of dying with every future still pending
+            Metrics.shared().counter(Metrics.WRITE_BEHIND_MEALS, "result", "failed").add(batch.size());
+            for (Pending pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        Metrics.shared().counter(Metrics.WRITE_BEHIND_MEALS, "result", "written").add(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(mealIds[i]);
+        }
+    }
+
+    private static class Pending {
+        private final Main.Meal meal;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        Pending(Main.Meal meal) {
+            this.meal = meal;
+        }
+    }
+}
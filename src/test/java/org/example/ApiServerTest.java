@@ -0,0 +1,209 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class ApiServerTest {
+
+    private DatabaseManager mockDatabaseManager;
+    private MealSearchIndex searchIndex;
+    private ApiServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockDatabaseManager = mock(DatabaseManager.class);
+        searchIndex = new MealSearchIndex();
+        server = new ApiServer(mockDatabaseManager, new MealCatalogCache(mockDatabaseManager), searchIndex,
+                new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Should list the meals of a category as JSON")
+    void getMeals() throws Exception {
+        // Given
+        given(mockDatabaseManager.getMealsByCategoryAlphabetical("lunch")).willReturn(Arrays.asList(
+                new Main.Meal("lunch", "Salad", Arrays.asList("Lettuce", "Tomato")),
+                new Main.Meal("lunch", "Soup \"deluxe\"", Collections.singletonList("Water"))));
+
+        // When
+        HttpResponse<String> response = get("/meals?category=lunch&order=alphabetical");
+
+        // Then
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+        assertEquals("[{\"name\":\"Salad\",\"category\":\"lunch\",\"ingredients\":[\"Lettuce\",\"Tomato\"]},"
+                + "{\"name\":\"Soup \\\"deluxe\\\"\",\"category\":\"lunch\",\"ingredients\":[\"Water\"]}]", response.body());
+    }
+
+    @Test
+    @DisplayName("Should return the plan of a user's week in day order")
+    void getPlan() throws Exception {
+        // Given
+        Map<String, Map<String, String>> plan = new HashMap<>();
+        plan.put("Tuesday", new LinkedHashMap<>(Collections.singletonMap("lunch", "Salad")));
+        plan.put("Monday", new LinkedHashMap<>(Collections.singletonMap("breakfast", "Pancakes")));
+        given(mockDatabaseManager.getPlannedMeals(3, 2)).willReturn(plan);
+
+        // When
+        HttpResponse<String> response = get("/plan?user=3&week=2");
+
+        // Then
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"Monday\":{\"breakfast\":\"Pancakes\"},\"Tuesday\":{\"lunch\":\"Salad\"}}", response.body());
+    }
+
+    @Test
+    @DisplayName("Should stream the shopping list rows into a JSON array")
+    void getShoppingList() throws Exception {
+        // Given
+        willAnswer(invocation -> {
+            MealRepository.ShoppingListRowHandler handler = invocation.getArgument(3);
+            handler.row("Flour", 14);
+            handler.row("Eggs", 7);
+            return null;
+        }).given(mockDatabaseManager).forEachShoppingListRow(eq(0), eq(0), eq(MealRepository.ShoppingListOrder.BY_COUNT), any());
+
+        // When
+        HttpResponse<String> response = get("/shopping-list?order=count");
+
+        // Then
+        assertEquals(200, response.statusCode());
+        assertEquals("[{\"ingredient\":\"Flour\",\"count\":14},{\"ingredient\":\"Eggs\",\"count\":7}]", response.body());
+    }
+
+    @Test
+    @DisplayName("Should search meals by ingredients and by name prefix")
+    void search() throws Exception {
+        // Given
+        searchIndex.add(new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs")));
+        searchIndex.add(new Main.Meal("breakfast", "Omelette", Arrays.asList("Eggs", "Salt")));
+        searchIndex.add(new Main.Meal("dinner", "Pasta", Arrays.asList("Pasta", "Salt")));
+
+        // When
+        HttpResponse<String> all = get("/search?ingredients=eggs,salt");
+        HttpResponse<String> prefix = get("/search?prefix=pa&limit=1");
+
+        // Then
+        assertEquals(200, all.statusCode());
+        assertEquals("[{\"name\":\"Omelette\",\"category\":\"breakfast\",\"ingredients\":[\"Eggs\",\"Salt\"]}]", all.body());
+        assertTrue(get("/search?ingredients=eggs,salt&match=any").body().contains("\"Pasta\""));
+        assertEquals("[{\"name\":\"Pancakes\",\"category\":\"breakfast\",\"ingredients\":[\"Flour\",\"Eggs\"]}]", prefix.body());
+        assertEquals(400, get("/search").statusCode());
+        assertEquals(400, get("/search?prefix=pa&limit=0").statusCode());
+    }
+
+    @Test
+    @DisplayName("Should reload the catalog when another process added meals")
+    void refreshesCatalog() throws Exception {
+        // Given a cached listing, and a meal the server heard nothing about
+        Main.Meal soup = new Main.Meal("lunch", "Soup", Collections.singletonList("Water"));
+        given(mockDatabaseManager.getMealsByCategory("lunch")).willReturn(Collections.emptyList(), Collections.singletonList(soup));
+        get("/meals?category=lunch");
+        given(mockDatabaseManager.countMeals()).willReturn(1);
+        willCallRealMethod().given(mockDatabaseManager).loadCatalog(any());
+        given(mockDatabaseManager.getMealsByCategoryPage(anyString(), any(), any(), anyInt())).willAnswer(invocation ->
+                invocation.getArgument(0).equals("lunch")
+                        ? new MealPage(Collections.singletonList(soup), new int[]{1}, 1, "Soup", false)
+                        : new MealPage(Collections.emptyList(), new int[0], 0, "", false));
+
+        // When
+        boolean refreshed = server.refreshCatalog();
+
+        // Then
+        assertTrue(refreshed);
+        assertEquals("[{\"name\":\"Soup\",\"category\":\"lunch\",\"ingredients\":[\"Water\"]}]", get("/search?prefix=so").body());
+        assertEquals("[{\"name\":\"Soup\",\"category\":\"lunch\",\"ingredients\":[\"Water\"]}]", get("/meals?category=lunch").body());
+        assertFalse(server.refreshCatalog());
+    }
+
+    @Test
+    @DisplayName("Should answer bad requests with an error status")
+    void errors() throws Exception {
+        // Given
+        given(mockDatabaseManager.getPlannedMeals(0, 0)).willThrow(new SQLException("connection refused"));
+
+        // When / Then
+        assertEquals(400, get("/meals?category=brunch").statusCode());
+        assertEquals(400, get("/plan?user=me").statusCode());
+        assertEquals(404, get("/meals/all").statusCode());
+        assertEquals(404, get("/recipes").statusCode());
+        assertEquals(500, get("/plan").statusCode());
+
+        // failures the endpoints do not expect still get an answer
+        given(mockDatabaseManager.getPlannedMeals(1, 0)).willThrow(new IllegalStateException("pool closed"));
+        willThrow(new IOException("disk full")).given(mockDatabaseManager)
+                .forEachShoppingListRow(anyInt(), anyInt(), any(), any());
+        HttpResponse<String> unexpected = get("/plan?user=1");
+        assertEquals(500, unexpected.statusCode());
+        assertEquals("{\"error\":\"internal error\"}", unexpected.body());
+        assertEquals(500, get("/shopping-list").statusCode());
+
+        HttpResponse<String> post = client.send(HttpRequest.newBuilder(uri("/meals"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, post.statusCode());
+        assertEquals("GET", post.headers().firstValue("Allow").orElse(null));
+    }
+
+    @Test
+    @DisplayName("Should fail to start on a port that is taken")
+    void portInUse() {
+        InetSocketAddress taken = new InetSocketAddress("127.0.0.1", server.getPort());
+
+        assertThrows(IOException.class, () ->
+                new ApiServer(mockDatabaseManager, new MealCatalogCache(mockDatabaseManager), searchIndex, taken));
+    }
+
+    @Test
+    @DisplayName("Should export request metrics in Prometheus text format")
+    void metrics() throws Exception {
+        // Given
+        get("/recipes/unknown");
+
+        // When
+        HttpResponse<String> response = get("/metrics");
+
+        // Then
+        assertEquals(200, response.statusCode());
+        assertEquals(Metrics.PROMETHEUS_CONTENT_TYPE, response.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(response.body().contains("# TYPE mealplanner_http_request_seconds summary\n"));
+        assertTrue(response.body().contains("mealplanner_http_errors_total{status=\"404\"} "));
+    }
+
+    @Test
+    @DisplayName("Should decode query parameters")
+    void parseQuery() {
+        Map<String, String> params = ApiServer.parseQuery("category=Main+course&note=a%26b&flag");
+
+        assertEquals("Main course", params.get("category"));
+        assertEquals("a&b", params.get("note"));
+        assertEquals("", params.get("flag"));
+        assertTrue(ApiServer.parseQuery(null).isEmpty());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+}
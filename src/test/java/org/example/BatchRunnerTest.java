@@ -0,0 +1,212 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class BatchRunnerTest {
+
+    private Connection mockConnection;
+    private DatabaseManager mockDatabaseManager;
+    private ByteArrayOutputStream output;
+    private BatchRunner runner;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        mockConnection = mock(Connection.class);
+        mockDatabaseManager = mock(DatabaseManager.class);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        output = new ByteArrayOutputStream();
+        runner = new BatchRunner(mockConnection, mockDatabaseManager, new PrintStream(output, true));
+    }
+
+    @Test
+    @DisplayName("Should run every command in one transaction and time each of them")
+    void runCommitsOnce() throws SQLException, IOException {
+        // Given
+        given(mockDatabaseManager.getMealsByCategory("breakfast")).willReturn(Collections.singletonList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs"))));
+
+        // When
+        List<BatchRunner.CommandTiming> timings = runner.run(Arrays.asList(
+                "# morning meals",
+                "add;breakfast;Pancakes;Flour,Eggs",
+                "",
+                "show; breakfast"));
+
+        // Then
+        then(mockDatabaseManager).should().initializeDatabase();
+        then(mockDatabaseManager).should().addMeal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs"));
+        then(mockConnection).should().setAutoCommit(false);
+        then(mockDatabaseManager).should(times(1)).commit();
+        then(mockDatabaseManager).should(never()).rollback();
+        then(mockConnection).should().setAutoCommit(true);
+
+        assertEquals(2, timings.size());
+        assertEquals("add;breakfast;Pancakes;Flour,Eggs", timings.get(0).getCommand());
+        String printed = output.toString();
+        assertTrue(printed.contains("Name: Pancakes"));
+        assertTrue(printed.contains("Batch committed: 2 commands"));
+    }
+
+    @Test
+    @DisplayName("Should roll back the whole batch when a command is invalid")
+    void runRollsBackOnInvalidCommand() throws SQLException {
+        // When
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> runner.run(Arrays.asList(
+                "add;breakfast;Pancakes;Flour",
+                "add;brunch;Waffles;Flour")));
+
+        // Then
+        assertEquals("Line 2: Wrong meal category: brunch", e.getMessage());
+        then(mockDatabaseManager).should().rollback();
+        then(mockDatabaseManager).should(never()).commit();
+        assertTrue(output.toString().contains("Batch rolled back: 2 commands"));
+        assertTrue(output.toString().contains("ms  add;brunch;Waffles;Flour"));
+    }
+
+    @Test
+    @DisplayName("Should keep the command's failure when the rollback fails too")
+    void runKeepsFailureWhenRollbackFails() throws SQLException {
+        // Given
+        willThrow(new SQLException("connection lost")).given(mockDatabaseManager).rollback();
+
+        // When
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> runner.run(Collections.singletonList("add;brunch;Waffles;Flour")));
+
+        // Then
+        assertEquals("Line 1: Wrong meal category: brunch", e.getMessage());
+        assertEquals("connection lost", e.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    @DisplayName("Should report output files that could not be moved into place")
+    void runReportsUnpublishedFiles(@TempDir Path dir) throws IOException {
+        // Given a target that is a directory the snapshot cannot replace
+        Path target = Files.createDirectory(dir.resolve("catalog.snap"));
+        Files.createFile(target.resolve("keep"));
+
+        // When
+        assertThrows(IOException.class, () -> runner.run(Collections.singletonList("snapshot;" + target)));
+
+        // Then
+        String printed = output.toString();
+        assertTrue(printed.contains("Batch committed, output files not written"));
+        assertFalse(printed.contains("Batch committed:"));
+        assertFalse(Files.exists(dir.resolve("catalog.snap.pending")));
+    }
+
+    @Test
+    @DisplayName("Should write files only once the batch commits")
+    void runWritesFilesOnCommit(@TempDir Path dir) throws SQLException, IOException {
+        // Given
+        Path rolledBack = dir.resolve("rolled-back.snap");
+        Path committed = dir.resolve("committed.snap");
+
+        // When
+        assertThrows(IllegalArgumentException.class, () -> runner.run(Arrays.asList(
+                "snapshot;" + rolledBack,
+                "add;brunch;Waffles;Flour")));
+        runner.run(Collections.singletonList("snapshot;" + committed));
+
+        // Then
+        assertFalse(Files.exists(rolledBack));
+        assertTrue(Files.exists(committed));
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            assertEquals(Collections.singletonList(committed), files.collect(java.util.stream.Collectors.toList()));
+        }
+    }
+
+    @Test
+    @DisplayName("Should import a meal file with a progress printer")
+    void executeImport(@TempDir Path dir) throws SQLException, IOException {
+        // Given
+        Path file = dir.resolve("meals.txt");
+        Files.write(file, Arrays.asList("lunch;Soup;Water", "dinner;Stew;Beans,Salt"), StandardCharsets.UTF_8);
+        given(mockDatabaseManager.addMeals(anyCollection(), anyInt(), any())).willAnswer(invocation -> {
+            MealRepository.ImportProgress progress = invocation.getArgument(2);
+            progress.chunkCommitted(2, 5, 250);
+            return new int[]{1, 2};
+        });
+
+        // When
+        runner.execute("import;" + file);
+
+        // Then
+        then(mockDatabaseManager).should().addMeals(argThat(meals -> meals.size() == 2),
+                eq(MealRepository.DEFAULT_IMPORT_CHUNK_SIZE), notNull());
+        assertTrue(output.toString().contains("2 meals, 5 rows (250 rows/s)"));
+        assertTrue(output.toString().contains("Imported 2 meals"));
+    }
+
+    @Test
+    @DisplayName("Should reject unknown commands and malformed arguments")
+    void executeRejectsBadInput() {
+        assertThrows(IllegalArgumentException.class, () -> runner.execute("exit"));
+        assertThrows(IllegalArgumentException.class, () -> runner.execute("show"));
+        assertThrows(IllegalArgumentException.class, () -> runner.execute("add;lunch;Soup1;Water"));
+        assertThrows(IllegalArgumentException.class, () -> runner.execute("plan;soon"));
+    }
+
+    @Test
+    @DisplayName("Should generate and store a plan from the catalog")
+    void executePlan() throws SQLException, IOException {
+        // Given
+        for (String category : MealRepository.MEAL_CATEGORIES) {
+            given(mockDatabaseManager.getMealsByCategoryAlphabetical(category)).willReturn(Collections.singletonList(
+                    new Main.Meal(category, category + " meal", Collections.singletonList("Salt"))));
+        }
+
+        // When
+        runner.execute("plan;7");
+
+        // Then
+        then(mockDatabaseManager).should().savePlanToDatabase(eq(MealRepository.DEFAULT_USER_ID), eq(MealRepository.DEFAULT_WEEK),
+                argThat(plan -> plan.size() == 7 && plan.get("Monday").equals("breakfast meal")),
+                anyMap(), anyMap());
+        assertTrue(output.toString().contains("Dinner: dinner meal"));
+    }
+
+    @Test
+    @DisplayName("Should refuse to save before a plan exists")
+    void executeSaveWithoutPlan() throws SQLException, IOException {
+        // Given
+        given(mockDatabaseManager.hasPlan()).willReturn(false);
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> runner.execute("save;list.txt"));
+        then(mockDatabaseManager).should(never()).forEachShoppingListRow(anyInt(), anyInt(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should read commands from a file or from the arguments")
+    void parseArguments() throws IOException {
+        // Given
+        Path file = Files.createTempFile("batch", ".txt");
+        Files.write(file, Arrays.asList("list plan", "save;out.txt"), StandardCharsets.UTF_8);
+
+        try {
+            // When / Then
+            assertEquals(Arrays.asList("list plan", "save;out.txt"),
+                    BatchRunner.parseArguments(new String[]{"--file", file.toString()}));
+            assertEquals(Arrays.asList("show;lunch", "list plan"),
+                    BatchRunner.parseArguments(new String[]{"show;lunch", "list plan"}));
+            assertThrows(IllegalArgumentException.class, () -> BatchRunner.parseArguments(new String[]{"--file"}));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class CatalogSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Map<String, List<Main.Meal>> catalog() {
+        Map<String, List<Main.Meal>> mealsByCategory = new HashMap<>();
+        mealsByCategory.put("breakfast", Arrays.asList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs", "Milk")),
+                new Main.Meal("breakfast", "Cr\u00eapes", Arrays.asList("Flour", "Eggs")),
+                new Main.Meal("breakfast", "Bagel", Collections.emptyList())));
+        mealsByCategory.put("dinner", Collections.singletonList(
+                new Main.Meal("dinner", "Pasta", Arrays.asList("Pasta", "Tomato"))));
+        return mealsByCategory;
+    }
+
+    @Test
+    @DisplayName("Should read back what was written, per category and in both orders")
+    void writeAndLoad() throws IOException {
+        // Given
+        Path file = tempDir.resolve("catalog.snap");
+        IngredientDictionary dictionary = new IngredientDictionary();
+
+        // When
+        CatalogSnapshot.write(catalog(), file);
+        CatalogSnapshot snapshot = CatalogSnapshot.load(file, dictionary);
+
+        // Then
+        assertEquals(4, snapshot.getMealCount());
+        assertEquals(3, snapshot.getMealCount("Breakfast"));
+        assertEquals(0, snapshot.getMealCount("lunch"));
+        assertEquals(1, snapshot.getMealCount("dinner"));
+
+        List<Main.Meal> breakfasts = snapshot.getMealsByCategory("breakfast");
+        assertEquals(Arrays.asList("Pancakes", "Cr\u00eapes", "Bagel"), names(breakfasts));
+        assertEquals(Arrays.asList("Flour", "Eggs", "Milk"), breakfasts.get(0).getIngredients());
+        assertTrue(breakfasts.get(2).getIngredients().isEmpty());
+        assertSame(dictionary, breakfasts.get(0).getDictionary());
+        assertEquals(Arrays.asList("Bagel", "Cr\u00eapes", "Pancakes"), names(snapshot.getMealsByCategoryAlphabetical("breakfast")));
+
+        Main.Meal pasta = snapshot.getMealsByCategory("dinner").get(0);
+        assertEquals("dinner", pasta.getCategory());
+        assertEquals(Arrays.asList("Pasta", "Tomato"), pasta.getIngredients());
+        assertEquals(dictionary.idOf("Tomato"), snapshot.getIngredientId(3, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getName(4));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getMealCount("brunch"));
+    }
+
+    @Test
+    @DisplayName("Should refresh the snapshot from the database")
+    void refresh() throws SQLException, IOException {
+        // Given
+        Path file = tempDir.resolve("catalog.snap");
+        CatalogSnapshot.write(catalog(), file);
+
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        given(mockDatabaseManager.getMealsByCategory(anyString())).willReturn(Collections.emptyList());
+        given(mockDatabaseManager.getMealsByCategory("lunch")).willReturn(Collections.singletonList(
+                new Main.Meal("lunch", "Salad", Collections.singletonList("Lettuce"))));
+
+        // When
+        CatalogSnapshot snapshot = CatalogSnapshot.refresh(mockDatabaseManager, file);
+
+        // Then
+        assertEquals(1, snapshot.getMealCount());
+        assertEquals("Salad", snapshot.getName(0));
+        assertEquals("lunch", snapshot.getCategory(0));
+        assertFalse(Files.exists(tempDir.resolve("catalog.snap.tmp")));
+    }
+
+    @Test
+    @DisplayName("Should reject files that are not snapshots")
+    void loadRejectsGarbage() throws IOException {
+        // Given
+        Path file = tempDir.resolve("shopping.txt");
+        Files.write(file, "Eggs x3\nFlour x1\n".getBytes());
+        Path truncated = tempDir.resolve("truncated.snap");
+        CatalogSnapshot.write(catalog(), truncated);
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+
+        // When / Then
+        assertThrows(IOException.class, () -> CatalogSnapshot.load(file));
+        assertThrows(IOException.class, () -> CatalogSnapshot.load(truncated));
+    }
+
+    private static List<String> names(List<Main.Meal> meals) {
+        List<String> names = new ArrayList<>();
+        for (Main.Meal meal : meals) {
+            names.add(meal.getName());
+        }
+        return names;
+    }
+}
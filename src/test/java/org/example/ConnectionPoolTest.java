@@ -0,0 +1,283 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class ConnectionPoolTest {
+
+    private List<Connection> created;
+    private Map<String, PreparedStatement> prepared;
+    private ConnectionPool.ConnectionFactory factory;
+
+    @BeforeEach
+    void setUp() {
+        created = new CopyOnWriteArrayList<>();
+        prepared = new ConcurrentHashMap<>();
+        factory = () -> {
+            Connection connection = mock(Connection.class);
+            given(connection.getAutoCommit()).willReturn(true);
+            given(connection.isValid(anyInt())).willReturn(true);
+            given(connection.prepareStatement(anyString())).willAnswer(invocation -> {
+                PreparedStatement stmt = mock(PreparedStatement.class);
+                prepared.put(invocation.getArgument(0), stmt);
+                return stmt;
+            });
+            created.add(connection);
+            return connection;
+        };
+    }
+
+    @Test
+    @DisplayName("Should reuse a returned connection instead of opening a new one")
+    void reusesConnections() throws SQLException {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 2, 1000, 60_000, 60_000, 8);
+
+        // When
+        Connection first = pool.getConnection();
+        first.close();
+        Connection second = pool.getConnection();
+        second.createStatement();
+        second.close();
+
+        // Then
+        assertEquals(1, created.size());
+        then(created.get(0)).should().createStatement();
+        then(created.get(0)).should(never()).close();
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::createStatement);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    @DisplayName("Should serve repeated prepareStatement calls from the statement cache")
+    void cachesPreparedStatements() throws SQLException {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 60_000, 60_000, 8);
+        String sql = "SELECT meal_id FROM meals WHERE meal = ?";
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            Connection connection = pool.getConnection();
+            PreparedStatement stmt = connection.prepareStatement(sql);
+            stmt.setString(1, "Pancakes");
+            stmt.executeQuery();
+            stmt.close();
+            assertTrue(stmt.isClosed());
+            connection.close();
+        }
+
+        // Then
+        assertEquals(1, created.size());
+        then(created.get(0)).should(times(1)).prepareStatement(sql);
+    }
+
+    @Test
+    @DisplayName("Should prepare a private statement when the cached one is still open")
+    void preparesSeparateStatementWhenCachedOneIsInUse() throws SQLException {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 60_000, 60_000, 8);
+        Connection connection = pool.getConnection();
+        String sql = "SELECT ingredient FROM ingredients WHERE meal_id = ?";
+
+        // When
+        PreparedStatement outer = connection.prepareStatement(sql);
+        PreparedStatement inner = connection.prepareStatement(sql);
+
+        // Then
+        assertNotSame(outer, inner);
+        then(created.get(0)).should(times(2)).prepareStatement(sql);
+        connection.close();
+    }
+
+    @Test
+    @DisplayName("Should reset statement settings and refuse a statement used after close")
+    void resetsReturnedStatements() throws SQLException {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 60_000, 60_000, 8);
+        Connection connection = pool.getConnection();
+        String sql = "SELECT meal FROM meals";
+        PreparedStatement first = connection.prepareStatement(sql);
+        first.setFetchSize(1000);
+        first.setMaxRows(1);
+
+        // When
+        first.close();
+        PreparedStatement second = connection.prepareStatement(sql);
+
+        // Then
+        PreparedStatement raw = prepared.get(sql);
+        then(raw).should().setFetchSize(0);
+        then(raw).should().setMaxRows(0);
+        then(raw).should().setQueryTimeout(0);
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        SQLException closed = assertThrows(SQLException.class, first::executeQuery);
+        assertEquals("statement closed", closed.getMessage());
+        then(raw).should(never()).executeQuery();
+        connection.close();
+    }
+
+    @Test
+    @DisplayName("Should close a statement evicted from the cache only when its borrower is done")
+    void defersClosingEvictedStatementsInUse() throws SQLException {
+        // Given a cache of one statement
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 60_000, 60_000, 1);
+        Connection connection = pool.getConnection();
+        PreparedStatement streaming = connection.prepareStatement("SELECT meal FROM meals");
+        PreparedStatement raw = prepared.get("SELECT meal FROM meals");
+
+        // When another statement pushes it out while it is still open
+        connection.prepareStatement("SELECT ingredient FROM ingredients").close();
+
+        // Then
+        then(raw).should(never()).close();
+        streaming.executeQuery();
+        streaming.close();
+        then(raw).should().close();
+        connection.close();
+    }
+
+    @Test
+    @DisplayName("Should close the statements a borrower left open when the connection is returned")
+    void closesStatementsLeftOpen() throws SQLException {
+        // Given a borrower that failed before closing its statements
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 60_000, 60_000, 8);
+        String sql = "SELECT meal FROM meals";
+        Connection failed = pool.getConnection();
+        PreparedStatement leaked = failed.prepareStatement(sql);
+        PreparedStatement leakedRaw = prepared.get(sql);
+        PreparedStatement leakedCopy = failed.prepareStatement(sql);
+
+        // When
+        failed.close();
+        for (int i = 0; i < 3; i++) {
+            Connection connection = pool.getConnection();
+            connection.prepareStatement(sql).close();
+            connection.close();
+        }
+
+        // Then the leaked statements are closed and the next borrowers share one fresh cached statement
+        then(leakedRaw).should().close();
+        assertTrue(leaked.isClosed());
+        then(leakedCopy).should().close();
+        then(created.get(0)).should(times(3)).prepareStatement(sql);
+        then(prepared.get(sql)).should(never()).close();
+    }
+
+    @Test
+    @DisplayName("Should time out borrowers beyond the pool size")
+    void limitsPoolSize() throws SQLException {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 1, 100, 60_000, 60_000, 8);
+        pool.getConnection();
+
+        // When / Then
+        SQLException timeout = assertThrows(SQLException.class, pool::getConnection);
+        assertTrue(timeout.getMessage().contains("Timed out"));
+        assertEquals(1, created.size());
+    }
+
+    @Test
+    @DisplayName("Should hand a returned connection to a waiting borrower")
+    void waitingBorrowerGetsReturnedConnection() throws Exception {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 1, 5000, 60_000, 60_000, 8);
+        Connection held = pool.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // When
+            Future<Connection> waiting = executor.submit(() -> pool.getConnection());
+            Thread.sleep(50);
+            assertFalse(waiting.isDone());
+            held.close();
+
+            // Then
+            assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(1, created.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should discard idle connections that fail validation")
+    void validatesIdleConnections() throws SQLException {
+        // Given a pool that validates every borrow
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 60_000, 0, 8);
+        pool.getConnection().close();
+        given(created.get(0).isValid(anyInt())).willReturn(false);
+
+        // When
+        pool.getConnection().close();
+
+        // Then
+        assertEquals(2, created.size());
+        then(created.get(0)).should().close();
+    }
+
+    @Test
+    @DisplayName("Should evict connections that stayed idle for too long")
+    void evictsIdleConnections() throws Exception {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 2, 1000, 20, 60_000, 8);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        second.close();
+        assertEquals(2, pool.getIdleCount());
+
+        // When
+        Thread.sleep(50);
+        pool.evictIdle();
+
+        // Then
+        assertEquals(0, pool.getIdleCount());
+        then(created.get(0)).should().close();
+        then(created.get(1)).should().close();
+    }
+
+    @Test
+    @DisplayName("Should shrink an idle pool without a borrow to trigger it")
+    void evictsIdleConnectionsInBackground() throws Exception {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 20, 60_000, 8);
+        pool.getConnection().close();
+
+        // When
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then: the evictor closes the connection just after taking it off the idle list
+        assertEquals(0, pool.getIdleCount());
+        then(created.get(0)).should(timeout(5_000)).close();
+        pool.close();
+    }
+
+    @Test
+    @DisplayName("Should roll back an unfinished transaction when a connection is returned")
+    void rollsBackOnReturn() throws SQLException {
+        // Given
+        ConnectionPool pool = new ConnectionPool(factory, 1, 1000, 60_000, 60_000, 8);
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        given(created.get(0).getAutoCommit()).willReturn(false);
+
+        // When
+        connection.close();
+
+        // Then
+        then(created.get(0)).should().rollback();
+        then(created.get(0)).should().setAutoCommit(true);
+    }
+}
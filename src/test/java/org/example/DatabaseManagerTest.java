@@ -2,6 +2,7 @@ package org.example;
 
 import org.junit.jupiter.api.*;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import java.sql.*;
 import java.util.*;
 
@@ -47,14 +48,108 @@ class DatabaseManagerTest {
                 "meal_option VARCHAR(1024) NOT NULL" +
                 ")";
 
+        ResultSet versionRs = mock(ResultSet.class);
+        given(mockStatement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")).willReturn(versionRs);
+        givenDatabaseProduct("PostgreSQL");
+        given(versionRs.next()).willReturn(true);
+        given(versionRs.getInt(1)).willReturn(0);
+
+        PreparedStatement versionStmt = mock(PreparedStatement.class);
+        given(mockConnection.prepareStatement("INSERT INTO schema_version (version) VALUES (?)")).willReturn(versionStmt);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        givenIdSequences(mockStatement, 2L);
+
         // When
         databaseManager.initializeDatabase();
+        int mealId = databaseManager.getNextMealId();
 
         // Then
         then(mockStatement).should(times(1)).executeUpdate(expectedMealsTableQuery);
         then(mockStatement).should(times(1)).executeUpdate(expectedIngredientsTableQuery);
         then(mockStatement).should(times(1)).executeUpdate(expectedPlanTableQuery);
-        then(mockStatement).should(times(1)).close();
+
+        then(mockStatement).should().executeUpdate("ALTER TABLE meals ADD CONSTRAINT meals_pkey PRIMARY KEY (meal_id)");
+        then(mockStatement).should().executeUpdate("CREATE INDEX IF NOT EXISTS meals_category_idx ON meals (LOWER(category))");
+        then(mockStatement).should().executeUpdate("CREATE INDEX IF NOT EXISTS meals_meal_idx ON meals (meal)");
+        then(mockStatement).should().executeUpdate("CREATE INDEX IF NOT EXISTS ingredients_meal_id_idx ON ingredients (meal_id)");
+
+        then(mockStatement).should().executeUpdate("ALTER TABLE plan ADD CONSTRAINT plan_pkey PRIMARY KEY (user_id, week, day, meal_category)");
+
+        then(versionStmt).should().setInt(1, 1);
+        then(versionStmt).should().setInt(1, 2);
+        then(versionStmt).should().setInt(1, 3);
+        then(mockStatement).should().executeUpdate(startsWith("CREATE TABLE IF NOT EXISTS plan_changes ("));
+        then(mockStatement).should().executeUpdate(startsWith("INSERT INTO plan_changes"));
+        then(versionStmt).should().setInt(1, 4);
+        then(mockStatement).should().executeUpdate(startsWith("CREATE TABLE IF NOT EXISTS shopping_list ("));
+        then(mockStatement).should().executeUpdate(startsWith("INSERT INTO shopping_list"));
+        then(versionStmt).should().setInt(1, 5);
+        then(mockStatement).should().executeUpdate("CREATE INDEX IF NOT EXISTS meals_category_meal_id_idx ON meals (LOWER(category), meal_id)");
+        then(mockStatement).should().executeUpdate("CREATE INDEX IF NOT EXISTS meals_category_meal_idx ON meals (LOWER(category), meal, meal_id)");
+        then(mockStatement).should().executeUpdate("DROP INDEX IF EXISTS meals_category_idx");
+        then(versionStmt).should().setInt(1, 6);
+        then(mockStatement).should().executeUpdate(startsWith("CREATE TABLE IF NOT EXISTS plan_weeks ("));
+        then(mockStatement).should().executeUpdate("INSERT INTO plan_weeks (user_id, week) SELECT DISTINCT user_id, week FROM plan");
+        then(versionStmt).should().setInt(1, 7);
+        then(mockConnection).should(times(7)).commit();
+        then(mockConnection).should(never()).rollback();
+
+        // several processes may write to PostgreSQL, so ids come from the sequences
+        then(mockStatement).should().executeUpdate("CREATE SEQUENCE IF NOT EXISTS meal_id_seq START WITH 1");
+        then(mockStatement).should().executeUpdate("CREATE SEQUENCE IF NOT EXISTS ingredient_id_seq START WITH 1");
+        assertEquals(200, mealId);
+    }
+
+    @Test
+    @DisplayName("Should skip migrations that were already applied")
+    void initializeDatabaseIsIdempotent() throws SQLException {
+        // Given
+        given(mockConnection.createStatement()).willReturn(mockStatement);
+        ResultSet versionRs = mock(ResultSet.class);
+        given(mockStatement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")).willReturn(versionRs);
+        givenDatabaseProduct("PostgreSQL");
+        given(versionRs.next()).willReturn(true);
+        given(versionRs.getInt(1)).willReturn(1);
+
+        PreparedStatement versionStmt = mock(PreparedStatement.class);
+        given(mockConnection.prepareStatement("INSERT INTO schema_version (version) VALUES (?)")).willReturn(versionStmt);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        givenIdSequences(mockStatement, 2L);
+
+        // When
+        databaseManager.initializeDatabase();
+
+        // Then
+        then(mockStatement).should(never()).executeUpdate(startsWith("ALTER TABLE meals"));
+        then(mockStatement).should().executeUpdate("CREATE INDEX IF NOT EXISTS meals_meal_idx ON meals (meal)");
+        then(mockStatement).should().executeUpdate("ALTER TABLE plan ADD COLUMN user_id INTEGER DEFAULT 0 NOT NULL");
+        then(versionStmt).should().setInt(1, 2);
+        then(versionStmt).should().setInt(1, 3);
+        then(versionStmt).should().setInt(1, 4);
+        then(versionStmt).should().setInt(1, 5);
+        then(versionStmt).should().setInt(1, 6);
+        then(versionStmt).should().setInt(1, 7);
+        then(versionStmt).should(never()).setInt(1, 1);
+        then(mockConnection).should(times(6)).commit();
+    }
+
+    @Test
+    @DisplayName("Should roll back a failed migration")
+    void initializeDatabaseRollsBackFailedMigration() throws SQLException {
+        // Given
+        given(mockConnection.createStatement()).willReturn(mockStatement);
+        ResultSet versionRs = mock(ResultSet.class);
+        given(mockStatement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")).willReturn(versionRs);
+        givenDatabaseProduct("PostgreSQL");
+        given(versionRs.next()).willReturn(true);
+        given(versionRs.getInt(1)).willReturn(0);
+        given(mockStatement.executeUpdate(startsWith("ALTER TABLE meals"))).willThrow(new SQLException("duplicate key"));
+        given(mockConnection.getAutoCommit()).willReturn(true);
+
+        // When / Then
+        assertThrows(SQLException.class, () -> databaseManager.initializeDatabase());
+        then(mockConnection).should().rollback();
+        then(mockConnection).should(never()).commit();
     }
 
 
@@ -75,17 +170,19 @@ class DatabaseManagerTest {
         PreparedStatement mockMealStmt = mock(PreparedStatement.class);
         PreparedStatement mockIngredientStmt = mock(PreparedStatement.class);
 
+        given(mockConnection.getAutoCommit()).willReturn(true);
         given(mockConnection.prepareStatement("INSERT INTO meals (category, meal, meal_id) VALUES (?, ?, ?)")).willReturn(mockMealStmt);
         given(mockConnection.prepareStatement("INSERT INTO ingredients (ingredient, ingredient_id, meal_id) VALUES (?, ?, ?)")).willReturn(mockIngredientStmt);
 
         // When
-        spyDatabaseManager.addMeal(category, name, ingredients);
+        int mealId = spyDatabaseManager.addMeal(category, name, ingredients);
 
         // Then
+        assertEquals(nextMealId, mealId);
         then(mockMealStmt).should().setString(1, category);
         then(mockMealStmt).should().setString(2, name);
         then(mockMealStmt).should().setInt(3, nextMealId);
-        then(mockMealStmt).should().executeUpdate();
+        then(mockMealStmt).should().executeBatch();
         then(mockMealStmt).should().close();
 
         ArgumentCaptor<String> ingredientCaptor = ArgumentCaptor.forClass(String.class);
@@ -95,12 +192,144 @@ class DatabaseManagerTest {
         then(mockIngredientStmt).should(times(ingredients.size())).setString(eq(1), ingredientCaptor.capture());
         then(mockIngredientStmt).should(times(ingredients.size())).setInt(eq(2), ingredientIdCaptor.capture());
         then(mockIngredientStmt).should(times(ingredients.size())).setInt(eq(3), mealIdCaptor.capture());
-        then(mockIngredientStmt).should(times(ingredients.size())).executeUpdate();
-        then(mockIngredientStmt).should(times(ingredients.size())).close();
+        then(mockIngredientStmt).should(times(ingredients.size())).addBatch();
+        then(mockIngredientStmt).should(times(1)).executeBatch();
+        then(mockIngredientStmt).should(times(1)).close();
 
         assertEquals(ingredients, ingredientCaptor.getAllValues());
         assertEquals(Arrays.asList(1, 2, 3), ingredientIdCaptor.getAllValues());
         mealIdCaptor.getAllValues().forEach(id -> assertEquals(nextMealId, id));
+
+        then(mockConnection).should().commit();
+        then(mockConnection).should().setAutoCommit(true);
+    }
+
+    @Test
+    @DisplayName("Should bulk import meals in committed chunks")
+    void addMeals() throws SQLException {
+        // Given
+        List<Main.Meal> meals = Arrays.asList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs")),
+                new Main.Meal("lunch", "Salad", Collections.singletonList("Lettuce")),
+                new Main.Meal("dinner", "Pasta", Arrays.asList("Pasta", "Tomato", "Cheese")));
+
+        DatabaseManager spyDatabaseManager = spy(databaseManager);
+        doReturn(10, 11, 12).when(spyDatabaseManager).getNextMealId();
+        doReturn(100, 101, 102, 103, 104, 105).when(spyDatabaseManager).getNextIngredientId();
+
+        PreparedStatement mockMealStmt = mock(PreparedStatement.class);
+        PreparedStatement mockIngredientStmt = mock(PreparedStatement.class);
+
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement("INSERT INTO meals (category, meal, meal_id) VALUES (?, ?, ?)")).willReturn(mockMealStmt);
+        given(mockConnection.prepareStatement("INSERT INTO ingredients (ingredient, ingredient_id, meal_id) VALUES (?, ?, ?)")).willReturn(mockIngredientStmt);
+
+        List<Long> reportedRows = new ArrayList<>();
+
+        // When
+        int[] mealIds = spyDatabaseManager.addMeals(meals, 2,
+                (mealsImported, rowsImported, rowsPerSecond) -> reportedRows.add(rowsImported));
+
+        // Then
+        assertArrayEquals(new int[]{10, 11, 12}, mealIds);
+        assertEquals(Arrays.asList(5L, 9L), reportedRows);
+
+        then(spyDatabaseManager).should(times(3)).getNextMealId();
+        then(spyDatabaseManager).should(times(6)).getNextIngredientId();
+        then(mockConnection).should(times(2)).prepareStatement(anyString());
+        then(mockMealStmt).should(times(3)).addBatch();
+        then(mockMealStmt).should(times(2)).executeBatch();
+        then(mockIngredientStmt).should(times(6)).addBatch();
+        then(mockIngredientStmt).should(times(2)).executeBatch();
+        then(mockIngredientStmt).should().setInt(2, 105);
+        then(mockConnection).should(times(2)).commit();
+        then(mockConnection).should().setAutoCommit(false);
+        then(mockConnection).should().setAutoCommit(true);
+    }
+
+    @Test
+    @DisplayName("Should roll back the current chunk when a bulk import fails")
+    void addMealsRollsBackOnFailure() throws SQLException {
+        // Given
+        DatabaseManager spyDatabaseManager = spy(databaseManager);
+        doReturn(1).when(spyDatabaseManager).getNextMealId();
+        doReturn(1).when(spyDatabaseManager).getNextIngredientId();
+
+        PreparedStatement mockStmt = mock(PreparedStatement.class);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStmt);
+        given(mockStmt.executeBatch()).willThrow(new SQLException("duplicate key"));
+
+        List<Main.Meal> meals = Collections.singletonList(
+                new Main.Meal("breakfast", "Pancakes", Collections.singletonList("Flour")));
+
+        // When / Then
+        assertThrows(SQLException.class, () -> spyDatabaseManager.addMeals(meals));
+        then(mockConnection).should().rollback();
+        then(mockConnection).should(never()).commit();
+        then(mockConnection).should().setAutoCommit(true);
+        then(mockStmt).should(times(2)).close();
+    }
+
+    @Test
+    @DisplayName("Should tell meal listeners about every committed chunk")
+    void addMealsNotifiesListeners() throws SQLException {
+        // Given
+        DatabaseManager spyDatabaseManager = spy(databaseManager);
+        doReturn(11, 12, 13).when(spyDatabaseManager).getNextMealId();
+        doReturn(1).when(spyDatabaseManager).getNextIngredientId();
+
+        PreparedStatement mockStmt = mock(PreparedStatement.class);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStmt);
+
+        List<List<String>> notifiedNames = new ArrayList<>();
+        List<int[]> notifiedIds = new ArrayList<>();
+        spyDatabaseManager.addMealListener((meals, mealIds) -> {
+            List<String> names = new ArrayList<>();
+            meals.forEach(meal -> names.add(meal.getName()));
+            notifiedNames.add(names);
+            notifiedIds.add(mealIds);
+        });
+
+        List<Main.Meal> meals = Arrays.asList(
+                new Main.Meal("breakfast", "Pancakes", Collections.singletonList("Flour")),
+                new Main.Meal("lunch", "Salad", Collections.singletonList("Lettuce")),
+                new Main.Meal("dinner", "Pasta", Collections.singletonList("Pasta")));
+
+        // When
+        spyDatabaseManager.addMeals(meals, 2, null);
+
+        // Then
+        assertEquals(Arrays.asList(Arrays.asList("Pancakes", "Salad"), Collections.singletonList("Pasta")), notifiedNames);
+        assertArrayEquals(new int[]{11, 12}, notifiedIds.get(0));
+        assertArrayEquals(new int[]{13}, notifiedIds.get(1));
+    }
+
+    @Test
+    @DisplayName("Should leave commit to the caller when a transaction is already open")
+    void addMealsJoinsCallerTransaction() throws SQLException {
+        // Given
+        DatabaseManager spyDatabaseManager = spy(databaseManager);
+        doReturn(1).when(spyDatabaseManager).getNextMealId();
+        doReturn(1).when(spyDatabaseManager).getNextIngredientId();
+
+        PreparedStatement mockStmt = mock(PreparedStatement.class);
+        given(mockConnection.getAutoCommit()).willReturn(false);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStmt);
+
+        List<Main.Meal> meals = Arrays.asList(
+                new Main.Meal("breakfast", "Pancakes", Collections.singletonList("Flour")),
+                new Main.Meal("lunch", "Salad", Collections.singletonList("Lettuce")));
+
+        // When
+        spyDatabaseManager.addMeals(meals, 1, null);
+
+        // Then
+        then(mockStmt).should(times(4)).executeBatch();
+        then(mockConnection).should(never()).commit();
+        then(mockConnection).should(never()).rollback();
+        then(mockConnection).should(never()).setAutoCommit(true);
     }
 
     @Test
@@ -111,21 +340,14 @@ class DatabaseManagerTest {
         PreparedStatement mockStatement = mock(PreparedStatement.class);
         ResultSet mockResultSet = mock(ResultSet.class);
 
-        given(mockConnection.prepareStatement("SELECT * FROM meals WHERE LOWER(category) = ? ORDER BY meal_id")).willReturn(mockStatement);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStatement);
         given(mockStatement.executeQuery()).willReturn(mockResultSet);
 
-        // Simulate result set
-        given(mockResultSet.next()).willReturn(true, false);
-        given(mockResultSet.getInt("meal_id")).willReturn(1);
+        // Simulate the joined result set
+        given(mockResultSet.next()).willReturn(true, true, true, false);
+        given(mockResultSet.getInt("meal_id")).willReturn(1, 1, 1);
         given(mockResultSet.getString("meal")).willReturn("Pancakes");
-
-        PreparedStatement mockIngredientStmt = mock(PreparedStatement.class);
-        ResultSet mockIngredientRs = mock(ResultSet.class);
-
-        given(mockConnection.prepareStatement("SELECT ingredient FROM ingredients WHERE meal_id = ?")).willReturn(mockIngredientStmt);
-        given(mockIngredientStmt.executeQuery()).willReturn(mockIngredientRs);
-        given(mockIngredientRs.next()).willReturn(true, true, true, false);
-        given(mockIngredientRs.getString("ingredient")).willReturn("Flour", "Eggs", "Milk");
+        given(mockResultSet.getString("ingredient")).willReturn("Flour", "Eggs", "Milk");
 
         // When
         List<Main.Meal> meals = databaseManager.getMealsByCategory(category);
@@ -137,28 +359,194 @@ class DatabaseManagerTest {
         assertEquals("Pancakes", meal.getName());
         assertEquals(Arrays.asList("Flour", "Eggs", "Milk"), meal.getIngredients());
 
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        then(mockConnection).should(times(1)).prepareStatement(queryCaptor.capture());
+        assertTrue(queryCaptor.getValue().endsWith("ORDER BY m.meal_id, i.ingredient_id"));
+
         then(mockStatement).should().setString(1, category);
-        then(mockStatement).should().executeQuery();
+        then(mockStatement).should(times(1)).executeQuery();
         then(mockStatement).should().close();
+    }
 
-        then(mockIngredientStmt).should().setInt(1, 1);
-        then(mockIngredientStmt).should().executeQuery();
-        then(mockIngredientStmt).should().close();
+    @Test
+    @DisplayName("Should retrieve many meals alphabetically in a single round trip")
+    void getMealsByCategoryAlphabetical() throws SQLException {
+        // Given
+        String category = "lunch";
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        ResultSet mockResultSet = mock(ResultSet.class);
+
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStatement);
+        given(mockStatement.executeQuery()).willReturn(mockResultSet);
+
+        // Burger (id 2) with two ingredients, Salad (id 1) with one, Soup (id 3) with none
+        given(mockResultSet.next()).willReturn(true, true, true, true, false);
+        given(mockResultSet.getInt("meal_id")).willReturn(2, 2, 1, 3);
+        given(mockResultSet.getString("meal")).willReturn("Burger", "Salad", "Soup");
+        given(mockResultSet.getString("ingredient")).willReturn("Bun", "Beef", "Lettuce", null);
+
+        // When
+        List<Main.Meal> meals = databaseManager.getMealsByCategoryAlphabetical(category);
+
+        // Then
+        assertEquals(3, meals.size());
+        assertEquals("Burger", meals.get(0).getName());
+        assertEquals(Arrays.asList("Bun", "Beef"), meals.get(0).getIngredients());
+        assertEquals("Salad", meals.get(1).getName());
+        assertEquals(Collections.singletonList("Lettuce"), meals.get(1).getIngredients());
+        assertEquals("Soup", meals.get(2).getName());
+        assertTrue(meals.get(2).getIngredients().isEmpty());
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        then(mockConnection).should(times(1)).prepareStatement(queryCaptor.capture());
+        assertTrue(queryCaptor.getValue().endsWith("ORDER BY m.meal, m.meal_id, i.ingredient_id"));
+        then(mockStatement).should(times(1)).executeQuery();
     }
 
     @Test
-    @DisplayName("Should delete old plan")
-    void deleteOldPlan() throws SQLException {
+    @DisplayName("Should read a page of meals after the key the previous page ended at")
+    void getMealsByCategoryPage() throws SQLException {
         // Given
-        Statement mockStatement = mock(Statement.class);
-        given(mockConnection.createStatement()).willReturn(mockStatement);
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        ResultSet mockResultSet = mock(ResultSet.class);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStatement);
+        given(mockStatement.executeQuery()).willReturn(mockResultSet);
+        given(mockResultSet.next()).willReturn(true, true, true, false);
+        given(mockResultSet.getInt("meal_id")).willReturn(7, 7, 4);
+        given(mockResultSet.getString("meal")).willReturn("Salad", "Soup");
+        given(mockResultSet.getString("ingredient")).willReturn("Lettuce", "Tomato", "Water");
+        MealPage previous = new MealPage(Collections.emptyList(), new int[0], 9, "Pasta", true);
+
+        // When
+        MealPage page = databaseManager.getMealsByCategoryPage("lunch", MealRepository.MealOrder.ALPHABETICAL, previous, 2);
+
+        // Then
+        assertEquals(2, page.getMeals().size());
+        assertEquals(Arrays.asList("Lettuce", "Tomato"), page.getMeals().get(0).getIngredients());
+        assertEquals(4, page.getLastMealId());
+        assertEquals("Soup", page.getLastName());
+        assertTrue(page.hasMore());
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        then(mockConnection).should().prepareStatement(queryCaptor.capture());
+        assertTrue(queryCaptor.getValue().contains("(meal, meal_id) > (?, ?) ORDER BY meal, meal_id LIMIT ?"));
+        assertTrue(queryCaptor.getValue().endsWith("ORDER BY m.meal, m.meal_id, i.ingredient_id"));
+        then(mockStatement).should().setString(1, "lunch");
+        then(mockStatement).should().setString(2, "Pasta");
+        then(mockStatement).should().setInt(3, 9);
+        then(mockStatement).should().setInt(4, 2);
+        assertThrows(IllegalArgumentException.class,
+                () -> databaseManager.getMealsByCategoryPage("lunch", MealRepository.MealOrder.ADDED, null, 0));
+    }
+
+    @Test
+    @DisplayName("Should stream meals through a cursor inside a transaction")
+    void forEachMealInCategory() throws Exception {
+        // Given
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        ResultSet mockResultSet = mock(ResultSet.class);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStatement);
+        given(mockStatement.executeQuery()).willReturn(mockResultSet);
+        given(mockResultSet.next()).willReturn(true, true, true, false);
+        given(mockResultSet.getInt("meal_id")).willReturn(1, 1, 2);
+        given(mockResultSet.getString("meal")).willReturn("Pancakes", "Toast");
+        given(mockResultSet.getString("ingredient")).willReturn("Flour", "Eggs", null);
+        List<String> names = new ArrayList<>();
 
         // When
-        databaseManager.deleteOldPlan();
+        databaseManager.forEachMealInCategory("breakfast", MealRepository.MealOrder.ADDED, meal -> names.add(meal.getName()));
 
         // Then
-        then(mockStatement).should().executeUpdate("DELETE FROM plan");
+        assertEquals(Arrays.asList("Pancakes", "Toast"), names);
+        then(mockStatement).should().setFetchSize(anyInt());
+        InOrder inOrder = inOrder(mockConnection, mockStatement, mockResultSet);
+        inOrder.verify(mockConnection).setAutoCommit(false);
+        inOrder.verify(mockStatement).executeQuery();
+        inOrder.verify(mockResultSet).close();
+        inOrder.verify(mockConnection).setAutoCommit(true);
+    }
+
+    @Test
+    @DisplayName("Should close the cursor and end the transaction when the handler fails")
+    void forEachMealInCategoryHandlerFails() throws Exception {
+        // Given
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        ResultSet mockResultSet = mock(ResultSet.class);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStatement);
+        given(mockStatement.executeQuery()).willReturn(mockResultSet);
+        given(mockResultSet.next()).willReturn(true, false);
+        given(mockResultSet.getInt("meal_id")).willReturn(1);
+        given(mockResultSet.getString("meal")).willReturn("Pancakes");
+
+        // When / Then
+        assertThrows(java.io.IOException.class, () -> databaseManager.forEachMealInCategory("breakfast",
+                MealRepository.MealOrder.ALPHABETICAL, meal -> {
+                    throw new java.io.IOException("closed");
+                }));
+        then(mockResultSet).should().close();
         then(mockStatement).should().close();
+        then(mockConnection).should().setAutoCommit(true);
+    }
+
+    @Test
+    @DisplayName("Should record call latency, round trips and rows read")
+    void recordsMetrics() throws SQLException {
+        // Given
+        Metrics metrics = new Metrics();
+        databaseManager.setMetrics(metrics);
+        PreparedStatement mockStatement = mock(PreparedStatement.class);
+        ResultSet mockResultSet = mock(ResultSet.class);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStatement);
+        given(mockStatement.executeQuery()).willReturn(mockResultSet);
+        given(mockResultSet.next()).willReturn(true, true, false, true, true, false);
+        given(mockResultSet.getInt("meal_id")).willReturn(1, 1, 1, 1);
+        given(mockResultSet.getString("meal")).willReturn("Salad");
+        given(mockResultSet.getString("ingredient")).willReturn("Lettuce", "Tomato");
+
+        // When
+        databaseManager.getMealsByCategory("lunch");
+        databaseManager.getMealsByCategory("dinner");
+
+        // Then
+        assertEquals(2, metrics.histogram(Metrics.DB_CALL_SECONDS, "method", "getMealsByCategory").getCount());
+        assertEquals(2, metrics.counter(Metrics.DB_ROUND_TRIPS, "statement", "select_meals").sum());
+        assertEquals(4, metrics.counter(Metrics.DB_ROWS_READ, "method", "getMealsByCategory").sum());
+    }
+
+    @Test
+    @DisplayName("Should delete old plan and its shopping list and log the removed slots first")
+    void deleteOldPlan() throws SQLException {
+        // Given
+        PreparedStatement mockStmt = mock(PreparedStatement.class);
+        PreparedStatement logStmt = mock(PreparedStatement.class);
+        PreparedStatement listStmt = mock(PreparedStatement.class);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement("DELETE FROM plan WHERE user_id = ? AND week = ?")).willReturn(mockStmt);
+        given(mockConnection.prepareStatement(startsWith("INSERT INTO plan_changes"))).willReturn(logStmt);
+        given(mockConnection.prepareStatement("DELETE FROM shopping_list WHERE user_id = ? AND week = ?")).willReturn(listStmt);
+        WeekLock lock = givenWeekLock();
+
+        // When
+        databaseManager.deleteOldPlan(4, 2);
+
+        // Then
+        InOrder inOrder = inOrder(lock.select, logStmt, mockStmt, listStmt, mockConnection);
+        inOrder.verify(lock.select).executeQuery();
+        inOrder.verify(logStmt).executeUpdate();
+        inOrder.verify(mockStmt).executeUpdate();
+        inOrder.verify(listStmt).executeUpdate();
+        inOrder.verify(mockConnection).commit();
+        then(lock.insert).should().setInt(1, 4);
+        then(lock.select).should().setInt(2, 2);
+        then(listStmt).should().setInt(1, 4);
+        then(listStmt).should().setInt(2, 2);
+        then(logStmt).should().setInt(1, 4);
+        then(logStmt).should().setInt(2, 2);
+        then(mockStmt).should().setInt(1, 4);
+        then(mockStmt).should().setInt(2, 2);
+        then(mockStmt).should().close();
     }
 
     @Test
@@ -169,32 +557,249 @@ class DatabaseManagerTest {
         Map<String, String> lunchPlan = new HashMap<>();
         Map<String, String> dinnerPlan = new HashMap<>();
 
-        for (String day : DatabaseManager.DAYS_OF_WEEK) {
+        for (String day : MealRepository.DAYS_OF_WEEK) {
             breakfastPlan.put(day, "Pancakes");
             lunchPlan.put(day, "Sandwich");
             dinnerPlan.put(day, "Pasta");
         }
 
-        PreparedStatement mockPlanStmt = mock(PreparedStatement.class);
-        given(mockConnection.prepareStatement(anyString())).willReturn(mockPlanStmt);
+        givenDatabaseProduct("PostgreSQL");
+        PlanStatements statements = givenPlanStatements();
+        given(statements.mealIdRows.next()).willReturn(true, true, true, false);
+        given(statements.mealIdRows.getString("meal")).willReturn("Pancakes", "Sandwich", "Pasta");
+        given(statements.mealIdRows.getInt("meal_id")).willReturn(1, 2, 3);
 
-        DatabaseManager spyDatabaseManager = spy(databaseManager);
-        doReturn(1).when(spyDatabaseManager).getMealId(anyString());
+        // When
+        databaseManager.savePlanToDatabase(breakfastPlan, lunchPlan, dinnerPlan);
+
+        // Then
+        verify(statements.insert, times(21)).addBatch();
+        verify(statements.insert, times(21)).setInt(3, MealRepository.DEFAULT_USER_ID);
+        verify(statements.insert, times(7)).setInt(1, 3);
+        verify(statements.insert, times(1)).executeBatch();
+        verify(statements.insert, times(1)).close();
+        verify(statements.log, times(21)).addBatch();
+        verify(statements.log, times(1)).executeBatch();
+        verify(statements.update, never()).addBatch();
+        verify(statements.update, never()).executeBatch();
+        // every meal id in one query, whatever the number of slots
+        verify(statements.mealIds, times(1)).executeQuery();
+        then(mockConnection).should().prepareStatement(
+                "INSERT INTO shopping_list (user_id, week, ingredient, amount) VALUES (?, ?, ?, ?) " +
+                        "ON CONFLICT (user_id, week, ingredient) DO UPDATE SET amount = shopping_list.amount + EXCLUDED.amount");
+        then(mockConnection).should().commit();
+
+        // the week is locked before its plan is read
+        InOrder inOrder = inOrder(statements.lock.insert, statements.lock.select, statements.planSlots);
+        inOrder.verify(statements.lock.insert).executeUpdate();
+        inOrder.verify(statements.lock.select).executeQuery();
+        inOrder.verify(statements.planSlots).executeQuery();
+    }
+
+    @Test
+    @DisplayName("Should roll back a half-saved plan on any failure before restoring auto-commit")
+    void savePlanToDatabaseRollsBackOnRuntimeException() throws SQLException {
+        // Given: the plan slots are written, then the shopping list update fails
+        Map<String, String> breakfastPlan = new HashMap<>();
+        breakfastPlan.put("Monday", "Pancakes");
+        PlanStatements statements = givenPlanStatements();
+        given(statements.mealIdRows.next()).willReturn(true, false);
+        given(statements.mealIdRows.getString("meal")).willReturn("Pancakes");
+        given(statements.mealIdRows.getInt("meal_id")).willReturn(1);
+        given(statements.ingredientRows.next()).willReturn(true, false);
+        given(statements.ingredientRows.getString("ingredient")).willReturn("Flour");
+        given(statements.ingredientRows.getInt("meal_id")).willReturn(1);
+        given(statements.upsertList.executeBatch()).willThrow(new IllegalStateException("driver bug"));
+
+        // When
+        assertThrows(IllegalStateException.class, () -> databaseManager.savePlanToDatabase(
+                breakfastPlan, new HashMap<>(), new HashMap<>()));
+
+        // Then
+        InOrder order = inOrder(statements.insert, mockConnection);
+        order.verify(statements.insert).executeBatch();
+        order.verify(mockConnection).rollback();
+        order.verify(mockConnection).setAutoCommit(true);
+        then(mockConnection).should(never()).commit();
+    }
+
+    @Test
+    @DisplayName("Should only write the slots that changed")
+    void savePlanToDatabaseWritesChangedSlots() throws SQLException {
+        // Given: breakfast and lunch planned all week
+        Map<String, String> breakfastPlan = new HashMap<>();
+        Map<String, String> lunchPlan = new HashMap<>();
+        Map<String, String> dinnerPlan = new HashMap<>();
+        List<String[]> currentSlots = new ArrayList<>();
+
+        for (String day : MealRepository.DAYS_OF_WEEK) {
+            currentSlots.add(new String[]{day, "breakfast", "1", "Pancakes"});
+            currentSlots.add(new String[]{day, "lunch", "2", "Sandwich"});
+
+            breakfastPlan.put(day, "Pancakes");
+            lunchPlan.put(day, "Sandwich");
+            dinnerPlan.put(day, "Pasta");
+        }
+        lunchPlan.put("Friday", "Salad");
+
+        givenDatabaseProduct("H2");
+        PlanStatements statements = givenPlanStatements();
+        givenCurrentSlots(statements, currentSlots);
+        given(statements.mealIdRows.next()).willReturn(true, true, false);
+        given(statements.mealIdRows.getString("meal")).willReturn("Pasta", "Salad");
+        given(statements.mealIdRows.getInt("meal_id")).willReturn(5, 6);
+
+        // When
+        databaseManager.savePlanToDatabase(7, 3, breakfastPlan, lunchPlan, dinnerPlan);
+
+        // Then: seven new dinners and one changed lunch
+        verify(statements.insert, times(7)).addBatch();
+        verify(statements.insert, times(7)).setString(6, "dinner");
+        verify(statements.insert, times(7)).setInt(1, 5);
+        verify(statements.update, times(1)).addBatch();
+        verify(statements.update).setInt(1, 6);
+        verify(statements.update).setString(2, "Salad");
+        verify(statements.update).setInt(3, 7);
+        verify(statements.update).setInt(4, 3);
+        verify(statements.update).setString(5, "Friday");
+        verify(statements.update).setString(6, "lunch");
+        verify(statements.log, times(8)).addBatch();
+        verify(statements.log).setString(2, "Salad");
+        verify(statements.mealIds, times(1)).executeQuery();
+        then(mockConnection).should().commit();
+
+        // the replaced lunch is logged while its row still holds the old meal
+        InOrder inOrder = inOrder(statements.log, statements.update);
+        inOrder.verify(statements.log, times(2)).executeBatch();
+        inOrder.verify(statements.update).executeBatch();
+    }
+
+    @Test
+    @DisplayName("Should move the shopping list by the ingredients of the changed slots only")
+    void savePlanToDatabaseUpdatesShoppingList() throws SQLException {
+        // Given: Monday's lunch goes from Sandwich to Salad, Tuesday gets a first lunch of Salad
+        Map<String, String> lunchPlan = new HashMap<>();
+        lunchPlan.put("Monday", "Salad");
+        lunchPlan.put("Tuesday", "Salad");
+
+        givenDatabaseProduct("H2");
+        PlanStatements statements = givenPlanStatements();
+        givenCurrentSlots(statements, Collections.singletonList(new String[]{"Monday", "lunch", "5", "Sandwich"}));
+        given(statements.mealIdRows.next()).willReturn(true, false);
+        given(statements.mealIdRows.getString("meal")).willReturn("Salad");
+        given(statements.mealIdRows.getInt("meal_id")).willReturn(8);
+        given(statements.ingredientRows.next()).willReturn(true, true, true, true, false);
+        given(statements.ingredientRows.getInt("meal_id")).willReturn(5, 5, 8, 8);
+        given(statements.ingredientRows.getString("ingredient")).willReturn("Bread", "Lettuce", "Lettuce", "Tomato");
+
+        // When
+        databaseManager.savePlanToDatabase(4, 0, new HashMap<>(), lunchPlan, new HashMap<>());
+
+        // Then: one lookup for the meal going out and the one coming in
+        then(mockConnection).should().prepareStatement("SELECT meal_id, ingredient FROM ingredients WHERE meal_id = ANY(?)");
+        ArgumentCaptor<Object[]> mealIds = ArgumentCaptor.forClass(Object[].class);
+        then(mockConnection).should().createArrayOf(eq("integer"), mealIds.capture());
+        assertEquals(new HashSet<>(Arrays.asList(5, 8)), new HashSet<>(Arrays.asList(mealIds.getValue())));
+        then(mockConnection).should().prepareStatement(startsWith("MERGE INTO shopping_list"));
+
+        // Salad is planned twice, the replaced Sandwich is taken off once
+        InOrder inOrder = inOrder(statements.upsertList);
+        inOrder.verify(statements.upsertList).setString(3, "Bread");
+        inOrder.verify(statements.upsertList).setInt(4, -1);
+        inOrder.verify(statements.upsertList).setString(3, "Lettuce");
+        inOrder.verify(statements.upsertList).setInt(4, 1);
+        inOrder.verify(statements.upsertList).setString(3, "Tomato");
+        inOrder.verify(statements.upsertList).setInt(4, 2);
+        verify(statements.upsertList, times(3)).addBatch();
+        verify(statements.upsertList, times(1)).executeBatch();
+        verify(statements.deleteList).executeUpdate();
+
+        // the replaced meal's ingredients are read before its slot is overwritten
+        InOrder writes = inOrder(statements.ingredients, statements.update, mockConnection);
+        writes.verify(statements.ingredients).executeQuery();
+        writes.verify(statements.update).executeBatch();
+        writes.verify(mockConnection).commit();
+    }
+
+    @Test
+    @DisplayName("Should write nothing when the plan did not change")
+    void savePlanToDatabaseUnchanged() throws SQLException {
+        // Given
+        Map<String, String> breakfastPlan = new HashMap<>();
+        List<String[]> currentSlots = new ArrayList<>();
+        for (String day : MealRepository.DAYS_OF_WEEK) {
+            currentSlots.add(new String[]{day, "breakfast", "1", "Pancakes"});
+            breakfastPlan.put(day, "Pancakes");
+        }
+
+        PlanStatements statements = givenPlanStatements();
+        givenCurrentSlots(statements, currentSlots);
 
         // When
-        spyDatabaseManager.savePlanToDatabase(breakfastPlan, lunchPlan, dinnerPlan);
+        databaseManager.savePlanToDatabase(1, 0, breakfastPlan, new HashMap<>(), new HashMap<>());
 
         // Then
-        int totalSetStringCalls = 7 * 3 * 3; // 63
-        int totalSetIntCalls = 7 * 3 * 1;    // 21
+        verify(statements.insert, never()).executeBatch();
+        verify(statements.update, never()).executeBatch();
+        verify(statements.log, never()).executeBatch();
+        verify(statements.mealIds, never()).executeQuery();
+        verify(statements.upsertList, never()).executeBatch();
+        then(mockConnection).should().commit();
+    }
 
-        verify(mockPlanStmt, times(totalSetStringCalls)).setString(anyInt(), anyString());
-        verify(mockPlanStmt, times(totalSetIntCalls)).setInt(anyInt(), anyInt());
-        verify(mockPlanStmt, times(1)).executeBatch();
-        verify(mockPlanStmt, times(1)).close();
+    @Test
+    @DisplayName("Should roll back the plan when a slot cannot be written")
+    void savePlanToDatabaseRollsBack() throws SQLException {
+        // Given
+        Map<String, String> breakfastPlan = new HashMap<>();
+        breakfastPlan.put("Monday", "Pancakes");
+
+        PlanStatements statements = givenPlanStatements();
+        given(statements.insert.executeBatch()).willThrow(new SQLException("duplicate key"));
+
+        // When / Then
+        assertThrows(SQLException.class, () ->
+                databaseManager.savePlanToDatabase(2, 0, breakfastPlan, new HashMap<>(), new HashMap<>()));
+        then(mockConnection).should().rollback();
+        then(mockConnection).should(never()).commit();
+        then(mockConnection).should().setAutoCommit(true);
     }
 
+    @Test
+    @DisplayName("Should read the plan change log after a sequence number")
+    void getPlanChangesSince() throws SQLException {
+        // Given
+        PreparedStatement mockStmt = mock(PreparedStatement.class);
+        ResultSet mockRs = mock(ResultSet.class);
+        given(mockConnection.prepareStatement(startsWith("SELECT seq, user_id, week, day, meal_category"))).willReturn(mockStmt);
+        given(mockStmt.executeQuery()).willReturn(mockRs);
+        given(mockRs.next()).willReturn(true, false);
+        given(mockRs.getLong("seq")).willReturn(42L);
+        given(mockRs.getInt("user_id")).willReturn(7);
+        given(mockRs.getInt("week")).willReturn(3);
+        given(mockRs.getString("day")).willReturn("Friday");
+        given(mockRs.getString("meal_category")).willReturn("lunch");
+        given(mockRs.getInt("old_meal_id")).willReturn(5);
+        given(mockRs.getString("old_meal")).willReturn("Sandwich");
+        given(mockRs.getInt("new_meal_id")).willReturn(9);
+        given(mockRs.getString("new_meal")).willReturn("Salad");
+
+        // When
+        List<PlanChange> changes = databaseManager.getPlanChangesSince(41, 100);
 
+        // Then
+        then(mockStmt).should().setLong(1, 41);
+        then(mockStmt).should().setInt(2, 100);
+        assertEquals(1, changes.size());
+        PlanChange change = changes.get(0);
+        assertEquals(42, change.getSequence());
+        assertEquals("Friday", change.getDay());
+        assertEquals(5, change.getOldMealId());
+        assertEquals("Sandwich", change.getOldMeal());
+        assertEquals(9, change.getNewMealId());
+        assertEquals("Salad", change.getNewMeal());
+        assertThrows(IllegalArgumentException.class, () -> databaseManager.getPlanChangesSince(0, 0));
+    }
 
     @Test
     @DisplayName("Should retrieve planned meals")
@@ -203,7 +808,7 @@ class DatabaseManagerTest {
         PreparedStatement mockStmt = mock(PreparedStatement.class);
         ResultSet mockRs = mock(ResultSet.class);
 
-        given(mockConnection.prepareStatement("SELECT * FROM plan")).willReturn(mockStmt);
+        given(mockConnection.prepareStatement("SELECT day, meal_category, meal_option FROM plan WHERE user_id = ? AND week = ?")).willReturn(mockStmt);
         given(mockStmt.executeQuery()).willReturn(mockRs);
 
         given(mockRs.next()).willReturn(true, false);
@@ -212,13 +817,75 @@ class DatabaseManagerTest {
         given(mockRs.getString("meal_option")).willReturn("Pancakes");
 
         // When
-        Map<String, Map<String, String>> plannedMeals = databaseManager.getPlannedMeals();
+        Map<String, Map<String, String>> plannedMeals = databaseManager.getPlannedMeals(3, 1);
 
         // Then
         assertNotNull(plannedMeals);
         assertTrue(plannedMeals.containsKey("Monday"));
         Map<String, String> mondayMeals = plannedMeals.get("Monday");
         assertEquals("Pancakes", mondayMeals.get("breakfast"));
+        then(mockStmt).should().setInt(1, 3);
+        then(mockStmt).should().setInt(2, 1);
+    }
+
+    @Test
+    @DisplayName("Should read the shopping list from its table in a single query")
+    void getShoppingList() throws SQLException {
+        // Given
+        PreparedStatement mockStmt = mock(PreparedStatement.class);
+        ResultSet mockRs = mock(ResultSet.class);
+
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStmt);
+        given(mockStmt.executeQuery()).willReturn(mockRs);
+        given(mockRs.next()).willReturn(true, true, false);
+        given(mockRs.getString("ingredient")).willReturn("Eggs", "Flour");
+        given(mockRs.getInt("amount")).willReturn(7, 1);
+
+        // When
+        Map<String, Integer> shoppingList = databaseManager.getShoppingList(2, 5);
+
+        // Then
+        assertEquals(Arrays.asList("Eggs", "Flour"), new ArrayList<>(shoppingList.keySet()));
+        assertEquals(7, shoppingList.get("Eggs"));
+        assertEquals(1, shoppingList.get("Flour"));
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        then(mockConnection).should(times(1)).prepareStatement(queryCaptor.capture());
+        assertEquals("SELECT ingredient, amount FROM shopping_list WHERE user_id = ? AND week = ? ORDER BY ingredient",
+                queryCaptor.getValue());
+        then(mockStmt).should().setInt(1, 2);
+        then(mockStmt).should().setInt(2, 5);
+        then(mockStmt).should().close();
+    }
+
+    @Test
+    @DisplayName("Should stream shopping list rows to the handler")
+    void forEachShoppingListRow() throws Exception {
+        // Given
+        PreparedStatement mockStmt = mock(PreparedStatement.class);
+        ResultSet mockRs = mock(ResultSet.class);
+
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockStmt);
+        given(mockStmt.executeQuery()).willReturn(mockRs);
+        given(mockRs.next()).willReturn(true, true, false);
+        given(mockRs.getString("ingredient")).willReturn("Eggs", "Flour");
+        given(mockRs.getInt("amount")).willReturn(7, 1);
+
+        List<String> rows = new ArrayList<>();
+
+        // When
+        databaseManager.forEachShoppingListRow(MealRepository.ShoppingListOrder.BY_COUNT,
+                (ingredient, count) -> rows.add(ingredient + "=" + count));
+
+        // Then
+        assertEquals(Arrays.asList("Eggs=7", "Flour=1"), rows);
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        then(mockConnection).should().prepareStatement(queryCaptor.capture());
+        assertTrue(queryCaptor.getValue().endsWith("ORDER BY amount DESC, ingredient"));
+        then(mockStmt).should().setFetchSize(anyInt());
+        then(mockRs).should().close();
+        then(mockStmt).should().close();
     }
 
     @Test
@@ -244,6 +911,29 @@ class DatabaseManagerTest {
         then(mockStmt).should().close();
     }
 
+    @Test
+    @DisplayName("Should close statements and result sets when a query fails")
+    void closesStatementsOnFailure() throws SQLException {
+        // Given
+        Map<String, String> breakfastPlan = new HashMap<>();
+        breakfastPlan.put("Monday", "Pancakes");
+        PlanStatements statements = givenPlanStatements();
+        given(statements.mealIdRows.next()).willThrow(new SQLException("connection reset"));
+
+        // When
+        assertThrows(SQLException.class, () -> databaseManager.savePlanToDatabase(
+                breakfastPlan, new HashMap<>(), new HashMap<>()));
+
+        // Then
+        then(statements.lock.insert).should().close();
+        then(statements.lock.select).should().close();
+        then(statements.planSlots).should().close();
+        then(statements.planRows).should().close();
+        then(statements.mealIds).should().close();
+        then(statements.mealIdRows).should().close();
+        then(mockConnection).should().rollback();
+    }
+
     @Test
     @DisplayName("Should get next meal ID")
     void getNextMealId() throws SQLException {
@@ -262,6 +952,8 @@ class DatabaseManagerTest {
 
         // Then
         assertEquals(6, nextMealId);
+        assertEquals(7, databaseManager.getNextMealId());
+        verify(mockStmt, times(1)).executeQuery("SELECT MAX(meal_id) FROM meals");
         verify(mockStmt).close();
     }
 
@@ -313,4 +1005,199 @@ class DatabaseManagerTest {
         then(mockIngredientStmt).should().executeQuery();
         then(mockIngredientStmt).should().close();
     }
+
+    @Test
+    @DisplayName("Should allocate ids from database sequences in blocks")
+    void useSequenceIds() throws SQLException {
+        // Given
+        Statement mockStmt = mock(Statement.class);
+        ResultSet maxRs = mock(ResultSet.class);
+        ResultSet sequenceRs = mock(ResultSet.class);
+
+        given(mockConnection.createStatement()).willReturn(mockStmt);
+        given(mockStmt.executeQuery(startsWith("SELECT MAX"))).willReturn(maxRs);
+        given(maxRs.next()).willReturn(true);
+        given(maxRs.getObject(1)).willReturn(250);
+        given(maxRs.getInt(1)).willReturn(250);
+        given(mockStmt.executeQuery(startsWith("SELECT nextval"))).willReturn(sequenceRs);
+        given(sequenceRs.next()).willReturn(true);
+        given(sequenceRs.getLong(1)).willReturn(3L, 3L, 4L);
+
+        // When
+        databaseManager.useSequenceIds();
+        int first = databaseManager.getNextMealId();
+        int second = databaseManager.getNextMealId();
+
+        // Then
+        then(mockStmt).should().executeUpdate("CREATE SEQUENCE IF NOT EXISTS meal_id_seq START WITH 3");
+        then(mockStmt).should().executeUpdate("CREATE SEQUENCE IF NOT EXISTS ingredient_id_seq START WITH 3");
+        then(mockStmt).should(never()).executeUpdate(startsWith("ALTER SEQUENCE"));
+        assertEquals(400, first);
+        assertEquals(401, second);
+        then(mockStmt).should(times(2)).executeQuery("SELECT nextval('meal_id_seq')");
+    }
+
+    @Test
+    @DisplayName("Should step an existing sequence past ids already in the table")
+    void advancesLaggingSequence() throws SQLException {
+        // Given a sequence left at 1 while the table reached id 250
+        Statement mockStmt = mock(Statement.class);
+        ResultSet maxRs = mock(ResultSet.class);
+        ResultSet sequenceRs = mock(ResultSet.class);
+
+        given(mockConnection.createStatement()).willReturn(mockStmt);
+        given(mockStmt.executeQuery(startsWith("SELECT MAX"))).willReturn(maxRs);
+        given(maxRs.next()).willReturn(true);
+        given(maxRs.getObject(1)).willReturn(250);
+        given(maxRs.getInt(1)).willReturn(250);
+        given(mockStmt.executeQuery(startsWith("SELECT nextval"))).willReturn(sequenceRs);
+        given(sequenceRs.next()).willReturn(true);
+        given(sequenceRs.getLong(1)).willReturn(1L, 3L, 5L, 4L);
+
+        // When
+        databaseManager.useSequenceIds();
+        int first = databaseManager.getNextMealId();
+
+        // Then
+        InOrder order = inOrder(mockStmt);
+        order.verify(mockStmt).executeUpdate("ALTER SEQUENCE meal_id_seq INCREMENT BY 2");
+        order.verify(mockStmt).executeUpdate("ALTER SEQUENCE meal_id_seq INCREMENT BY 1");
+        then(mockStmt).should(never()).executeUpdate("ALTER SEQUENCE ingredient_id_seq INCREMENT BY 2");
+        assertEquals(400, first);
+    }
+
+    @Test
+    @DisplayName("Should borrow one pooled connection per call and reuse it for nested calls")
+    void borrowsFromDataSource() throws SQLException {
+        // Given
+        javax.sql.DataSource mockDataSource = mock(javax.sql.DataSource.class);
+        given(mockDataSource.getConnection()).willReturn(mockConnection);
+        DatabaseManager pooledManager = new DatabaseManager(mockDataSource);
+
+        Statement mockStmt = mock(Statement.class);
+        ResultSet maxRs = mock(ResultSet.class);
+        given(mockConnection.createStatement()).willReturn(mockStmt);
+        given(mockStmt.executeQuery(anyString())).willReturn(maxRs);
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockPreparedStatement);
+
+        // When: addMeals reads the next ids through nested calls
+        pooledManager.addMeals(Collections.singletonList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs"))));
+
+        // Then
+        then(mockDataSource).should(times(1)).getConnection();
+        then(mockConnection).should(times(1)).close();
+        then(mockConnection).should().commit();
+    }
+
+    @Test
+    @DisplayName("Should fall back to a plain category index on engines without expression indexes")
+    void initializeDatabaseOnEmbeddedEngine() throws SQLException {
+        // Given
+        given(mockConnection.createStatement()).willReturn(mockStatement);
+        ResultSet versionRs = mock(ResultSet.class);
+        given(mockStatement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")).willReturn(versionRs);
+        given(versionRs.next()).willReturn(true);
+        given(versionRs.getInt(1)).willReturn(1);
+        givenDatabaseProduct("H2");
+        given(mockConnection.prepareStatement(anyString())).willReturn(mockPreparedStatement);
+
+        // When
+        databaseManager.initializeDatabase();
+
+        // Then
+        then(mockStatement).should().executeUpdate("CREATE INDEX IF NOT EXISTS meals_category_idx ON meals (category)");
+        then(mockStatement).should(never()).executeUpdate("CREATE INDEX IF NOT EXISTS meals_category_idx ON meals (LOWER(category))");
+        then(mockStatement).should(never()).executeUpdate(startsWith("CREATE SEQUENCE"));
+    }
+
+    // empty tables and sequences answering 1 to the check, then the given block
+    private static void givenIdSequences(Statement statement, long nextBlock) throws SQLException {
+        ResultSet maxRs = mock(ResultSet.class);
+        ResultSet sequenceRs = mock(ResultSet.class);
+        given(statement.executeQuery(startsWith("SELECT MAX(meal_id)"))).willReturn(maxRs);
+        given(statement.executeQuery(startsWith("SELECT MAX(ingredient_id)"))).willReturn(maxRs);
+        given(statement.executeQuery(startsWith("SELECT nextval"))).willReturn(sequenceRs);
+        given(sequenceRs.next()).willReturn(true);
+        given(sequenceRs.getLong(1)).willReturn(1L, 1L, nextBlock);
+    }
+
+    private void givenDatabaseProduct(String productName) throws SQLException {
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        given(metaData.getDatabaseProductName()).willReturn(productName);
+        given(mockConnection.getMetaData()).willReturn(metaData);
+    }
+
+    private WeekLock givenWeekLock() throws SQLException {
+        WeekLock lock = new WeekLock();
+        given(mockConnection.prepareStatement(startsWith("INSERT INTO plan_weeks"))).willReturn(lock.insert);
+        given(mockConnection.prepareStatement(startsWith("SELECT user_id FROM plan_weeks"))).willReturn(lock.select);
+        given(lock.select.executeQuery()).willReturn(mock(ResultSet.class));
+        return lock;
+    }
+
+    private PlanStatements givenPlanStatements() throws SQLException {
+        PlanStatements statements = new PlanStatements();
+        given(mockConnection.getAutoCommit()).willReturn(true);
+        given(mockConnection.prepareStatement(startsWith("INSERT INTO plan"))).willReturn(statements.insert);
+        given(mockConnection.prepareStatement(startsWith("UPDATE plan"))).willReturn(statements.update);
+        given(mockConnection.prepareStatement(startsWith("INSERT INTO plan_changes"))).willReturn(statements.log);
+        statements.lock = givenWeekLock();
+        given(mockConnection.prepareStatement(startsWith("SELECT day, meal_category, meal_id, meal_option"))).willReturn(statements.planSlots);
+        given(mockConnection.prepareStatement(startsWith("SELECT meal, meal_id"))).willReturn(statements.mealIds);
+        given(mockConnection.prepareStatement(startsWith("SELECT meal_id, ingredient"))).willReturn(statements.ingredients);
+        given(statements.planSlots.executeQuery()).willReturn(statements.planRows);
+        given(statements.mealIds.executeQuery()).willReturn(statements.mealIdRows);
+        given(statements.ingredients.executeQuery()).willReturn(statements.ingredientRows);
+        given(mockConnection.createArrayOf(anyString(), any(Object[].class))).willReturn(mock(Array.class));
+        given(mockConnection.prepareStatement(startsWith("INSERT INTO shopping_list"))).willReturn(statements.upsertList);
+        given(mockConnection.prepareStatement(startsWith("MERGE INTO shopping_list"))).willReturn(statements.upsertList);
+        given(mockConnection.prepareStatement(startsWith("DELETE FROM shopping_list"))).willReturn(statements.deleteList);
+        if (mockConnection.getMetaData() == null) {
+            givenDatabaseProduct("H2");
+        }
+        return statements;
+    }
+
+    // day, category, meal id and meal of every slot currently planned
+    private static void givenCurrentSlots(PlanStatements statements, List<String[]> slots) throws SQLException {
+        Boolean[] next = new Boolean[slots.size()];
+        String[] days = new String[slots.size()];
+        String[] categories = new String[slots.size()];
+        Integer[] mealIds = new Integer[slots.size()];
+        String[] meals = new String[slots.size()];
+        for (int i = 0; i < slots.size(); i++) {
+            next[i] = i + 1 < slots.size();
+            days[i] = slots.get(i)[0];
+            categories[i] = slots.get(i)[1];
+            mealIds[i] = Integer.parseInt(slots.get(i)[2]);
+            meals[i] = slots.get(i)[3];
+        }
+        given(statements.planRows.next()).willReturn(true, next);
+        given(statements.planRows.getString("day")).willReturn(days[0], Arrays.copyOfRange(days, 1, days.length));
+        given(statements.planRows.getString("meal_category")).willReturn(categories[0], Arrays.copyOfRange(categories, 1, categories.length));
+        given(statements.planRows.getInt("meal_id")).willReturn(mealIds[0], Arrays.copyOfRange(mealIds, 1, mealIds.length));
+        given(statements.planRows.getString("meal_option")).willReturn(meals[0], Arrays.copyOfRange(meals, 1, meals.length));
+    }
+
+    private static class WeekLock {
+        private final PreparedStatement insert = mock(PreparedStatement.class);
+        private final PreparedStatement select = mock(PreparedStatement.class);
+    }
+
+    private static class PlanStatements {
+        private final PreparedStatement insert = mock(PreparedStatement.class);
+        private final PreparedStatement update = mock(PreparedStatement.class);
+        private final PreparedStatement log = mock(PreparedStatement.class);
+        private WeekLock lock;
+        private final PreparedStatement planSlots = mock(PreparedStatement.class);
+        private final PreparedStatement mealIds = mock(PreparedStatement.class);
+        private final PreparedStatement ingredients = mock(PreparedStatement.class);
+        private final ResultSet planRows = mock(ResultSet.class);
+        private final ResultSet mealIdRows = mock(ResultSet.class);
+        private final ResultSet ingredientRows = mock(ResultSet.class);
+        private final PreparedStatement upsertList = mock(PreparedStatement.class);
+        private final PreparedStatement deleteList = mock(PreparedStatement.class);
+    }
 }
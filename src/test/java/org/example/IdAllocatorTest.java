@@ -0,0 +1,106 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdAllocatorTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 20_000;
+
+    @Test
+    @DisplayName("Block allocator should seed once and hand out unique ids under contention")
+    void blockAllocatorUnderContention() throws Exception {
+        // Given
+        AtomicInteger seedCalls = new AtomicInteger();
+        BlockIdAllocator allocator = new BlockIdAllocator(() -> {
+            seedCalls.incrementAndGet();
+            return 41;
+        });
+
+        // When
+        Set<Integer> ids = allocateConcurrently(allocator);
+
+        // Then
+        assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+        assertEquals(42, Collections.min(ids));
+        assertEquals(41 + THREADS * IDS_PER_THREAD, Collections.max(ids));
+        assertEquals(1, seedCalls.get());
+    }
+
+    @Test
+    @DisplayName("Block allocator should reserve consecutive ranges")
+    void blockAllocatorReservesRanges() throws SQLException {
+        // Given
+        BlockIdAllocator allocator = new BlockIdAllocator(() -> 0);
+
+        // When / Then
+        assertEquals(1, allocator.reserve(10));
+        assertEquals(11, allocator.nextId());
+        assertEquals(12, allocator.reserve(5));
+        assertEquals(17, allocator.nextId());
+        assertThrows(IllegalArgumentException.class, () -> allocator.reserve(0));
+    }
+
+    @Test
+    @DisplayName("Sequence allocators sharing one sequence should never collide")
+    void sequenceAllocatorsUnderContention() throws Exception {
+        // Given two processes, each with its own allocator over the same sequence
+        AtomicLong sequence = new AtomicLong(1);
+        AtomicInteger fetches = new AtomicInteger();
+        IdAllocator.Source nextval = () -> {
+            fetches.incrementAndGet();
+            return sequence.getAndIncrement();
+        };
+        SequenceIdAllocator first = new SequenceIdAllocator(nextval, 100);
+        SequenceIdAllocator second = new SequenceIdAllocator(nextval, 100);
+
+        // When
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ids.addAll(allocateConcurrently(first));
+        ids.addAll(allocateConcurrently(second));
+
+        // Then
+        assertEquals(2 * THREADS * IDS_PER_THREAD, ids.size());
+        assertEquals(2 * THREADS * IDS_PER_THREAD / 100, fetches.get());
+    }
+
+    private static Set<Integer> allocateConcurrently(IdAllocator allocator) throws Exception {
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        if (!ids.add(allocator.nextId())) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, duplicates.get());
+        return ids;
+    }
+}
@@ -0,0 +1,9 @@
+package org.example;
+
+class InMemoryMealRepositoryTest extends MealRepositoryContractTest {
+
+    @Override
+    protected MealRepository createRepository() {
+        return new InMemoryMealRepository();
+    }
+}
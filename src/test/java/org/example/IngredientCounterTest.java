@@ -0,0 +1,68 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngredientCounterTest {
+
+    @Test
+    @DisplayName("Should count the ingredients of meals by id")
+    void addMeal() {
+        // Given
+        IngredientDictionary dictionary = new IngredientDictionary();
+        IngredientCounter counter = new IngredientCounter(1);
+        Main.Meal pancakes = new Main.Meal("breakfast", "Pancakes", dictionary.internAll(Arrays.asList("Flour", "Eggs", "Milk")), dictionary);
+        Main.Meal omelette = new Main.Meal("breakfast", "Omelette", dictionary.internAll(Arrays.asList("Eggs", "Salt")), dictionary);
+
+        // When
+        for (int day = 0; day < 7; day++) {
+            counter.addMeal(pancakes);
+        }
+        counter.addMeal(omelette);
+
+        // Then
+        assertEquals(4, counter.size());
+        assertEquals(8, counter.get(dictionary.idOf("Eggs")));
+        assertEquals(0, counter.get(100));
+
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("Eggs", 8);
+        expected.put("Flour", 7);
+        expected.put("Milk", 7);
+        expected.put("Salt", 1);
+        assertEquals(expected, counter.toMap(dictionary));
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(counter.toMap(dictionary).keySet()));
+    }
+
+    @Test
+    @DisplayName("Should merge counters and clear only what was counted")
+    void addAllAndClear() {
+        // Given
+        IngredientCounter first = new IngredientCounter();
+        IngredientCounter second = new IngredientCounter();
+        first.add(3, 2);
+        second.add(3, 5);
+        second.increment(1000);
+
+        // When
+        first.addAll(second);
+
+        // Then
+        assertEquals(7, first.get(3));
+        assertEquals(1, first.get(1000));
+        List<Integer> ids = new ArrayList<>();
+        first.forEach((id, count) -> ids.add(id));
+        assertEquals(Arrays.asList(3, 1000), ids);
+
+        first.clear();
+        assertEquals(0, first.size());
+        assertEquals(0, first.get(3));
+        first.increment(3);
+        assertEquals(1, first.get(3));
+        assertThrows(IllegalArgumentException.class, () -> first.add(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> first.add(1, 0));
+    }
+}
@@ -0,0 +1,90 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngredientDictionaryTest {
+
+    @Test
+    @DisplayName("Should hand out dense ids and resolve them back")
+    void intern() {
+        // Given
+        IngredientDictionary dictionary = new IngredientDictionary();
+
+        // When
+        int flour = dictionary.intern("Flour");
+        int eggs = dictionary.intern("Eggs");
+        int flourAgain = dictionary.intern(new String("Flour"));
+
+        // Then
+        assertEquals(0, flour);
+        assertEquals(1, eggs);
+        assertEquals(flour, flourAgain);
+        assertEquals(2, dictionary.size());
+        assertEquals("Eggs", dictionary.name(eggs));
+        assertEquals(-1, dictionary.idOf("Milk"));
+        assertArrayEquals(new int[]{eggs, -1, flour}, dictionary.idsOf(Arrays.asList("Eggs", "Milk", "Flour")));
+        assertEquals(2, dictionary.size());
+        assertThrows(IllegalArgumentException.class, () -> dictionary.name(2));
+    }
+
+    @Test
+    @DisplayName("Should store meal ingredients as ids of one shared instance per name")
+    void mealIngredients() {
+        // Given
+        IngredientDictionary dictionary = new IngredientDictionary();
+        int[] ids = dictionary.internAll(Arrays.asList("Flour", "Eggs", "Flour"));
+        Main.Meal pancakes = new Main.Meal("breakfast", "Pancakes", ids, dictionary);
+        Main.Meal omelette = new Main.Meal("breakfast", "Omelette", dictionary.internAll(Collections.singletonList(new String("Eggs"))), dictionary);
+
+        // When
+        List<String> ingredients = pancakes.getIngredients();
+
+        // Then
+        assertArrayEquals(new int[]{0, 1, 0}, pancakes.getIngredientIds());
+        assertEquals(Arrays.asList("Flour", "Eggs", "Flour"), ingredients);
+        assertSame(ingredients.get(1), omelette.getIngredients().get(0));
+        assertThrows(UnsupportedOperationException.class, () -> ingredients.add("Milk"));
+    }
+
+    @Test
+    @DisplayName("Should give every name exactly one id under concurrent interning")
+    void concurrentIntern() throws Exception {
+        // Given
+        IngredientDictionary dictionary = new IngredientDictionary();
+        int threads = 8;
+        int names = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> results = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                int[] ids = new int[names];
+                for (int i = 0; i < names; i++) {
+                    ids[i] = dictionary.intern("ingredient " + i);
+                }
+                return ids;
+            }));
+        }
+        start.countDown();
+
+        // Then
+        int[] first = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<int[]> result : results) {
+            assertArrayEquals(first, result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(names, dictionary.size());
+        for (int i = 0; i < names; i++) {
+            assertEquals("ingredient " + i, dictionary.name(first[i]));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputValidatorTest {
+
+    @Test
+    @DisplayName("Should accept exactly what the letters-and-spaces pattern accepts")
+    void lettersAndSpaces() {
+        // Given
+        List<String> inputs = Arrays.asList("Pancakes", "french toast", " eggs", " ", "", "eggs2", "cr\u00eape", "a-b", "\t", "Z");
+
+        // When / Then
+        for (String input : inputs) {
+            assertEquals(input.matches("[a-zA-Z ]+"), InputValidator.isValidName(input), input);
+            assertEquals(input.matches("[a-zA-Z ]+"), InputValidator.isValidIngredient(input), input);
+        }
+    }
+
+    @Test
+    @DisplayName("Should trim and case fold categories to their canonical form")
+    void normalizeCategory() {
+        // When / Then
+        assertEquals("breakfast", InputValidator.normalizeCategory("Breakfast"));
+        assertEquals("lunch", InputValidator.normalizeCategory("  LUNCH\t"));
+        assertEquals("dinner", InputValidator.normalizeCategory("dinner"));
+        assertNull(InputValidator.normalizeCategory("brunch"));
+        assertNull(InputValidator.normalizeCategory("lunc"));
+        assertNull(InputValidator.normalizeCategory(""));
+        assertNull(InputValidator.normalizeCategory(null));
+        assertTrue(InputValidator.isValidCategory(" Dinner "));
+    }
+
+    @Test
+    @DisplayName("Should validate a whole ingredient list and report every invalid item")
+    void validateIngredients() {
+        // When
+        InputValidator.IngredientList valid = InputValidator.validateIngredients("flour,eggs, milk,");
+        InputValidator.IngredientList invalid = InputValidator.validateIngredients("flour,,eggs2,milk,b4con");
+        InputValidator.IngredientList empty = InputValidator.validateIngredients("");
+
+        // Then
+        assertTrue(valid.isValid());
+        assertEquals(Arrays.asList("flour", "eggs", " milk"), valid.getIngredients());
+        assertEquals(Arrays.asList("flour", "eggs", " milk"), Arrays.asList("flour,eggs, milk,".split(",")));
+
+        assertFalse(invalid.isValid());
+        assertEquals(Arrays.asList("flour", "milk"), invalid.getIngredients());
+        assertEquals(Arrays.asList(
+                "Ingredient 2 '': empty",
+                "Ingredient 3 'eggs2': unexpected '2' at 5, use letters only",
+                "Ingredient 5 'b4con': unexpected '4' at 2, use letters only"), invalid.getErrors());
+
+        assertFalse(empty.isValid());
+        assertEquals(Collections.singletonList("Ingredient 1 '': empty"), empty.getErrors());
+    }
+}
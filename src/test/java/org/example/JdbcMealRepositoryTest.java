@@ -0,0 +1,159 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the contract against real SQL: DatabaseManager on an embedded H2 in PostgreSQL mode
+class JdbcMealRepositoryTest extends MealRepositoryContractTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final String OPTIONS = ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;NON_KEYWORDS=DAY";
+
+    private Connection connection;
+    private final List<AutoCloseable> pools = new ArrayList<>();
+
+    @Override
+    protected MealRepository createRepository() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:contract" + DATABASES.incrementAndGet() + OPTIONS, "sa", "");
+        return new DatabaseManager(connection);
+    }
+
+    // a second in-memory database shared by every connection of the returned pool
+    private ConnectionPool sharedDatabase() {
+        ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:shared" + DATABASES.incrementAndGet() + OPTIONS + ";DB_CLOSE_DELAY=-1", "sa", "");
+        pools.add(pool);
+        return pool;
+    }
+
+    @AfterEach
+    void closeConnection() throws Exception {
+        connection.close();
+        for (AutoCloseable pool : pools) {
+            pool.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep the shopping list equal to the plan when one week is saved concurrently")
+    void concurrentSavesOfOneWeek() throws Exception {
+        // Given
+        DatabaseManager db = new DatabaseManager(sharedDatabase());
+        db.initializeDatabase();
+        List<String> meals = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            meals.add("Meal " + i);
+            db.addMeal("lunch", "Meal " + i, Arrays.asList("Salt", "Item " + i, "Item " + (i + 1)));
+        }
+
+        // When: every thread starts on the empty week, so the first saves all insert
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Future<?>> saves = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            saves.add(executor.submit(() -> {
+                start.await();
+                for (int round = 0; round < 15; round++) {
+                    Map<String, String> plan = new HashMap<>();
+                    for (String day : MealRepository.DAYS_OF_WEEK) {
+                        plan.put(day, meals.get(random.nextInt(meals.size())));
+                    }
+                    db.savePlanToDatabase(1, 1, plan, plan, plan);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> save : saves) {
+            save.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(21, db.getPlannedMeals(1, 1).values().stream().mapToInt(Map::size).sum());
+        assertEquals(recount(db, 1, 1), db.getShoppingList(1, 1));
+        assertEquals(Integer.valueOf(21), db.getShoppingList(1, 1).get("Salt"));
+    }
+
+    @Test
+    @DisplayName("Should hand out unique meal ids to two processes adding meals at once")
+    void concurrentAddsFromTwoManagers() throws Exception {
+        // Given a sequence left behind by meals inserted without it
+        ConnectionPool pool = sharedDatabase();
+        DatabaseManager seed = new DatabaseManager(pool);
+        seed.initializeDatabase();
+        try (Connection raw = pool.getConnection()) {
+            raw.createStatement().executeUpdate("CREATE SEQUENCE meal_id_seq START WITH 1");
+        }
+        for (int i = 0; i < 250; i++) {
+            seed.addMeal("lunch", "Seed " + i, Collections.singletonList("Salt"));
+        }
+        DatabaseManager first = new DatabaseManager(pool);
+        DatabaseManager second = new DatabaseManager(pool);
+        first.useSequenceIds();
+        second.useSequenceIds();
+
+        // When
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Future<List<Integer>>> adds = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            DatabaseManager db = t % 2 == 0 ? first : second;
+            String prefix = "Thread " + t + " meal ";
+            adds.add(executor.submit(() -> {
+                start.await();
+                List<Integer> ids = new ArrayList<>();
+                for (int i = 0; i < 150; i++) {
+                    ids.add(db.addMeal("dinner", prefix + i, Arrays.asList("Salt", prefix + i)));
+                }
+                return ids;
+            }));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Future<List<Integer>> add : adds) {
+            ids.addAll(add.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // Then: every insert succeeded with its own id, above the ones already taken
+        assertEquals(threads * 150, ids.size());
+        assertTrue(Collections.min(ids) >= 250);
+        assertEquals(threads * 150, first.getMealsByCategory("dinner").size());
+        assertEquals(250, second.getMealsByCategory("lunch").size());
+    }
+
+    @Test
+    @DisplayName("Should tell listeners about meals added in a caller's transaction only after it commits")
+    void listenersHearOfCommittedMealsOnly() throws SQLException {
+        // Given
+        DatabaseManager db = (DatabaseManager) createRepository();
+        db.initializeDatabase();
+        List<String> heard = new ArrayList<>();
+        db.addMealListener((meals, mealIds) -> meals.forEach(meal -> heard.add(meal.getName())));
+        connection.setAutoCommit(false);
+
+        // When
+        db.addMeal("lunch", "Rolled back", Collections.singletonList("Salt"));
+        List<String> beforeRollback = new ArrayList<>(heard);
+        db.rollback();
+        db.addMeal("lunch", "Committed", Collections.singletonList("Salt"));
+        List<String> beforeCommit = new ArrayList<>(heard);
+        db.commit();
+
+        // Then
+        assertTrue(beforeRollback.isEmpty());
+        assertTrue(beforeCommit.isEmpty());
+        assertEquals(Collections.singletonList("Committed"), heard);
+        assertEquals(1, db.getMealsByCategory("lunch").size());
+    }
+}
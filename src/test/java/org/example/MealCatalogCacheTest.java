@@ -0,0 +1,196 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class MealCatalogCacheTest {
+
+    private DatabaseManager mockDatabaseManager;
+    private MealCatalogCache cache;
+
+    @BeforeEach
+    void setUp() {
+        mockDatabaseManager = mock(DatabaseManager.class);
+        cache = new MealCatalogCache(mockDatabaseManager, 8);
+    }
+
+    @Test
+    @DisplayName("Should load meals by category once and serve repeats from memory")
+    void getMealsByCategory() throws SQLException {
+        // Given
+        List<Main.Meal> meals = Collections.singletonList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs")));
+        given(mockDatabaseManager.getMealsByCategory("breakfast")).willReturn(new ArrayList<>(meals));
+
+        // When
+        List<Main.Meal> first = cache.getMealsByCategory("breakfast");
+        List<Main.Meal> second = cache.getMealsByCategory("breakfast");
+
+        // Then
+        assertSame(first, second);
+        assertEquals("Pancakes", second.get(0).getName());
+        assertThrows(UnsupportedOperationException.class, () -> second.add(null));
+        then(mockDatabaseManager).should(times(1)).getMealsByCategory("breakfast");
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("Should cache meal ids and ingredients")
+    void getMealIdAndIngredients() throws SQLException {
+        // Given
+        given(mockDatabaseManager.getMealId("Pancakes")).willReturn(7);
+        given(mockDatabaseManager.getIngredientsForMeal(7)).willReturn(Arrays.asList("Flour", "Eggs"));
+
+        // When
+        for (int i = 0; i < 21; i++) {
+            int mealId = cache.getMealId("Pancakes");
+            assertEquals(Arrays.asList("Flour", "Eggs"), cache.getIngredientsForMeal(mealId));
+        }
+
+        // Then
+        then(mockDatabaseManager).should(times(1)).getMealId("Pancakes");
+        then(mockDatabaseManager).should(times(1)).getIngredientsForMeal(7);
+        assertEquals(40, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("Should invalidate the affected category and name when a meal is added")
+    void addMealInvalidates() throws SQLException {
+        // Given
+        given(mockDatabaseManager.getMealsByCategory("breakfast")).willReturn(new ArrayList<>());
+        given(mockDatabaseManager.getMealsByCategory("lunch")).willReturn(new ArrayList<>());
+        given(mockDatabaseManager.getMealId("Omelette")).willReturn(-1, 3);
+        given(mockDatabaseManager.addMeal(anyString(), anyString(), anyList())).willReturn(3);
+
+        cache.getMealsByCategory("breakfast");
+        cache.getMealsByCategory("lunch");
+        assertEquals(-1, cache.getMealId("Omelette"));
+
+        // When
+        int mealId = cache.addMeal("Breakfast", "Omelette", Collections.singletonList("Eggs"));
+
+        // Then
+        assertEquals(3, mealId);
+        assertEquals(3, cache.getMealId("Omelette"));
+        cache.getMealsByCategory("breakfast");
+        cache.getMealsByCategory("lunch");
+        then(mockDatabaseManager).should(times(2)).getMealsByCategory("breakfast");
+        then(mockDatabaseManager).should(times(1)).getMealsByCategory("lunch");
+    }
+
+    @Test
+    @DisplayName("Should invalidate what meals committed through the repository affect")
+    void listensForAddedMeals() throws SQLException {
+        // Given
+        given(mockDatabaseManager.getMealsByCategory("dinner")).willReturn(new ArrayList<>());
+        given(mockDatabaseManager.getMealId("Stew")).willReturn(-1, 4);
+        cache.getMealsByCategory("dinner");
+        cache.getMealId("Stew");
+
+        // When
+        cache.mealsAdded(Collections.singletonList(new Main.Meal("dinner", "Stew", Collections.singletonList("Beans"))), new int[]{4});
+
+        // Then
+        then(mockDatabaseManager).should().addMealListener(cache);
+        assertEquals(4, cache.getMealId("Stew"));
+        cache.getMealsByCategory("dinner");
+        then(mockDatabaseManager).should(times(2)).getMealsByCategory("dinner");
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently used entry when full")
+    void evictsLeastRecentlyUsed() throws SQLException {
+        // Given a cache holding two meals
+        MealCatalogCache small = new MealCatalogCache(mockDatabaseManager, 2);
+        given(mockDatabaseManager.getMealId(anyString())).willReturn(1);
+        small.getMealId("Pancakes");
+        small.getMealId("Salad");
+        small.getMealId("Pancakes");
+
+        // When
+        small.getMealId("Pasta");
+        small.getMealId("Pancakes");
+        small.getMealId("Salad");
+
+        // Then
+        then(mockDatabaseManager).should(times(1)).getMealId("Pancakes");
+        then(mockDatabaseManager).should(times(2)).getMealId("Salad");
+        assertEquals(2, small.size());
+    }
+
+    @Test
+    @DisplayName("Should bound the cache by the meals it holds, not by its entries")
+    void boundsByMeals() throws SQLException {
+        // Given
+        given(mockDatabaseManager.getMealsByCategory(anyString())).willAnswer(invocation -> {
+            List<Main.Meal> meals = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                meals.add(new Main.Meal(invocation.getArgument(0), "Meal " + i, Collections.singletonList("Salt")));
+            }
+            return meals;
+        });
+        given(mockDatabaseManager.getMealsByCategoryAlphabetical("lunch")).willReturn(Collections.nCopies(9,
+                new Main.Meal("lunch", "Soup", Collections.singletonList("Water"))));
+
+        // When
+        cache.getMealsByCategory("breakfast");
+        cache.getMealsByCategory("lunch");
+        cache.getMealsByCategory("breakfast");
+        cache.getMealsByCategory("dinner");
+        cache.getMealsByCategoryAlphabetical("lunch");
+        cache.getMealsByCategoryAlphabetical("lunch");
+
+        // Then: the third listing pushed out the least recently used one, the nine meals never fit
+        assertEquals(6, cache.getCachedMeals());
+        cache.getMealsByCategory("breakfast");
+        then(mockDatabaseManager).should(times(1)).getMealsByCategory("breakfast");
+        cache.getMealsByCategory("lunch");
+        then(mockDatabaseManager).should(times(2)).getMealsByCategory("lunch");
+        then(mockDatabaseManager).should(times(2)).getMealsByCategoryAlphabetical("lunch");
+    }
+
+    @Test
+    @DisplayName("Should keep its meal count right under concurrent loads and invalidations")
+    void concurrentUse() throws Exception {
+        // Given
+        given(mockDatabaseManager.getMealId(anyString())).willReturn(1);
+        given(mockDatabaseManager.getMealsByCategory(anyString())).willReturn(Collections.singletonList(
+                new Main.Meal("lunch", "Soup", Collections.singletonList("Water"))));
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 5_000; i++) {
+                    String name = "Meal " + random.nextInt(20);
+                    cache.getMealId(name);
+                    cache.getMealsByCategory(random.nextBoolean() ? "lunch" : "dinner");
+                    if (random.nextInt(10) == 0) {
+                        cache.invalidate("lunch", name);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then
+        assertTrue(cache.getCachedMeals() <= 8, "cached " + cache.getCachedMeals());
+        assertEquals(cache.size(), cache.getCachedMeals());
+    }
+}
@@ -0,0 +1,65 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MealImportTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Should import every meal of a file and print progress per chunk")
+    void importFile() throws SQLException, IOException {
+        // Given
+        List<String> lines = new ArrayList<>();
+        lines.add("# generated");
+        for (int i = 0; i < 2500; i++) {
+            lines.add(" Lunch ; Meal " + (char) ('a' + i % 26) + " ; Salt,Water");
+        }
+        Path file = dir.resolve("meals.txt");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        MealRepository repository = new InMemoryMealRepository();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // When
+        int[] mealIds = new MealImport(repository, new PrintStream(output, true)).importFile(file);
+
+        // Then
+        assertEquals(2500, mealIds.length);
+        assertEquals(2500, repository.getMealsByCategory("lunch").size());
+        assertEquals(Arrays.asList("Salt", "Water"), repository.getMealsByCategory("lunch").get(0).getIngredients());
+        String printed = output.toString();
+        assertEquals(3, printed.split("rows/s", -1).length - 1);
+        assertTrue(printed.contains("2,500 meals, 7,500 rows"));
+        assertTrue(printed.contains("Imported 2500 meals"));
+    }
+
+    @Test
+    @DisplayName("Should reject a file with an invalid line before writing any meal")
+    void rejectsInvalidLine() throws IOException, SQLException {
+        // Given
+        Path file = dir.resolve("meals.txt");
+        Files.write(file, Arrays.asList("lunch;Soup;Water", "", "brunch;Waffles;Flour"), StandardCharsets.UTF_8);
+        MealRepository repository = new InMemoryMealRepository();
+
+        // When
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new MealImport(repository, new PrintStream(new ByteArrayOutputStream())).importFile(file));
+
+        // Then
+        assertEquals("Line 3: Wrong meal category: brunch", e.getMessage());
+        assertTrue(repository.getMealsByCategory("lunch").isEmpty());
+    }
+}
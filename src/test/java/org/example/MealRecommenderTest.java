@@ -0,0 +1,156 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MealRecommenderTest {
+
+    private MealRecommender recommender;
+
+    @BeforeEach
+    void setUp() {
+        recommender = new MealRecommender();
+        recommender.add(new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs", "Milk", "Sugar")));
+        recommender.add(new Main.Meal("breakfast", "Crepes", Arrays.asList("Flour", "Eggs", "Milk", "Butter")));
+        recommender.add(new Main.Meal("breakfast", "Porridge", Arrays.asList("Oats", "Water", "Honey")));
+        recommender.add(new Main.Meal("breakfast", "Omelette", Arrays.asList("Eggs", "Salt", "Pepper")));
+        recommender.add(new Main.Meal("lunch", "Waffles", Arrays.asList("Flour", "Eggs", "Milk", "Sugar")));
+    }
+
+    @Test
+    @DisplayName("Should rank meals by ingredient overlap with the plan and skip planned meals")
+    void recommend() {
+        // Given
+        List<Main.Meal> planned = Collections.singletonList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs", "Milk", "Sugar")));
+
+        // When
+        List<MealRecommender.Suggestion> suggestions = recommender.recommend("Breakfast", planned, 3);
+
+        // Then: the meals sharing little may or may not land in a bucket with Pancakes, so only
+        // the closest one has a fixed place
+        assertEquals("Crepes", suggestions.get(0).getMeal().getName());
+        assertEquals(new HashSet<>(Arrays.asList("Crepes", "Omelette", "Porridge")), new HashSet<>(names(suggestions)));
+        MealRecommender.Suggestion crepes = suggestions.get(0);
+        assertTrue(crepes.getSimilarity() > 0.3 && crepes.getSimilarity() < 0.9, "similarity " + crepes.getSimilarity());
+        Map<String, Integer> newIngredients = new HashMap<>();
+        for (MealRecommender.Suggestion suggestion : suggestions) {
+            newIngredients.put(suggestion.getMeal().getName(), suggestion.getNewIngredients());
+        }
+        assertEquals(Integer.valueOf(1), newIngredients.get("Crepes"));
+        assertEquals(Integer.valueOf(2), newIngredients.get("Omelette"));
+        assertEquals(Integer.valueOf(3), newIngredients.get("Porridge"));
+        assertTrue(recommender.recommend("brunch", planned, 3).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> recommender.recommend("breakfast", planned, 0));
+    }
+
+    @Test
+    @DisplayName("Should fall back to the category in the order it was added while nothing is planned")
+    void recommendWithoutPlan() {
+        // When
+        List<MealRecommender.Suggestion> suggestions = recommender.recommend("breakfast", Collections.emptyList(), 2);
+
+        // Then
+        assertEquals(Arrays.asList("Pancakes", "Crepes"), names(suggestions));
+        assertEquals(0, suggestions.get(0).getSimilarity());
+        assertEquals(4, suggestions.get(0).getNewIngredients());
+    }
+
+    @Test
+    @DisplayName("Should estimate the Jaccard similarity of ingredient sets from signatures")
+    void signatures() {
+        // Given
+        Random random = new Random(3);
+        int[] a = new int[MealRecommender.SIGNATURE_SIZE];
+        int[] b = new int[MealRecommender.SIGNATURE_SIZE];
+        double worstError = 0;
+
+        for (int round = 0; round < 200; round++) {
+            Set<Integer> first = new HashSet<>();
+            Set<Integer> second = new HashSet<>();
+            while (first.size() < 20) {
+                first.add(random.nextInt(60));
+            }
+            while (second.size() < 20) {
+                second.add(random.nextInt(60));
+            }
+            Set<Integer> union = new HashSet<>(first);
+            union.addAll(second);
+            Set<Integer> intersection = new HashSet<>(first);
+            intersection.retainAll(second);
+
+            // When
+            MealRecommender.signature(toArray(first), a);
+            MealRecommender.signature(toArray(second), b);
+            double estimate = (double) MealRecommender.matches(a, 0, b) / MealRecommender.SIGNATURE_SIZE;
+
+            // Then
+            worstError = Math.max(worstError, Math.abs(estimate - (double) intersection.size() / union.size()));
+        }
+        // one standard deviation is at most 0.065 with 60 hashes
+        assertTrue(worstError < 0.3, "worst error " + worstError);
+        MealRecommender.signature(new int[]{4, 8, 15}, a);
+        MealRecommender.signature(new int[]{15, 8, 4, 4}, b);
+        assertEquals(MealRecommender.SIGNATURE_SIZE, MealRecommender.matches(a, 0, b));
+    }
+
+    @Test
+    @DisplayName("Should only look up the ingredients of planned meals from another dictionary")
+    void recommendDoesNotInternPlannedIngredients() {
+        // Given
+        IngredientDictionary other = new IngredientDictionary();
+        String unknown = "Ingredient no meal uses " + System.nanoTime();
+        Main.Meal planned = new Main.Meal("breakfast", "Pancakes",
+                other.internAll(Arrays.asList("Flour", "Eggs", "Milk", "Sugar", unknown)), other);
+        int sharedSize = IngredientDictionary.shared().size();
+
+        // When
+        List<MealRecommender.Suggestion> suggestions = recommender.recommend("breakfast", Collections.singletonList(planned), 3);
+
+        // Then
+        assertEquals(sharedSize, IngredientDictionary.shared().size());
+        assertEquals(-1, IngredientDictionary.shared().idOf(unknown));
+        assertEquals("Crepes", suggestions.get(0).getMeal().getName());
+        assertEquals(1, suggestions.get(0).getNewIngredients());
+    }
+
+    @Test
+    @DisplayName("Should pick up meals added through the repository")
+    void buildAndFollowAddMeals() throws SQLException {
+        // Given
+        MealRepository repository = new InMemoryMealRepository();
+        repository.addMeal("dinner", "Pasta", Arrays.asList("Pasta", "Tomato", "Basil"));
+
+        // When
+        MealRecommender built = MealRecommender.build(repository);
+        repository.addMeal("dinner", "Lasagne", Arrays.asList("Pasta", "Tomato", "Cheese"));
+        List<MealRecommender.Suggestion> suggestions = built.recommend("dinner",
+                repository.getMealsByCategory("dinner").subList(0, 1), 5);
+
+        // Then
+        assertEquals(2, built.size());
+        assertEquals(Collections.singletonList("Lasagne"), names(suggestions));
+        assertEquals(1, suggestions.get(0).getNewIngredients());
+    }
+
+    private static int[] toArray(Set<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
+    private static List<String> names(List<MealRecommender.Suggestion> suggestions) {
+        List<String> names = new ArrayList<>();
+        for (MealRecommender.Suggestion suggestion : suggestions) {
+            names.add(suggestion.getMeal().getName());
+        }
+        return names;
+    }
+}
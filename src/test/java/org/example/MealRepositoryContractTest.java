@@ -0,0 +1,302 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// behaviour every MealRepository must share; each backend runs it through its own subclass
+abstract class MealRepositoryContractTest {
+
+    protected MealRepository repository;
+
+    protected abstract MealRepository createRepository() throws SQLException;
+
+    @BeforeEach
+    void setUpRepository() throws SQLException {
+        repository = createRepository();
+        repository.initializeDatabase();
+    }
+
+    @Test
+    @DisplayName("Should store meals and read them back by category, name and id")
+    void meals() throws SQLException {
+        // Given
+        int[] ids = repository.addMeals(Arrays.asList(
+                new Main.Meal("lunch", "Soup", Arrays.asList("Water", "Salt")),
+                new Main.Meal("dinner", "Pasta", Arrays.asList("Pasta", "Tomato")),
+                new Main.Meal("Lunch", "Salad", Arrays.asList("Lettuce", "Tomato"))));
+
+        // When
+        List<Main.Meal> added = repository.getMealsByCategory("lunch");
+        List<Main.Meal> alphabetical = repository.getMealsByCategoryAlphabetical("lunch");
+
+        // Then
+        assertEquals(3, new HashSet<>(Arrays.asList(ids[0], ids[1], ids[2])).size());
+        assertEquals(3, repository.countMeals());
+        assertEquals(Arrays.asList("Soup", "Salad"), names(added));
+        assertEquals(Arrays.asList("Water", "Salt"), added.get(0).getIngredients());
+        assertEquals("lunch", added.get(1).getCategory());
+        assertEquals(Arrays.asList("Salad", "Soup"), names(alphabetical));
+        assertTrue(repository.getMealsByCategory("LUNCH").isEmpty());
+        assertTrue(repository.getMealsByCategory("breakfast").isEmpty());
+
+        assertEquals(ids[1], repository.getMealId("Pasta"));
+        assertEquals(-1, repository.getMealId("Pizza"));
+        assertEquals(Arrays.asList("Lettuce", "Tomato"), repository.getIngredientsForMeal(ids[2]));
+        assertTrue(repository.getIngredientsForMeal(-5).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should page and stream a category in both orders like the full listings")
+    void pagesAndStreams() throws SQLException, IOException {
+        // Given: names repeat, so the alphabetical key needs the id to break ties
+        List<Main.Meal> meals = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            meals.add(new Main.Meal("dinner", "Stew " + (i % 3), Collections.singletonList("Beans " + i)));
+        }
+        meals.add(new Main.Meal("lunch", "Soup", Collections.singletonList("Water")));
+        repository.addMeals(meals);
+
+        for (MealRepository.MealOrder order : MealRepository.MealOrder.values()) {
+            List<Main.Meal> expected = order == MealRepository.MealOrder.ALPHABETICAL
+                    ? repository.getMealsByCategoryAlphabetical("dinner")
+                    : repository.getMealsByCategory("dinner");
+
+            // When
+            List<Main.Meal> paged = new ArrayList<>();
+            List<Integer> pagedIds = new ArrayList<>();
+            int pages = 0;
+            MealPage page = null;
+            do {
+                page = repository.getMealsByCategoryPage("dinner", order, page, 3);
+                paged.addAll(page.getMeals());
+                for (int mealId : page.getMealIds()) {
+                    pagedIds.add(mealId);
+                }
+                pages++;
+            } while (page.hasMore());
+            List<Main.Meal> streamed = new ArrayList<>();
+            repository.forEachMealInCategory("dinner", order, streamed::add);
+
+            // Then
+            assertEquals(7, expected.size());
+            assertEquals(names(expected), names(paged), order.name());
+            assertEquals(ingredients(expected), ingredients(paged), order.name());
+            assertEquals(3, pages);
+            assertEquals("dinner", paged.get(6).getCategory());
+            for (int i = 0; i < paged.size(); i++) {
+                assertEquals(repository.getIngredientsForMeal(pagedIds.get(i)), paged.get(i).getIngredients(), order.name());
+            }
+            assertEquals(names(expected), names(streamed), order.name());
+            assertEquals(ingredients(expected), ingredients(streamed), order.name());
+        }
+        MealPage empty = repository.getMealsByCategoryPage("breakfast", MealRepository.MealOrder.ADDED, null, 3);
+        assertTrue(empty.getMeals().isEmpty());
+        assertFalse(empty.hasMore());
+    }
+
+    @Test
+    @DisplayName("Should report every chunk of an import to listeners and progress")
+    void importChunks() throws SQLException {
+        // Given
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<Integer> progress = new ArrayList<>();
+        MealRepository.MealListener listener = (meals, mealIds) -> {
+            assertEquals(meals.size(), mealIds.length);
+            chunkSizes.add(meals.size());
+        };
+        repository.addMealListener(listener);
+        List<Main.Meal> meals = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            meals.add(new Main.Meal("breakfast", "Meal " + i, Collections.singletonList("Oats")));
+        }
+
+        // When
+        repository.addMeals(meals, 2, (imported, rows, rate) -> progress.add(imported));
+        repository.removeMealListener(listener);
+        repository.addMeal("breakfast", "Toast", Collections.singletonList("Bread"));
+
+        // Then
+        assertEquals(Arrays.asList(2, 2, 1), chunkSizes);
+        assertEquals(Arrays.asList(2, 4, 5), progress);
+        assertEquals(6, repository.getMealsByCategory("breakfast").size());
+        assertThrows(IllegalArgumentException.class, () -> repository.addMeals(meals, 0, null));
+    }
+
+    @Test
+    @DisplayName("Should save, update and delete one user's week")
+    void plans() throws SQLException {
+        // Given
+        repository.addMeals(Arrays.asList(
+                new Main.Meal("breakfast", "Porridge", Collections.singletonList("Oats")),
+                new Main.Meal("lunch", "Soup", Collections.singletonList("Water")),
+                new Main.Meal("dinner", "Pasta", Collections.singletonList("Pasta"))));
+
+        // When
+        repository.savePlanToDatabase(3, 1, week("Porridge"), week("Soup"), week("Pasta"));
+        repository.savePlanToDatabase(3, 1, Collections.singletonMap("Friday", "Soup"),
+                Collections.emptyMap(), Collections.emptyMap());
+
+        // Then
+        Map<String, Map<String, String>> plan = repository.getPlannedMeals(3, 1);
+        // days come in no particular order, callers walk DAYS_OF_WEEK
+        assertEquals(new HashSet<>(Arrays.asList(MealRepository.DAYS_OF_WEEK)), plan.keySet());
+        assertEquals("Soup", plan.get("Friday").get("breakfast"));
+        assertEquals("Porridge", plan.get("Monday").get("breakfast"));
+        assertEquals("Pasta", plan.get("Sunday").get("dinner"));
+        assertTrue(repository.hasPlan(3, 1));
+        assertFalse(repository.hasPlan());
+        assertTrue(repository.getPlannedMeals(3, 2).isEmpty());
+
+        repository.deleteOldPlan(3, 1);
+        assertFalse(repository.hasPlan(3, 1));
+        assertTrue(repository.getPlannedMeals(3, 1).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should count the ingredients of the planned meals in either order")
+    void shoppingList() throws Exception {
+        // Given
+        repository.addMeals(Arrays.asList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs", "Milk")),
+                new Main.Meal("lunch", "Omelette", Arrays.asList("Eggs", "Salt")),
+                new Main.Meal("dinner", "Bread", Collections.singletonList("Flour"))));
+        repository.savePlanToDatabase(week("Pancakes"), week("Omelette"), week("Bread"));
+
+        // When
+        Map<String, Integer> alphabetical = repository.getShoppingList();
+        List<String> byCount = new ArrayList<>();
+        repository.forEachShoppingListRow(MealRepository.ShoppingListOrder.BY_COUNT,
+                (ingredient, count) -> byCount.add(ingredient + "=" + count));
+
+        // Then
+        assertEquals(Arrays.asList("Eggs", "Flour", "Milk", "Salt"), new ArrayList<>(alphabetical.keySet()));
+        assertEquals(Integer.valueOf(14), alphabetical.get("Eggs"));
+        assertEquals(Integer.valueOf(7), alphabetical.get("Salt"));
+        assertEquals(Arrays.asList("Eggs=14", "Flour=14", "Milk=7", "Salt=7"), byCount);
+        assertTrue(repository.getShoppingList(1, 0).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should keep the shopping list in step with changed and deleted slots")
+    void shoppingListFollowsPlanChanges() throws SQLException {
+        // Given
+        repository.addMeals(Arrays.asList(
+                new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs", "Milk")),
+                new Main.Meal("breakfast", "Porridge", Arrays.asList("Oats", "Milk")),
+                new Main.Meal("lunch", "Omelette", Arrays.asList("Eggs", "Salt"))));
+        Map<String, String> mixed = week("Pancakes");
+        mixed.put("Wednesday", "Porridge");
+        mixed.put("Thursday", "Unknown");
+
+        // When / Then
+        repository.savePlanToDatabase(5, 2, week("Pancakes"), week("Omelette"), Collections.emptyMap());
+        assertEquals(recount(5, 2), repository.getShoppingList(5, 2));
+        repository.savePlanToDatabase(5, 2, mixed, Collections.singletonMap("Friday", "Porridge"), Collections.emptyMap());
+        assertEquals(recount(5, 2), repository.getShoppingList(5, 2));
+        assertEquals(Integer.valueOf(7), repository.getShoppingList(5, 2).get("Milk"));
+        repository.savePlanToDatabase(5, 2, week("Porridge"), week("Porridge"), Collections.emptyMap());
+        assertEquals(recount(5, 2), repository.getShoppingList(5, 2));
+        assertFalse(repository.getShoppingList(5, 2).containsKey("Eggs"));
+        assertTrue(repository.getShoppingList(5, 3).isEmpty());
+
+        repository.deleteOldPlan(5, 2);
+        assertTrue(repository.getShoppingList(5, 2).isEmpty());
+    }
+
+    // the shopping list counted from the planned meals one by one
+    private Map<String, Integer> recount(int userId, int week) throws SQLException {
+        return recount(repository, userId, week);
+    }
+
+    static Map<String, Integer> recount(MealRepository repository, int userId, int week) throws SQLException {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Map<String, String> day : repository.getPlannedMeals(userId, week).values()) {
+            for (String meal : day.values()) {
+                int mealId = repository.getMealId(meal);
+                for (String ingredient : mealId > 0 ? repository.getIngredientsForMeal(mealId) : Collections.<String>emptyList()) {
+                    counts.merge(ingredient, 1, Integer::sum);
+                }
+            }
+        }
+        return new LinkedHashMap<>(counts);
+    }
+
+    @Test
+    @DisplayName("Should log every changed plan slot and replay the log in order")
+    void planChanges() throws SQLException {
+        // Given
+        int[] ids = repository.addMeals(Arrays.asList(
+                new Main.Meal("breakfast", "Porridge", Collections.singletonList("Oats")),
+                new Main.Meal("lunch", "Soup", Collections.singletonList("Water"))));
+        PlanChangeFeed feed = new PlanChangeFeed(repository, 0, 4);
+        Map<String, String> replayed = new HashMap<>();
+        PlanChangeFeed.Handler replay = change -> {
+            String slot = change.getUserId() + "/" + change.getWeek() + "/" + change.getDay() + "/" + change.getCategory();
+            assertEquals(replayed.get(slot), change.getOldMeal());
+            if (change.getNewMeal() == null) {
+                replayed.remove(slot);
+            } else {
+                replayed.put(slot, change.getNewMeal());
+            }
+        };
+
+        // When
+        repository.savePlanToDatabase(2, 0, week("Porridge"), Collections.emptyMap(), Collections.emptyMap());
+        int first = feed.poll(replay);
+        repository.savePlanToDatabase(2, 0, week("Porridge"), Collections.singletonMap("Monday", "Soup"), Collections.emptyMap());
+        repository.savePlanToDatabase(2, 0, Collections.singletonMap("Monday", "Soup"), Collections.emptyMap(), Collections.emptyMap());
+        int second = feed.poll(replay);
+        List<PlanChange> latest = repository.getPlanChangesSince(feed.getPosition() - 2, 10);
+        repository.deleteOldPlan(2, 0);
+        int third = feed.poll(replay);
+
+        // Then
+        assertEquals(7, first);
+        // unchanged breakfasts are not logged again
+        assertEquals(2, second);
+        assertEquals(8, third);
+        assertTrue(replayed.isEmpty());
+        assertEquals(0, feed.poll(replay));
+
+        PlanChange lunch = latest.get(0);
+        assertEquals("Monday", lunch.getDay());
+        assertEquals("lunch", lunch.getCategory());
+        assertEquals(PlanChange.NO_MEAL, lunch.getOldMealId());
+        assertNull(lunch.getOldMeal());
+        assertEquals(ids[1], lunch.getNewMealId());
+        PlanChange breakfast = latest.get(1);
+        assertEquals(ids[0], breakfast.getOldMealId());
+        assertEquals(ids[1], breakfast.getNewMealId());
+        assertTrue(breakfast.getSequence() > lunch.getSequence());
+        assertEquals(2, latest.size());
+    }
+
+    private static Map<String, String> week(String meal) {
+        Map<String, String> plan = new LinkedHashMap<>();
+        for (String day : MealRepository.DAYS_OF_WEEK) {
+            plan.put(day, meal);
+        }
+        return plan;
+    }
+
+    private static List<String> names(List<Main.Meal> meals) {
+        List<String> names = new ArrayList<>();
+        for (Main.Meal meal : meals) {
+            names.add(meal.getName());
+        }
+        return names;
+    }
+
+    private static List<List<String>> ingredients(List<Main.Meal> meals) {
+        List<List<String>> ingredients = new ArrayList<>();
+        for (Main.Meal meal : meals) {
+            ingredients.add(meal.getIngredients());
+        }
+        return ingredients;
+    }
+}
@@ -0,0 +1,143 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class MealSearchIndexTest {
+
+    private MealSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new MealSearchIndex();
+        index.add(new Main.Meal("breakfast", "Pancakes", Arrays.asList("Flour", "Eggs", "Milk")));
+        index.add(new Main.Meal("breakfast", "Omelette", Arrays.asList("Eggs", "Salt", "Eggs")));
+        index.add(new Main.Meal("lunch", "Pasta Salad", Arrays.asList("Pasta", "Salt")));
+        index.add(new Main.Meal("dinner", "Pasta", Arrays.asList("Pasta", "Tomato", "Salt")));
+        index.add(new Main.Meal("dinner", "Pastry", Arrays.asList("Flour", "Butter")));
+    }
+
+    @Test
+    @DisplayName("Should find meals that contain all of the ingredients")
+    void findByAllIngredients() {
+        assertEquals(Arrays.asList("Pancakes", "Omelette"), names(index.findByAllIngredients(Collections.singletonList("eggs"))));
+        assertEquals(Arrays.asList("Pasta Salad", "Pasta"), names(index.findByAllIngredients(Arrays.asList("SALT", " pasta "))));
+        assertEquals(Collections.singletonList("Pasta"), names(index.findByAllIngredients(Arrays.asList("Salt", "Pasta", "Tomato"))));
+        assertTrue(index.findByAllIngredients(Arrays.asList("Eggs", "Butter")).isEmpty());
+        assertTrue(index.findByAllIngredients(Arrays.asList("Eggs", "Caviar")).isEmpty());
+        assertTrue(index.findByAllIngredients(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should find meals that contain any of the ingredients, each once")
+    void findByAnyIngredient() {
+        assertEquals(Arrays.asList("Pancakes", "Omelette", "Pastry"), names(index.findByAnyIngredient(Arrays.asList("Eggs", "Butter", "Caviar"))));
+        assertEquals(Arrays.asList("Omelette", "Pasta Salad", "Pasta"), names(index.findByAnyIngredient(Collections.singletonList("salt"))));
+    }
+
+    @Test
+    @DisplayName("Should find meals by name prefix in alphabetical order")
+    void findByNamePrefix() {
+        assertEquals(Arrays.asList("Pancakes", "Pasta", "Pasta Salad", "Pastry"), names(index.findByNamePrefix("pa", 10)));
+        assertEquals(Arrays.asList("Pasta", "Pasta Salad"), names(index.findByNamePrefix("PASTA", 10)));
+        assertEquals(Collections.singletonList("Pasta Salad"), names(index.findByNamePrefix("pasta s", 10)));
+        assertEquals(Arrays.asList("Pancakes", "Pasta"), names(index.findByNamePrefix("p", 2)));
+        assertEquals(5, index.findByNamePrefix("", 10).size());
+        assertTrue(index.findByNamePrefix("pastas", 10).isEmpty());
+        assertTrue(index.findByNamePrefix("x", 10).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.findByNamePrefix("p", 0));
+    }
+
+    @Test
+    @DisplayName("Should intersect long posting lists")
+    void largeIntersection() {
+        // Given
+        MealSearchIndex large = new MealSearchIndex();
+        List<Main.Meal> meals = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            List<String> ingredients = new ArrayList<>();
+            if (i % 2 == 0) {
+                ingredients.add("two");
+            }
+            if (i % 3 == 0) {
+                ingredients.add("three");
+            }
+            if (i % 1000 == 0) {
+                ingredients.add("thousand");
+            }
+            meals.add(new Main.Meal("lunch", "meal " + i, ingredients));
+        }
+        large.addAll(meals);
+
+        // When
+        List<Main.Meal> sixes = large.findByAllIngredients(Arrays.asList("two", "three"));
+        List<Main.Meal> rare = large.findByAllIngredients(Arrays.asList("two", "three", "thousand"));
+
+        // Then
+        assertEquals(1667, sixes.size());
+        assertEquals("meal 9996", sixes.get(sixes.size() - 1).getName());
+        assertEquals(4, rare.size());
+        assertEquals("meal 3000", rare.get(1).getName());
+    }
+
+    @Test
+    @DisplayName("Should pick up meals added through the repository")
+    void buildAndFollowAddMeals() throws SQLException {
+        // Given
+        MealRepository repository = new InMemoryMealRepository();
+        repository.addMeal("lunch", "Salad", Collections.singletonList("Lettuce"));
+
+        // When
+        MealSearchIndex built = MealSearchIndex.build(repository);
+        repository.addMeal("lunch", "Sandwich", Arrays.asList("Bread", "Lettuce"));
+
+        // Then
+        assertEquals(2, built.size());
+        assertEquals(Arrays.asList("Salad", "Sandwich"), names(built.findByAllIngredients(Collections.singletonList("lettuce"))));
+        assertEquals(Arrays.asList("Salad", "Sandwich"), names(built.findByNamePrefix("sa", 5)));
+    }
+
+    @Test
+    @DisplayName("Should index a meal committed while the catalog loads only once")
+    void buildDeduplicatesConcurrentAdds() throws SQLException {
+        // Given a load whose lunch page already holds a meal that addMeals reports meanwhile
+        MealRepository repository = mock(MealRepository.class);
+        willCallRealMethod().given(repository).loadCatalog(any());
+        ArgumentCaptor<MealRepository.MealListener> listener = ArgumentCaptor.forClass(MealRepository.MealListener.class);
+        Main.Meal salad = new Main.Meal("lunch", "Salad", Collections.singletonList("Lettuce"));
+        Main.Meal soup = new Main.Meal("lunch", "Soup", Collections.singletonList("Leek"));
+        Main.Meal stew = new Main.Meal("dinner", "Stew", Collections.singletonList("Leek"));
+        MealPage empty = new MealPage(Collections.emptyList(), new int[0], 0, "", false);
+        given(repository.getMealsByCategoryPage(anyString(), any(), any(), anyInt())).willReturn(empty);
+        given(repository.getMealsByCategoryPage(eq("lunch"), any(), any(), anyInt())).willAnswer(invocation -> {
+            then(repository).should().addMealListener(listener.capture());
+            listener.getValue().mealsAdded(Arrays.asList(soup, stew), new int[]{2, 3});
+            return new MealPage(Arrays.asList(salad, soup), new int[]{1, 2}, 2, "Soup", false);
+        });
+        given(repository.getMealsByCategoryPage(eq("dinner"), any(), any(), anyInt())).willReturn(
+                new MealPage(Collections.singletonList(stew), new int[]{3}, 3, "Stew", false));
+
+        // When
+        MealSearchIndex built = MealSearchIndex.build(repository);
+        listener.getValue().mealsAdded(Collections.singletonList(
+                new Main.Meal("dinner", "Leek pie", Collections.singletonList("Leek"))), new int[]{4});
+
+        // Then
+        assertEquals(4, built.size());
+        assertEquals(Arrays.asList("Soup", "Stew", "Leek pie"), names(built.findByAllIngredients(Collections.singletonList("leek"))));
+    }
+
+    private static List<String> names(List<Main.Meal> meals) {
+        List<String> names = new ArrayList<>();
+        for (Main.Meal meal : meals) {
+            names.add(meal.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,81 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    private Metrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new Metrics();
+    }
+
+    @Test
+    @DisplayName("Should hand out the same metric for the same name and label")
+    void registry() {
+        // When
+        metrics.counter(Metrics.DB_ROUND_TRIPS, "statement", "select_plan").increment();
+        metrics.counter(Metrics.DB_ROUND_TRIPS, "statement", "select_plan").add(2);
+
+        // Then
+        assertEquals(3, metrics.counter(Metrics.DB_ROUND_TRIPS, "statement", "select_plan").sum());
+        assertSame(metrics.histogram(Metrics.DB_CALL_SECONDS, "method", "hasPlan"),
+                metrics.histogram(Metrics.DB_CALL_SECONDS, "method", "hasPlan"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.histogram(Metrics.DB_ROUND_TRIPS, "statement", "x"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter(Metrics.DB_ROUND_TRIPS, "method", "x"));
+    }
+
+    @Test
+    @DisplayName("Should export counters and summaries in Prometheus text format")
+    void prometheus() {
+        // Given
+        metrics.counter(Metrics.CACHE_LOOKUPS, "result", "hit").add(7);
+        metrics.counter("restarts_total").increment();
+        LatencyHistogram histogram = metrics.histogram(Metrics.DB_CALL_SECONDS, "method", "get\"Plan\"");
+        histogram.record(2_000_000);
+        histogram.record(4_000_000);
+
+        // When
+        String text = metrics.toPrometheus();
+
+        // Then: quantiles are the upper end of their bucket, the maximum caps the top one
+        assertEquals("# TYPE mealplanner_catalog_cache_lookups_total counter\n"
+                + "mealplanner_catalog_cache_lookups_total{result=\"hit\"} 7\n"
+                + "# TYPE mealplanner_db_call_seconds summary\n"
+                + "mealplanner_db_call_seconds{method=\"get\\\"Plan\\\"\",quantile=\"0.5\"} 0.002031615\n"
+                + "mealplanner_db_call_seconds{method=\"get\\\"Plan\\\"\",quantile=\"0.9\"} 0.004\n"
+                + "mealplanner_db_call_seconds{method=\"get\\\"Plan\\\"\",quantile=\"0.99\"} 0.004\n"
+                + "mealplanner_db_call_seconds_sum{method=\"get\\\"Plan\\\"\"} 0.006\n"
+                + "mealplanner_db_call_seconds_count{method=\"get\\\"Plan\\\"\"} 2\n"
+                + "# TYPE mealplanner_restarts_total counter\n"
+                + "mealplanner_restarts_total 1\n", text);
+    }
+
+    @Test
+    @DisplayName("Should dump a readable report and write Prometheus text to a file")
+    void reportAndFile(@TempDir Path dir) throws IOException {
+        // Given
+        metrics.histogram(Metrics.COMMAND_SECONDS, "command", "plan").record(1_500_000);
+        metrics.counter(Metrics.COMMAND_ERRORS, "command", "save").increment();
+        Path file = dir.resolve("metrics.prom");
+
+        // When
+        String report = metrics.report();
+        metrics.writePrometheus(file);
+
+        // Then
+        assertTrue(report.contains("command_errors_total\n  command=save  1\n"));
+        assertTrue(report.contains("  command=plan  count=1 mean=1.500"));
+        assertEquals(metrics.toPrometheus(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(dir.resolve("metrics.prom.tmp")));
+    }
+}
@@ -0,0 +1,182 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class PlanGeneratorTest {
+
+    private Map<String, List<Main.Meal>> catalog;
+
+    @BeforeEach
+    void setUp() {
+        catalog = new HashMap<>();
+        for (String category : MealRepository.MEAL_CATEGORIES) {
+            List<Main.Meal> meals = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                meals.add(new Main.Meal(category, category + " " + i,
+                        Arrays.asList("ingredient " + (i % 7), "ingredient " + (i % 5 + 10), category)));
+            }
+            catalog.put(category, meals);
+        }
+    }
+
+    @Test
+    @DisplayName("Should fill every slot of every week from the matching category")
+    void coversAllCategories() {
+        // Given
+        PlanGenerator generator = new PlanGenerator(catalog, 4, 5, 0.5);
+
+        // When
+        PlanGenerator.GeneratedPlan plan = generator.generate(1);
+
+        // Then
+        assertEquals(4, plan.getWeeks());
+        for (int week = 0; week < plan.getWeeks(); week++) {
+            for (String category : MealRepository.MEAL_CATEGORIES) {
+                Map<String, String> slots = plan.getPlan(week, category);
+                assertEquals(Arrays.asList(MealRepository.DAYS_OF_WEEK), new ArrayList<>(slots.keySet()));
+                slots.values().forEach(meal -> assertTrue(meal.startsWith(category + " ")));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should not repeat a meal within the no-repeat window")
+    void respectsNoRepeatWindow() {
+        // Given
+        int noRepeatDays = 10;
+        PlanGenerator generator = new PlanGenerator(catalog, 6, noRepeatDays, 1.0);
+
+        // When
+        PlanGenerator.GeneratedPlan plan = generator.generate(99);
+
+        // Then
+        for (String category : MealRepository.MEAL_CATEGORIES) {
+            List<String> days = new ArrayList<>();
+            for (int week = 0; week < plan.getWeeks(); week++) {
+                days.addAll(plan.getPlan(week, category).values());
+            }
+            for (int day = 0; day < days.size(); day++) {
+                for (int earlier = Math.max(0, day - noRepeatDays + 1); earlier < day; earlier++) {
+                    assertNotEquals(days.get(earlier), days.get(day), category + " repeated on day " + day);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should fall back to the least recent meal when a category is smaller than the window")
+    void relaxesWindowForSmallCategories() {
+        // Given
+        catalog.put("dinner", Arrays.asList(
+                new Main.Meal("dinner", "Pasta", Collections.singletonList("Pasta")),
+                new Main.Meal("dinner", "Soup", Collections.singletonList("Water"))));
+        PlanGenerator generator = new PlanGenerator(catalog, 1, 7, 0.0);
+
+        // When
+        List<String> dinners = new ArrayList<>(generator.generate(3).getPlan(0, "dinner").values());
+
+        // Then: the two meals alternate
+        for (int day = 1; day < dinners.size(); day++) {
+            assertNotEquals(dinners.get(day - 1), dinners.get(day));
+        }
+    }
+
+    @Test
+    @DisplayName("Should be deterministic for a seed")
+    void deterministicForSeed() {
+        // Given
+        PlanGenerator generator = new PlanGenerator(catalog, 2, 3, 0.3);
+
+        // When / Then
+        assertEquals(generator.generate(5).getPlan(1, "lunch"), generator.generate(5).getPlan(1, "lunch"));
+    }
+
+    @Test
+    @DisplayName("Should draw candidates independently and uniformly, not as a run of neighbours")
+    void drawsIndependentSample() {
+        // Given
+        int count = 1000;
+        int draws = 20_000;
+        Random random = new Random(11);
+        int[] sample = new int[PlanGenerator.CANDIDATE_SAMPLE];
+        int[] drawn = new int[count];
+        long neighbours = 0;
+
+        // When
+        for (int d = 0; d < draws; d++) {
+            assertEquals(sample.length, PlanGenerator.drawSample(count, sample, random));
+            Set<Integer> distinct = new HashSet<>();
+            for (int index : sample) {
+                assertTrue(index >= 0 && index < count);
+                distinct.add(index);
+                drawn[index]++;
+            }
+            assertEquals(sample.length, distinct.size());
+            for (int index : sample) {
+                if (distinct.contains(index + 1)) {
+                    neighbours++;
+                }
+            }
+        }
+
+        // Then: every meal is drawn about draws * 64 / 1000 = 1280 times, and a drawn meal's
+        // neighbour is in the same sample about 63 / 999 of the time instead of nearly always
+        for (int index = 0; index < count; index++) {
+            assertTrue(drawn[index] > 1100 && drawn[index] < 1460, "meal " + index + " drawn " + drawn[index]);
+        }
+        double neighbourShare = (double) neighbours / ((long) draws * sample.length);
+        assertTrue(neighbourShare < 0.08, "neighbour share " + neighbourShare);
+    }
+
+    @Test
+    @DisplayName("Should reject a catalog with an empty category")
+    void rejectsMissingCategory() {
+        catalog.put("lunch", Collections.emptyList());
+        assertThrows(IllegalArgumentException.class, () -> new PlanGenerator(catalog, 1, 1, 0.5));
+    }
+
+    @Test
+    @DisplayName("Should generate plans for many users in parallel")
+    void generatesForManyUsers() {
+        // Given
+        PlanGenerator generator = new PlanGenerator(catalog, 2, 4, 0.5);
+        List<Integer> users = IntStream.range(0, 500).boxed().collect(Collectors.toList());
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            // When
+            PlanGenerator.BatchResult result = generator.generateAll(users, pool);
+
+            // Then
+            assertEquals(500, result.getPlans().size());
+            assertEquals(generator.generate(42).getPlan(0, "breakfast"), result.getPlans().get(42).getPlan(0, "breakfast"));
+            assertTrue(result.getPlansPerSecond() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should save a generated week through savePlanToDatabase")
+    void savesWeek() throws SQLException {
+        // Given
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        PlanGenerator.GeneratedPlan plan = new PlanGenerator(catalog, 2, 3, 0.5).generate(8);
+
+        // When
+        plan.saveWeek(mockDatabaseManager, 12, 1);
+
+        // Then
+        then(mockDatabaseManager).should().savePlanToDatabase(12, 1,
+                plan.getPlan(1, "breakfast"), plan.getPlan(1, "lunch"), plan.getPlan(1, "dinner"));
+    }
+}
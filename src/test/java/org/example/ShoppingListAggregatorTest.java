@@ -0,0 +1,137 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class ShoppingListAggregatorTest {
+
+    private static ForkJoinPool pool;
+
+    private IngredientDictionary dictionary;
+    private ShoppingListAggregator aggregator;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @BeforeEach
+    void setUp() {
+        dictionary = new IngredientDictionary();
+        aggregator = new ShoppingListAggregator(Arrays.asList(
+                new Main.Meal("breakfast", "Pancakes", dictionary.internAll(Arrays.asList("Flour", "Eggs", "Milk")), dictionary),
+                new Main.Meal("lunch", "Omelette", dictionary.internAll(Arrays.asList("Eggs", "Salt")), dictionary),
+                new Main.Meal("dinner", "Pasta", dictionary.internAll(Arrays.asList("Pasta", "Salt")), dictionary)),
+                dictionary);
+    }
+
+    @Test
+    @DisplayName("Should count ingredients per user and for the whole cohort")
+    void aggregate() {
+        // Given
+        Map<Integer, List<String>> mealsByUser = new HashMap<>();
+        mealsByUser.put(1, Arrays.asList("Pancakes", "Pancakes", "Pasta"));
+        mealsByUser.put(2, Arrays.asList("Omelette", "Pasta"));
+        mealsByUser.put(3, Collections.emptyList());
+
+        // When
+        ShoppingListAggregator.Result result = aggregator.aggregate(mealsByUser, pool);
+
+        // Then
+        Map<String, Integer> first = new LinkedHashMap<>();
+        first.put("Eggs", 2);
+        first.put("Flour", 2);
+        first.put("Milk", 2);
+        first.put("Pasta", 1);
+        first.put("Salt", 1);
+        assertEquals(first, result.getShoppingList(1));
+        assertEquals(new ArrayList<>(first.keySet()), new ArrayList<>(result.getShoppingList(1).keySet()));
+
+        Map<String, Integer> combined = new LinkedHashMap<>(first);
+        combined.put("Eggs", 3);
+        combined.put("Pasta", 2);
+        combined.put("Salt", 3);
+        assertEquals(combined, result.getCombinedShoppingList());
+        assertTrue(result.getShoppingList(3).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), result.getUserIds());
+        assertThrows(IllegalArgumentException.class, () -> result.getShoppingList(4));
+    }
+
+    @Test
+    @DisplayName("Should match a sequential count for many users")
+    void aggregateManyUsers() {
+        // Given
+        String[] meals = {"Pancakes", "Omelette", "Pasta"};
+        Random random = new Random(3);
+        Map<Integer, List<String>> mealsByUser = new HashMap<>();
+        Map<String, Integer> expected = new TreeMap<>();
+        for (int user = 0; user < 5_000; user++) {
+            List<String> eaten = new ArrayList<>();
+            for (int slot = 0; slot < 21; slot++) {
+                String meal = meals[random.nextInt(meals.length)];
+                eaten.add(meal);
+                for (String ingredient : mealIngredients(meal)) {
+                    expected.merge(ingredient, 1, Integer::sum);
+                }
+            }
+            mealsByUser.put(user, eaten);
+        }
+
+        // When
+        ShoppingListAggregator.Result result = aggregator.aggregate(mealsByUser, pool);
+
+        // Then
+        assertEquals(expected, result.getCombinedShoppingList());
+        int eggs = 0;
+        for (int user : result.getUserIds()) {
+            eggs += result.getShoppingList(user).getOrDefault("Eggs", 0);
+        }
+        assertEquals(expected.get("Eggs"), eggs);
+    }
+
+    @Test
+    @DisplayName("Should aggregate generated plans and reject unknown meals")
+    void aggregatePlansAndUnknownMeals() throws SQLException {
+        // Given
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        for (String category : MealRepository.MEAL_CATEGORIES) {
+            List<Main.Meal> mealsInCategory = Collections.singletonList(
+                    new Main.Meal(category, category + " meal", Collections.singletonList(category + " ingredient")));
+            given(mockDatabaseManager.getMealsByCategory(category)).willReturn(mealsInCategory);
+            given(mockDatabaseManager.getMealsByCategoryAlphabetical(category)).willReturn(mealsInCategory);
+        }
+        PlanGenerator generator = PlanGenerator.fromDatabase(mockDatabaseManager, 2, 1, 0.5);
+        Map<Integer, PlanGenerator.GeneratedPlan> plans = generator.generateAll(Arrays.asList(1, 2), pool).getPlans();
+
+        // When
+        ShoppingListAggregator.Result result = ShoppingListAggregator.fromDatabase(mockDatabaseManager).aggregatePlans(plans, pool);
+
+        // Then
+        assertEquals(Integer.valueOf(14), result.getShoppingList(2).get("lunch ingredient"));
+        assertEquals(Integer.valueOf(28), result.getCombinedShoppingList().get("dinner ingredient"));
+        assertThrows(IllegalArgumentException.class, () ->
+                aggregator.aggregate(Collections.singletonMap(1, Collections.singletonList("Soup")), pool));
+    }
+
+    private static List<String> mealIngredients(String meal) {
+        switch (meal) {
+            case "Pancakes":
+                return Arrays.asList("Flour", "Eggs", "Milk");
+            case "Omelette":
+                return Arrays.asList("Eggs", "Salt");
+            default:
+                return Arrays.asList("Pasta", "Salt");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class ShoppingListExporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DatabaseManager mockDatabaseManager;
+    private ShoppingListExporter exporter;
+
+    @BeforeEach
+    void setUp() throws SQLException, IOException {
+        mockDatabaseManager = mock(DatabaseManager.class);
+        exporter = new ShoppingListExporter(mockDatabaseManager);
+
+        willAnswer(invocation -> {
+            MealRepository.ShoppingListRowHandler handler = invocation.getArgument(3);
+            handler.row("Eggs", 3);
+            handler.row("Flour", 1);
+            handler.row("Salt, sea", 2);
+            return null;
+        }).given(mockDatabaseManager).forEachShoppingListRow(anyInt(), anyInt(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should write the plain text shopping list")
+    void exportText() throws Exception {
+        // Given
+        Path file = tempDir.resolve("list.txt");
+
+        // When
+        ShoppingListExporter.ExportStats stats = exporter.export(file,
+                ShoppingListExporter.Format.TEXT, MealRepository.ShoppingListOrder.ALPHABETICAL);
+
+        // Then
+        assertEquals("Eggs x3\nFlour\nSalt, sea x2\n", read(file));
+        assertEquals(3, stats.getRows());
+        assertEquals(Files.size(file), stats.getBytes());
+        then(mockDatabaseManager).should().forEachShoppingListRow(eq(MealRepository.DEFAULT_USER_ID), eq(MealRepository.DEFAULT_WEEK), eq(MealRepository.ShoppingListOrder.ALPHABETICAL), any());
+    }
+
+    @Test
+    @DisplayName("Should write CSV with a header and quoted fields")
+    void exportCsv() throws Exception {
+        // Given
+        Path file = tempDir.resolve("list.csv");
+
+        // When
+        exporter.export(file, ShoppingListExporter.Format.CSV, MealRepository.ShoppingListOrder.BY_COUNT);
+
+        // Then
+        assertEquals("ingredient,count\nEggs,3\nFlour,1\n\"Salt, sea\",2\n", read(file));
+        then(mockDatabaseManager).should().forEachShoppingListRow(eq(MealRepository.DEFAULT_USER_ID), eq(MealRepository.DEFAULT_WEEK), eq(MealRepository.ShoppingListOrder.BY_COUNT), any());
+    }
+
+    @Test
+    @DisplayName("Should write one JSON object per line")
+    void exportJsonLines() throws Exception {
+        // Given
+        Path file = tempDir.resolve("list.jsonl");
+
+        // When
+        exporter.export(file, ShoppingListExporter.Format.JSON_LINES, MealRepository.ShoppingListOrder.ALPHABETICAL);
+
+        // Then
+        assertEquals("{\"ingredient\":\"Eggs\",\"count\":3}\n"
+                + "{\"ingredient\":\"Flour\",\"count\":1}\n"
+                + "{\"ingredient\":\"Salt, sea\",\"count\":2}\n", read(file));
+        assertEquals("a\\\"b\\\\c\\u000a", ShoppingListExporter.jsonString("a\"b\\c\n"));
+    }
+
+    @Test
+    @DisplayName("Should stream lists larger than the buffer")
+    void exportLargeList() throws Exception {
+        // Given
+        int rows = 20_000;
+        willAnswer(invocation -> {
+            MealRepository.ShoppingListRowHandler handler = invocation.getArgument(3);
+            for (int i = 0; i < rows; i++) {
+                handler.row("Ingredient " + i, 2);
+            }
+            return null;
+        }).given(mockDatabaseManager).forEachShoppingListRow(anyInt(), anyInt(), any(), any());
+        Path file = tempDir.resolve("large.txt");
+
+        // When
+        ShoppingListExporter.ExportStats stats = exporter.export(file,
+                ShoppingListExporter.Format.TEXT, MealRepository.ShoppingListOrder.ALPHABETICAL);
+
+        // Then
+        assertEquals(rows, stats.getRows());
+        assertTrue(stats.getBytes() > ShoppingListExporter.BUFFER_SIZE);
+        assertEquals(Files.size(file), stats.getBytes());
+        assertEquals(rows, Files.readAllLines(file).size());
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
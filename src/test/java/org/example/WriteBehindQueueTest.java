@@ -0,0 +1,140 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+class WriteBehindQueueTest {
+
+    private DatabaseManager mockDatabaseManager;
+
+    @BeforeEach
+    void setUp() {
+        mockDatabaseManager = mock(DatabaseManager.class);
+    }
+
+    @Test
+    @DisplayName("Should write queued meals in batches and complete their futures with the ids")
+    @SuppressWarnings("unchecked")
+    void writesInBatches() throws Exception {
+        // Given
+        CountDownLatch firstWrite = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        given(mockDatabaseManager.addMeals(anyCollection(), anyInt(), isNull())).willAnswer(invocation -> {
+            firstWrite.countDown();
+            release.await();
+            Collection<Main.Meal> meals = invocation.getArgument(0);
+            List<String> names = new ArrayList<>();
+            int[] ids = new int[meals.size()];
+            for (Main.Meal meal : meals) {
+                ids[names.size()] = Integer.parseInt(meal.getName().substring(4));
+                names.add(meal.getName());
+            }
+            batches.add(names);
+            return ids;
+        });
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+
+        // When: the first meal is written alone, the rest queue up behind it
+        WriteBehindQueue queue = new WriteBehindQueue(mockDatabaseManager, 10, 3);
+        futures.add(queue.submit("lunch", "Meal1", Collections.singletonList("Rice")));
+        assertTrue(firstWrite.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 5; i++) {
+            futures.add(queue.submit("lunch", "Meal" + i, Collections.singletonList("Rice")));
+        }
+        assertFalse(futures.get(4).isDone());
+        release.countDown();
+        queue.close();
+
+        // Then
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i + 1, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList(
+                Collections.singletonList("Meal1"),
+                Arrays.asList("Meal2", "Meal3", "Meal4"),
+                Collections.singletonList("Meal5")), batches);
+        then(mockDatabaseManager).should().addMeals(anyCollection(), eq(3), isNull());
+    }
+
+    @Test
+    @DisplayName("Should fail every meal of a batch that could not be written")
+    void failedBatch() throws Exception {
+        // Given
+        SQLException failure = new SQLException("disk full");
+        given(mockDatabaseManager.addMeals(anyCollection(), anyInt(), isNull())).willThrow(failure);
+
+        // When
+        CompletableFuture<Integer> future;
+        try (WriteBehindQueue queue = new WriteBehindQueue(mockDatabaseManager)) {
+            future = queue.submit("dinner", "Soup", Collections.singletonList("Water"));
+            queue.flush();
+        }
+
+        // Then
+        ExecutionException thrown = assertThrows(ExecutionException.class, future::get);
+        assertSame(failure, thrown.getCause());
+    }
+
+    @Test
+    @DisplayName("Should fail a batch that threw an Error and keep writing the next ones")
+    void survivesErrors() throws Exception {
+        // Given
+        StackOverflowError error = new StackOverflowError("listener");
+        given(mockDatabaseManager.addMeals(anyCollection(), anyInt(), isNull()))
+                .willThrow(error)
+                .willReturn(new int[]{7});
+
+        // When
+        CompletableFuture<Integer> failed;
+        CompletableFuture<Integer> written;
+        try (WriteBehindQueue queue = new WriteBehindQueue(mockDatabaseManager)) {
+            failed = queue.submit("dinner", "Soup", Collections.singletonList("Water"));
+            queue.flush();
+            written = queue.submit("dinner", "Stew", Collections.singletonList("Beans"));
+            queue.flush();
+        }
+
+        // Then
+        ExecutionException thrown = assertThrows(ExecutionException.class, failed::get);
+        assertSame(error, thrown.getCause());
+        assertEquals(7, written.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Should block submitters while the queue is full")
+    void backpressure() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        given(mockDatabaseManager.addMeals(anyCollection(), anyInt(), isNull())).willAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return new int[((Collection<?>) invocation.getArgument(0)).size()];
+        });
+        WriteBehindQueue queue = new WriteBehindQueue(mockDatabaseManager, 1, 10);
+        queue.submit("lunch", "First", Collections.singletonList("Rice"));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        queue.submit("lunch", "Second", Collections.singletonList("Rice"));
+
+        // When
+        ExecutorService submitter = Executors.newSingleThreadExecutor();
+        Future<CompletableFuture<Integer>> third = submitter.submit(
+                () -> queue.submit("lunch", "Third", Collections.singletonList("Rice")));
+
+        // Then
+        assertThrows(TimeoutException.class, () -> third.get(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertNotNull(third.get(5, TimeUnit.SECONDS));
+        queue.close();
+        submitter.shutdown();
+        assertEquals(0, queue.size());
+        assertThrows(IllegalStateException.class, () -> queue.submit("lunch", "Late", Collections.singletonList("Rice")));
+    }
+}